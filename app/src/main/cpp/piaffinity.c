@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+#define _GNU_SOURCE
+#include <jni.h>
+#include <sched.h>
+
+/*
+ * Restricts the calling thread to the given CPUs. A pid of 0 applies to
+ * the calling thread only, not to the whole process.
+ */
+JNIEXPORT jboolean JNICALL
+Java_com_digi_android_sample_system_cpu_pi_ThreadAffinity_setAffinity0(
+		JNIEnv *env, jclass clazz, jintArray cpus)
+{
+	cpu_set_t set;
+	jsize length = (*env)->GetArrayLength(env, cpus);
+	jint *elements = (*env)->GetIntArrayElements(env, cpus, NULL);
+	jsize i;
+
+	if (elements == NULL)
+		return JNI_FALSE;
+
+	CPU_ZERO(&set);
+	for (i = 0; i < length; i++) {
+		if (elements[i] >= 0 && elements[i] < CPU_SETSIZE)
+			CPU_SET(elements[i], &set);
+	}
+	(*env)->ReleaseIntArrayElements(env, cpus, elements, JNI_ABORT);
+
+	if (CPU_COUNT(&set) == 0)
+		return JNI_FALSE;
+
+	return sched_setaffinity(0, sizeof(set), &set) == 0 ? JNI_TRUE : JNI_FALSE;
+}
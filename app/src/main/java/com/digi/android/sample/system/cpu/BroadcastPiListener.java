@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.digi.android.sample.system.cpu.pi.ProgressListener;
+import com.digi.android.sample.system.cpu.pi.ResultListener;
+
+/**
+ * Pi calculation listener that broadcasts the progress and the result to
+ * the application.
+ */
+public class BroadcastPiListener implements ProgressListener, ResultListener {
+
+	// Constants.
+	public static final String NEW_PROGRESS_INTENT = "NEW_PROGRESS";
+
+	public static final String EXTRA_PROGRESS = "progress";
+	public static final String EXTRA_TERMS_PER_SECOND = "terms_per_second";
+	public static final String EXTRA_REMAINING_MILLIS = "remaining_millis";
+	public static final String EXTRA_RESULT = "result";
+
+	// Variables.
+	private final Context context;
+
+	/**
+	 * Class constructor. Instantiates a new {@code BroadcastPiListener}.
+	 *
+	 * @param context Context used to send the broadcasts.
+	 */
+	public BroadcastPiListener(Context context) {
+		this.context = context;
+	}
+
+	@Override
+	public void progress(int percentComplete, double termsPerSecond, long remainingMillis) {
+		Intent intent = new Intent(NEW_PROGRESS_INTENT);
+		intent.putExtra(EXTRA_PROGRESS, percentComplete + "%");
+		intent.putExtra(EXTRA_TERMS_PER_SECOND, termsPerSecond);
+		intent.putExtra(EXTRA_REMAINING_MILLIS, remainingMillis);
+		context.sendBroadcast(intent);
+	}
+
+	@Override
+	public void result(String prefix) {
+		Intent intent = new Intent(NEW_PROGRESS_INTENT);
+		intent.putExtra(EXTRA_RESULT, prefix);
+		context.sendBroadcast(intent);
+	}
+}
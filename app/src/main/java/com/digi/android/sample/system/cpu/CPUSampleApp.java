@@ -45,7 +45,6 @@ import androidx.core.content.ContextCompat;
 
 import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYGraphWidget;
 import com.androidplot.xy.XYPlot;
 
@@ -55,8 +54,18 @@ import com.digi.android.sample.system.cpu.dialogs.ConfigureGovernorInteractiveDi
 import com.digi.android.sample.system.cpu.dialogs.ConfigureGovernorOndemandDialog;
 import com.digi.android.sample.system.cpu.dialogs.ConfigureGovernorSchedutilDialog;
 import com.digi.android.sample.system.cpu.dialogs.ConfigureGovernorUserspaceDialog;
+import com.digi.android.sample.system.cpu.pi.ApfloatContextProfile;
+import com.digi.android.sample.system.cpu.pi.ConvolutionTuning;
 import com.digi.android.sample.system.cpu.pi.Pi;
 import com.digi.android.sample.system.cpu.pi.PiParallel;
+import com.digi.android.sample.system.cpu.pi.VerificationException;
+import com.digi.android.sample.system.cpu.telemetry.TelemetryRecorder;
+import com.digi.android.sample.system.cpu.usage.ProcStatSampler;
+import com.digi.android.sample.system.cpu.usage.UsageHistory;
+import com.digi.android.sample.system.cpu.usage.UsageRingBuffer;
+import com.digi.android.sample.system.cpu.usage.UsageSamplingEngine;
+import com.digi.android.sample.system.cpu.usage.UsageSource;
+import com.digi.android.sample.system.cpu.usage.UsageXYSeries;
 
 import com.digi.android.system.cpu.CPUManager;
 import com.digi.android.system.cpu.GovernorType;
@@ -65,12 +74,18 @@ import com.digi.android.system.cpu.exception.CPUTemperatureException;
 import com.digi.android.system.cpu.exception.NoSuchCoreException;
 import com.digi.android.system.memory.MemoryManager;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
 
 /**
  * CPU sample application.
@@ -86,10 +101,27 @@ public class CPUSampleApp extends Activity {
 	// Constants.
 	public static final String PI_STATUS_CANCELED = "Canceled";
 	public static final String PI_STATUS_FINISHED = "Finished";
-
-	private static final int CPU_USAGE_MAX_TIME = 60;
+	public static final String PI_STATUS_VERIFICATION_FAILED = "Verification failed";
+
+	private static final int CPU_USAGE_PLOT_WINDOW = 45000;
+	private static final int CPU_USAGE_MAX_POINTS = 1000;
+	private static final int CPU_USAGE_PLOT_PERIOD = 250;
+	private static final int USAGE_BUFFER_CAPACITY = 2048;
+	private static final int USAGE_MEASURING_TIME = 250;
+	// Must match the 'usage_sampling_rates' array.
+	private static final int[] USAGE_SAMPLING_PERIODS = {750, 100, 50, 20, 10};
 	private static final long MAX_DIGITS = 30000000L;
 	private static final int MAX_DIGITS_RESULT = 1000;
+	private static final int DEFAULT_RADIX = 10;
+	private static final String APFLOAT_PROFILE_FILE = "apfloat_profile.properties";
+	private static final String PI_CHECKPOINT_DIRECTORY = "pi_checkpoints";
+	private static final String PI_DIGIT_CACHE_DIRECTORY = "pi_digits";
+	private static final String USAGE_HISTORY_FILE = "usage_history";
+	private static final String TELEMETRY_DIRECTORY = "telemetry";
+	private static final int TELEMETRY_SEGMENT_SIZE = 1024 * 1024;
+	private static final int TELEMETRY_MAX_SEGMENTS = 16;
+	private static final String CORE_FREQUENCY_FILE = "/sys/devices/system/cpu/cpu%d/cpufreq/scaling_cur_freq";
+	private static final int PI_VERIFICATION_POSITIONS = 3;
 	private static final int STATUS_PERIOD = 3;
 
 	// Variables.
@@ -101,6 +133,7 @@ public class CPUSampleApp extends Activity {
 	private TextView statusMemoryText;
 
 	private EditText piDigitsEditText;
+	private EditText piRadixEditText;
 
 	private Switch core1Switch;
 	private Switch core2Switch;
@@ -110,6 +143,9 @@ public class CPUSampleApp extends Activity {
 	private Spinner maxFrequencySpinner;
 	private Spinner minFrequencySpinner;
 	private Spinner governorsSpinner;
+	private Spinner piMethodSpinner;
+	private Spinner piCrossCheckSpinner;
+	private Spinner usageSamplingRateSpinner;
 
 	private Button configureGovernorButton;
 	private Button piResultsButton;
@@ -123,11 +159,11 @@ public class CPUSampleApp extends Activity {
 
 	private XYPlot cpuPlot;
 
-	private static SimpleXYSeries cpuSeries;
-	private static SimpleXYSeries core1Series;
-	private static SimpleXYSeries core2Series;
-	private static SimpleXYSeries core3Series;
-	private static SimpleXYSeries core4Series;
+	private static UsageXYSeries cpuSeries;
+	private static UsageXYSeries core1Series;
+	private static UsageXYSeries core2Series;
+	private static UsageXYSeries core3Series;
+	private static UsageXYSeries core4Series;
 
 	private LineAndPointFormatter core1Formatter;
 	private LineAndPointFormatter core2Formatter;
@@ -144,9 +180,8 @@ public class CPUSampleApp extends Activity {
 	private boolean governorDlgOpen = false;
 
 	private int numberOfCores = 1;
-	private int statusLoops = 0;
-
-	private float overallUsage = 0.0f;
+	private volatile int usageSamplingPeriod = USAGE_SAMPLING_PERIODS[0];
+	private int cpuUsagePoints = CPU_USAGE_PLOT_WINDOW / USAGE_SAMPLING_PERIODS[0];
 
 	private String pi = "";
 
@@ -154,8 +189,15 @@ public class CPUSampleApp extends Activity {
 
 	private Timer timer;
 
+	private CPUStatusTask statusTask;
+
 	private Thread cpuUsageThread;
 
+	private UsageRingBuffer usageBuffer;
+	private volatile UsageHistory usageHistory;
+	private UsageSamplingEngine usageSamplingEngine;
+	private ProcStatSampler procStatSampler;
+
 	private static CPUSampleApp instance;
 
 	private ProgressReceiver progressReceiver;
@@ -166,6 +208,18 @@ public class CPUSampleApp extends Activity {
 
 		instance = this;
 
+		// Report the Pi calculation progress and result through broadcasts.
+		BroadcastPiListener piListener = new BroadcastPiListener(getApplicationContext());
+		Pi.setProgressListener(piListener);
+		Pi.setResultListener(piListener);
+
+		// Checkpoint the Pi calculation, so it can be resumed after a pause or reboot.
+		PiParallel.setCheckpointDirectory(new File(getFilesDir(), PI_CHECKPOINT_DIRECTORY));
+		// Reuse the digits of previous calculations when possible.
+		PiParallel.setDigitCache(new File(getFilesDir(), PI_DIGIT_CACHE_DIRECTORY));
+		// Detect corrupted calculations, the Pi test is used to check CPU stability.
+		Pi.setVerification(PI_VERIFICATION_POSITIONS);
+
 		setContentView(R.layout.main);
 
 		// Initialize the application controls.
@@ -179,7 +233,7 @@ public class CPUSampleApp extends Activity {
 
 		if (progressReceiver == null)
 			progressReceiver = new ProgressReceiver();
-		registerReceiver(progressReceiver, new IntentFilter(Pi.NEW_PROGRESS_INTENT), Context.RECEIVER_EXPORTED);
+		registerReceiver(progressReceiver, new IntentFilter(BroadcastPiListener.NEW_PROGRESS_INTENT), Context.RECEIVER_EXPORTED);
 
 		// Initialize all the CPU values and set them in the corresponding controls.
 		initializeValues();
@@ -230,6 +284,7 @@ public class CPUSampleApp extends Activity {
 		statusMemoryText = findViewById(R.id.status_memory);
 
 		piDigitsEditText = findViewById(R.id.pi_digits);
+		piRadixEditText = findViewById(R.id.pi_radix);
 
 		core1Switch = findViewById(R.id.core1_switch);
 		core2Switch = findViewById(R.id.core2_switch);
@@ -239,6 +294,9 @@ public class CPUSampleApp extends Activity {
 		maxFrequencySpinner = findViewById(R.id.setting_max_freq_list);
 		minFrequencySpinner = findViewById(R.id.setting_min_freq_list);
 		governorsSpinner = findViewById(R.id.setting_governors_list);
+		piMethodSpinner = findViewById(R.id.pi_method_list);
+		piCrossCheckSpinner = findViewById(R.id.pi_cross_check_list);
+		usageSamplingRateSpinner = findViewById(R.id.usage_sampling_rate_list);
 
 		configureGovernorButton = findViewById(R.id.setting_config_governor_button);
 		piResultsButton = findViewById(R.id.results_button);
@@ -321,6 +379,23 @@ public class CPUSampleApp extends Activity {
 			displayError(e.getMessage());
 		}
 
+		// Fill the Pi calculation methods lists.
+		ArrayAdapter<CharSequence> piMethodsAdapter = ArrayAdapter.createFromResource(this, R.array.pi_methods, R.layout.spinner_item);
+		piMethodsAdapter.setDropDownViewResource(android.R.layout.select_dialog_singlechoice);
+		piMethodSpinner.setAdapter(piMethodsAdapter);
+		ArrayAdapter<CharSequence> piCrossCheckMethodsAdapter = ArrayAdapter.createFromResource(this, R.array.pi_cross_check_methods, R.layout.spinner_item);
+		piCrossCheckMethodsAdapter.setDropDownViewResource(android.R.layout.select_dialog_singlechoice);
+		piCrossCheckSpinner.setAdapter(piCrossCheckMethodsAdapter);
+
+		// Fill the usage sampling rates list, keeping the selected rate.
+		ArrayAdapter<CharSequence> samplingRatesAdapter = ArrayAdapter.createFromResource(this, R.array.usage_sampling_rates, R.layout.spinner_item);
+		samplingRatesAdapter.setDropDownViewResource(android.R.layout.select_dialog_singlechoice);
+		usageSamplingRateSpinner.setAdapter(samplingRatesAdapter);
+		for (int i = 0; i < USAGE_SAMPLING_PERIODS.length; i++) {
+			if (USAGE_SAMPLING_PERIODS[i] == usageSamplingPeriod)
+				usageSamplingRateSpinner.setSelection(i);
+		}
+
 		// Refresh the status of controls.
 		refreshCoresControls();
 		refreshConfigGovernorButton();
@@ -363,6 +438,15 @@ public class CPUSampleApp extends Activity {
 			@Override
 			public void onNothingSelected(AdapterView<?> parentView) { }
 		});
+		usageSamplingRateSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+			@Override
+			public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
+				handleSamplingRateChanged();
+			}
+
+			@Override
+			public void onNothingSelected(AdapterView<?> parentView) { }
+		});
 
 		// Set the edit texts callbacks.
 		piDigitsEditText.addTextChangedListener(new TextWatcher() {
@@ -413,7 +497,7 @@ public class CPUSampleApp extends Activity {
 		cpuPlot = findViewById(R.id.cpu_usage_plot);
 
 		cpuPlot.setRangeBoundaries(0, 100, BoundaryMode.FIXED);
-		cpuPlot.setDomainBoundaries(0, 60, BoundaryMode.FIXED);
+		cpuPlot.setDomainBoundaries(0, cpuUsagePoints, BoundaryMode.FIXED);
 		cpuPlot.setDomainStepValue(7);
 
 		cpuPlot.setRangeStepValue(11);
@@ -430,8 +514,7 @@ public class CPUSampleApp extends Activity {
 		cpuPlot.getLayoutManager().remove(cpuPlot.getRangeTitle());
 
 		// CPU series (always present).
-		cpuSeries = new SimpleXYSeries("CPU Usage (%)");
-		cpuSeries.useImplicitXVals();
+		cpuSeries = new UsageXYSeries("CPU Usage (%)", CPU_USAGE_MAX_POINTS, cpuUsagePoints);
 		LineAndPointFormatter cpuFormatter = new LineAndPointFormatter(
 				ContextCompat.getColor(getApplicationContext(), R.color.blue), null,
 				ContextCompat.getColor(getApplicationContext(), R.color.blue), null);
@@ -444,8 +527,7 @@ public class CPUSampleApp extends Activity {
 		cpuPlot.addSeries(cpuSeries, cpuFormatter);
 
 		// Core 1 series (always present).
-		core1Series = new SimpleXYSeries("Core 1 Usage (%)");
-		core1Series.useImplicitXVals();
+		core1Series = new UsageXYSeries("Core 1 Usage (%)", CPU_USAGE_MAX_POINTS, cpuUsagePoints);
 		core1Formatter = new LineAndPointFormatter(
 				ContextCompat.getColor(getApplicationContext(), R.color.dark_green),
 				null, Color.TRANSPARENT, null);
@@ -453,8 +535,7 @@ public class CPUSampleApp extends Activity {
 
 		// Core 2 series.
 		if (numberOfCores > 1) {
-			core2Series = new SimpleXYSeries("Core 2 Usage (%)");
-			core2Series.useImplicitXVals();
+			core2Series = new UsageXYSeries("Core 2 Usage (%)", CPU_USAGE_MAX_POINTS, cpuUsagePoints);
 			core2Formatter = new LineAndPointFormatter(
 					ContextCompat.getColor(getApplicationContext(), R.color.red),
 					null, Color.TRANSPARENT, null);
@@ -463,8 +544,7 @@ public class CPUSampleApp extends Activity {
 
 		// Core 3 series.
 		if (numberOfCores > 2) {
-			core3Series = new SimpleXYSeries("Core 3 Usage (%)");
-			core3Series.useImplicitXVals();
+			core3Series = new UsageXYSeries("Core 3 Usage (%)", CPU_USAGE_MAX_POINTS, cpuUsagePoints);
 			core3Formatter = new LineAndPointFormatter(
 					ContextCompat.getColor(getApplicationContext(), R.color.orange),
 					null, Color.TRANSPARENT, null);
@@ -473,8 +553,7 @@ public class CPUSampleApp extends Activity {
 
 		// Core 4 series.
 		if (numberOfCores > 3) {
-			core4Series = new SimpleXYSeries("Core 4 Usage (%)");
-			core4Series.useImplicitXVals();
+			core4Series = new UsageXYSeries("Core 4 Usage (%)", CPU_USAGE_MAX_POINTS, cpuUsagePoints);
 			core4Formatter = new LineAndPointFormatter(
 					ContextCompat.getColor(getApplicationContext(), R.color.purple),
 					null, Color.TRANSPARENT, null);
@@ -521,6 +600,8 @@ public class CPUSampleApp extends Activity {
 					break;
 			}
 			refreshCoresControls();
+			// Move the Pi threads off a disabled core, or onto a new one.
+			PiParallel.updateCoreTopology();
 		} catch (CPUException | NoSuchCoreException e) {
 			displayError(e.getMessage());
 		}
@@ -725,6 +806,22 @@ public class CPUSampleApp extends Activity {
 		if (piCalculationButton.isChecked()) {
 			if (Long.parseLong(piDigitsEditText.getText().toString()) > MAX_DIGITS)
 				piDigitsEditText.setText(String.valueOf(MAX_DIGITS));
+			int radix;
+			try {
+				radix = Integer.parseInt(piRadixEditText.getText().toString());
+			} catch (NumberFormatException e) {
+				radix = DEFAULT_RADIX;
+			}
+			if (radix < Character.MIN_RADIX || radix > Character.MAX_RADIX) {
+				radix = DEFAULT_RADIX;
+				piRadixEditText.setText(String.valueOf(radix));
+			}
+
+			final long digits = Long.parseLong(piDigitsEditText.getText().toString());
+			final int method = piMethodSpinner.getSelectedItemPosition();
+			// The first cross-check entry is "None".
+			final int crossCheckMethod = piCrossCheckSpinner.getSelectedItemPosition() - 1;
+			final int piRadix = radix;
 
 			piProgressText.setText("0%");
 			piTimeText.setText("");
@@ -732,16 +829,30 @@ public class CPUSampleApp extends Activity {
 
 			new Thread(() -> {
 				try {
+					applyApfloatProfile();
 					long time = System.currentTimeMillis();
-					PiParallel.calculatePi(Long.parseLong(piDigitsEditText.getText().toString()));
+					final boolean cached;
+					if (crossCheckMethod >= 0) {
+						PiParallel.crossCheckPi(digits, method, crossCheckMethod, piRadix);
+						cached = false;
+					} else {
+						cached = PiParallel.calculatePi(digits, method, piRadix, true);
+					}
 					final long elapsed = System.currentTimeMillis() - time;
 					runOnUiThread(() -> {
 						piProgressText.setText(PI_STATUS_FINISHED);
-						piTimeText.setText(String.format(Locale.getDefault(), "%.2f s", elapsed / 1000.0));
+						piTimeText.setText(String.format(Locale.getDefault(), cached ? "%.2f s (cached)" : "%.2f s", elapsed / 1000.0));
 						piResultsButton.setEnabled(true);
 						piCalculationButton.setChecked(false);
 					});
-				} catch (ThreadDeath ignored) {}
+				} catch (CancellationException ignored) {
+				} catch (VerificationException e) {
+					e.printStackTrace();
+					runOnUiThread(() -> {
+						piProgressText.setText(PI_STATUS_VERIFICATION_FAILED);
+						piCalculationButton.setChecked(false);
+					});
+				}
 			}).start();
 		} else {
 			PiParallel.cancel();
@@ -749,6 +860,23 @@ public class CPUSampleApp extends Activity {
 		}
 	}
 
+	/**
+	 * Applies the apfloat context profile tuned for this device, calibrating
+	 * it on the first run. The multiplication kernel and the crossovers of the
+	 * multiplication algorithms are taken from the benchmarks of the profile.
+	 */
+	private void applyApfloatProfile() {
+		long totalMemory = 0;
+		try {
+			totalMemory = memoryManager.getTotalMemory() * 1024;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Properties profile = ApfloatContextProfile.apply(new File(getFilesDir(), APFLOAT_PROFILE_FILE), totalMemory);
+		PiParallel.setNTTKernel(Boolean.parseBoolean(profile.getProperty(ApfloatContextProfile.NTT_KERNEL)));
+		PiParallel.setConvolutionTuning(ConvolutionTuning.fromProperties(profile));
+	}
+
 	/**
 	 * Opens a pop-up with the result of Pi number calculation.
 	 */
@@ -786,48 +914,135 @@ public class CPUSampleApp extends Activity {
 	}
 
 	/**
-	 * Thread used to read and store the CPU usage of the device.
+	 * Handles what happens when the usage sampling rate is changed.
+	 */
+	private void handleSamplingRateChanged() {
+		usageSamplingPeriod = USAGE_SAMPLING_PERIODS[usageSamplingRateSpinner.getSelectedItemPosition()];
+		cpuUsagePoints = Math.min(CPU_USAGE_MAX_POINTS, CPU_USAGE_PLOT_WINDOW / usageSamplingPeriod);
+		if (usageSamplingEngine != null)
+			usageSamplingEngine.setSamplingPeriod(usageSamplingPeriod);
+		if (cpuPlot != null)
+			cpuPlot.setDomainBoundaries(0, cpuUsagePoints, BoundaryMode.FIXED);
+		for (UsageXYSeries series : new UsageXYSeries[] {cpuSeries, core1Series, core2Series, core3Series, core4Series}) {
+			if (series != null)
+				series.setMaxSize(cpuUsagePoints);
+		}
+	}
+
+	/**
+	 * Thread used to move the CPU usage samples from the sampling buffer to the plot series. The
+	 * series can be appended to while the plot is drawn.
 	 */
 	private class CPUUsageThread extends Thread {
+
+		// Variables.
+		private final UsageRingBuffer.Reader reader = usageBuffer.newReader();
+		private final float[] usages = new float[usageBuffer.getCapacity() * usageBuffer.getWidth()];
+
+		private final long[] timestamps = new long[usageBuffer.getCapacity()];
+
 		@Override
 		public void run() {
 			readingUsage = true;
+			int width = usageBuffer.getWidth();
+			// The history is read from the file here to not block the UI thread.
+			try {
+				usageHistory = new UsageHistory(new File(getFilesDir(), USAGE_HISTORY_FILE), width);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 			while (readingUsage) {
 				try {
-					ArrayList<Float> usages = cpuManager.getUsage(250);
-					overallUsage = ((int)(usages.get(0) * 100))/100.0f;
-					if (!readingUsage)
-						return;
-
-					if (cpuSeries.size() > CPU_USAGE_MAX_TIME)
-						cpuSeries.removeFirst();
-					cpuSeries.addLast(null, usages.get(0));
-					if (core1Series.size() > CPU_USAGE_MAX_TIME)
-						core1Series.removeFirst();
-					core1Series.addLast(null, usages.get(1));
-
-					if (numberOfCores > 1) {
-						if (core2Series.size() > CPU_USAGE_MAX_TIME)
-							core2Series.removeFirst();
-						core2Series.addLast(null, usages.get(2));
-					}
-					if (numberOfCores > 2) {
-						if (core3Series.size() > CPU_USAGE_MAX_TIME)
-							core3Series.removeFirst();
-						core3Series.addLast(null, usages.get(3));
-					}
-					if (numberOfCores > 3) {
-						if (core4Series.size() > CPU_USAGE_MAX_TIME)
-							core4Series.removeFirst();
-						core4Series.addLast(null, usages.get(4));
-					}
-				} catch (CPUException e) {
-					e.printStackTrace();
-				}
-				try {
-					Thread.sleep(500);
+					Thread.sleep(CPU_USAGE_PLOT_PERIOD);
 				} catch (InterruptedException ignored) { }
+				if (!readingUsage)
+					break;
+
+				int frames = reader.read(usageBuffer.getCapacity(), usages, timestamps);
+				for (int frame = 0; frame < frames; frame++) {
+					int offset = frame * width;
+					addToHistory(timestamps[frame], offset);
+					cpuSeries.add(usages[offset]);
+					core1Series.add(usages[offset + 1]);
+					if (numberOfCores > 1)
+						core2Series.add(usages[offset + 2]);
+					if (numberOfCores > 2)
+						core3Series.add(usages[offset + 3]);
+					if (numberOfCores > 3)
+						core4Series.add(usages[offset + 4]);
+				}
 			}
+			closeHistory();
+		}
+
+		/**
+		 * Adds a sample to the usage history. The history stops recording if
+		 * its file cannot be written.
+		 *
+		 * @param timestamp Time of the sample, in milliseconds.
+		 * @param offset Index of the sample in the usages array.
+		 */
+		private void addToHistory(long timestamp, int offset) {
+			if (usageHistory == null)
+				return;
+			try {
+				usageHistory.add(timestamp, usages, offset);
+			} catch (IOException e) {
+				e.printStackTrace();
+				closeHistory();
+			}
+		}
+
+		/**
+		 * Closes the usage history, writing the buffered points to the file.
+		 */
+		private void closeHistory() {
+			if (usageHistory == null)
+				return;
+			try {
+				usageHistory.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			usageHistory = null;
+		}
+	}
+
+	/**
+	 * Measures the CPU usage with the CPU manager, which blocks while measuring. Used if
+	 * '/proc/stat' cannot be read directly.
+	 *
+	 * @param usages Receives the overall usage and the usage of each core.
+	 *
+	 * @throws IOException If the usage cannot be measured.
+	 */
+	private void sampleManagerUsage(float[] usages) throws IOException {
+		try {
+			ArrayList<Float> managerUsages = cpuManager.getUsage(USAGE_MEASURING_TIME);
+			for (int i = 0; i < usages.length && i < managerUsages.size(); i++)
+				usages[i] = managerUsages.get(i);
+		} catch (CPUException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads the current frequency of each core from sysfs. The cores whose
+	 * frequency cannot be read, for example because they are offline, get
+	 * the given default frequency.
+	 *
+	 * @param frequencies Receives the frequency of each core, in kHz.
+	 * @param defaultFrequency Frequency of the cores that cannot be read.
+	 */
+	private void readCoreFrequencies(int[] frequencies, int defaultFrequency) {
+		for (int core = 0; core < frequencies.length; core++) {
+			frequencies[core] = defaultFrequency;
+			File file = new File(String.format(Locale.ROOT, CORE_FREQUENCY_FILE, core));
+			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+				String line = reader.readLine();
+				if (line != null)
+					frequencies[core] = Integer.parseInt(line.trim());
+			} catch (IOException | NumberFormatException ignored) { }
 		}
 	}
 
@@ -835,6 +1050,20 @@ public class CPUSampleApp extends Activity {
 	 * Starts reading the usage of the CPU.
 	 */
 	private void startReadingUsage() {
+		usageBuffer = new UsageRingBuffer(USAGE_BUFFER_CAPACITY, numberOfCores + 1);
+
+		UsageSource source;
+		try {
+			procStatSampler = new ProcStatSampler(numberOfCores);
+			source = procStatSampler;
+		} catch (IOException e) {
+			// Fall back to the CPU manager.
+			e.printStackTrace();
+			source = this::sampleManagerUsage;
+		}
+		usageSamplingEngine = new UsageSamplingEngine(source, usageBuffer, usageSamplingPeriod);
+		usageSamplingEngine.start();
+
 		cpuUsageThread = new CPUUsageThread();
 		cpuUsageThread.start();
 	}
@@ -846,56 +1075,182 @@ public class CPUSampleApp extends Activity {
 		readingUsage = false;
 		if (cpuUsageThread != null) {
 			cpuUsageThread.interrupt();
+			// The series must have a single writer.
+			try {
+				cpuUsageThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 			cpuUsageThread = null;
 		}
+		if (usageSamplingEngine != null) {
+			usageSamplingEngine.stop();
+			usageSamplingEngine = null;
+		}
+		if (procStatSampler != null) {
+			try {
+				procStatSampler.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			procStatSampler = null;
+		}
 	}
 
 	/**
 	 * Starts the timer which updates the UI with the new parameters.
 	 */
 	private void startCPUStatusTimer() {
-		if (timer != null)
-			timer.cancel();
+		stopCPUStatusTimer();
 		timer = new Timer(true);
-		timer.schedule(new TimerTask() {
+		statusTask = new CPUStatusTask();
+		timer.schedule(statusTask, 0, 1000);
+	}
+
+	/**
+	 * Stops the timer which updates the UI with the new parameters. The
+	 * telemetry recorder is closed on the timer thread, after the last
+	 * status update.
+	 */
+	private void stopCPUStatusTimer() {
+		if (timer == null)
+			return;
+		final Timer stoppedTimer = timer;
+		final CPUStatusTask stoppedTask = statusTask;
+		stoppedTask.cancel();
+		stoppedTimer.schedule(new TimerTask() {
 			@Override
 			public void run() {
-				runOnUiThread(() -> {
-					cpuPlot.redraw();
-					statusLoops += 1;
-
-					// Update the status values.
-					if (statusLoops == STATUS_PERIOD) {
-						statusLoops = 0;
-						int currentFrequency = -1;
-						float temperature = -1.0f;
-						long memory = -1;
-						long totalMemory = -1;
-						try {
-							currentFrequency = cpuManager.getFrequency();
-							temperature = cpuManager.getCurrentTemperature();
-							memory = memoryManager.getFreeMemory();
-							totalMemory = memoryManager.getTotalMemory();
-						} catch (CPUException | CPUTemperatureException | IOException e) {
-							e.printStackTrace();
-						}
-						statusTemperatureText.setText(String.format(Locale.getDefault(), "%.2f °C", temperature));
-						statusUsageText.setText(String.format(Locale.getDefault(),"%.2f %%", overallUsage));
-						statusFreqText.setText(String.format(Locale.getDefault(),"%d kHz", currentFrequency));
-						statusMemoryText.setText(String.format(Locale.getDefault(),"%d / %d kB", memory, totalMemory));
-					}
-				});
+				stoppedTask.stopRecordingTelemetry();
+				stoppedTimer.cancel();
 			}
-		}, 0, 1000);
+		}, 0);
+		timer = null;
+		statusTask = null;
 	}
 
 	/**
-	 * Stops the timer which updates the UI with the new parameters.
+	 * Task of the CPU status timer. The status is measured and recorded to the
+	 * telemetry segments on the timer thread, only the new values are posted
+	 * to the UI thread.
 	 */
-	private void stopCPUStatusTimer() {
-		if (timer != null) {
-			timer.cancel();
-			timer.purge();
+	private class CPUStatusTask extends TimerTask {
+
+		// Variables.
+		private final UsageRingBuffer buffer = usageBuffer;
+
+		private final float[] usages = new float[buffer.getCapacity() * buffer.getWidth()];
+		private final float[] averages = new float[numberOfCores + 1];
+		private final int[] frequencies = new int[numberOfCores];
+
+		private TelemetryRecorder telemetryRecorder;
+
+		private boolean recordingStarted = false;
+
+		private int loops = 0;
+
+		@Override
+		public void run() {
+			runOnUiThread(() -> cpuPlot.redraw());
+			if (!recordingStarted) {
+				recordingStarted = true;
+				startRecordingTelemetry();
+			}
+
+			loops += 1;
+			if (loops < STATUS_PERIOD)
+				return;
+			loops = 0;
+
+			// Update the status values.
+			int currentFrequency = -1;
+			float temperature = -1.0f;
+			long memory = -1;
+			long totalMemory = -1;
+			try {
+				currentFrequency = cpuManager.getFrequency();
+				temperature = cpuManager.getCurrentTemperature();
+				memory = memoryManager.getFreeMemory();
+				totalMemory = memoryManager.getTotalMemory();
+			} catch (CPUException | CPUTemperatureException | IOException e) {
+				e.printStackTrace();
+			}
+			readAverageUsages();
+			recordTelemetry(currentFrequency, temperature, memory);
+
+			String temperatureText = String.format(Locale.getDefault(), "%.2f °C", temperature);
+			String usageText = String.format(Locale.getDefault(),"%.2f %%", averages[0]);
+			String frequencyText = String.format(Locale.getDefault(),"%d kHz", currentFrequency);
+			String memoryText = String.format(Locale.getDefault(),"%d / %d kB", memory, totalMemory);
+			runOnUiThread(() -> {
+				statusTemperatureText.setText(temperatureText);
+				statusUsageText.setText(usageText);
+				statusFreqText.setText(frequencyText);
+				statusMemoryText.setText(memoryText);
+			});
+		}
+
+		/**
+		 * Reads the average overall CPU usage and the average usage of each
+		 * core of the status period.
+		 */
+		private void readAverageUsages() {
+			int width = buffer.getWidth();
+			int frames = buffer.readLatest(Math.min(buffer.getCapacity(),
+					Math.max(1, STATUS_PERIOD * 1000 / usageSamplingPeriod)), usages, null);
+			Arrays.fill(averages, 0.0f);
+			if (frames == 0)
+				return;
+			for (int frame = 0; frame < frames; frame++) {
+				for (int i = 0; i < width; i++)
+					averages[i] += usages[frame * width + i];
+			}
+			for (int i = 0; i < width; i++)
+				averages[i] /= frames;
+		}
+
+		/**
+		 * Starts recording the CPU status to the telemetry segments.
+		 */
+		private void startRecordingTelemetry() {
+			try {
+				telemetryRecorder = new TelemetryRecorder(new File(getFilesDir(), TELEMETRY_DIRECTORY),
+						numberOfCores, TELEMETRY_SEGMENT_SIZE, TELEMETRY_MAX_SEGMENTS);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Records the CPU status to the telemetry segments. Recording stops if
+		 * a segment cannot be created.
+		 *
+		 * @param frequency Frequency of the CPU, in kHz.
+		 * @param temperature Temperature of the CPU, in degrees Celsius.
+		 * @param freeMemory Free memory, in kB.
+		 */
+		private void recordTelemetry(int frequency, float temperature, long freeMemory) {
+			if (telemetryRecorder == null)
+				return;
+			readCoreFrequencies(frequencies, frequency);
+			try {
+				telemetryRecorder.record(System.currentTimeMillis(), averages, frequencies,
+						temperature, freeMemory);
+			} catch (IOException e) {
+				e.printStackTrace();
+				stopRecordingTelemetry();
+			}
+		}
+
+		/**
+		 * Stops recording the CPU status, forcing the records to storage. Must
+		 * be called on the timer thread.
+		 */
+		void stopRecordingTelemetry() {
+			if (telemetryRecorder != null) {
+				telemetryRecorder.close();
+				telemetryRecorder = null;
+			}
 		}
 	}
 
@@ -906,11 +1261,17 @@ public class CPUSampleApp extends Activity {
 		@Override
 		public void onReceive(Context context, Intent intent) {
 			Bundle b = intent.getExtras();
-			String progress = b != null ? b.getString("progress") : null;
+			String progress = b != null ? b.getString(BroadcastPiListener.EXTRA_PROGRESS) : null;
 			if (progress != null) {
-				piProgressText.setText(progress.equals("100%") ? "Finishing..." : progress);
+				long remainingMillis = b.getLong(BroadcastPiListener.EXTRA_REMAINING_MILLIS, -1);
+				if (progress.equals("100%"))
+					piProgressText.setText("Finishing...");
+				else if (remainingMillis >= 0)
+					piProgressText.setText(String.format(Locale.getDefault(), "%s (%d s left)", progress, (remainingMillis + 999) / 1000));
+				else
+					piProgressText.setText(progress);
 			}
-			String result = b != null ? b.getString("result") : null;
+			String result = b != null ? b.getString(BroadcastPiListener.EXTRA_RESULT) : null;
 			if (result != null)
 				pi = result;
 		}
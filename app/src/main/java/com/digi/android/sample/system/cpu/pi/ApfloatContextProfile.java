@@ -0,0 +1,373 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatContext;
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.spi.BuilderFactory;
+
+/**
+ * Tunes the {@link ApfloatContext} for the device the calculation runs on.
+ * <p>
+ *
+ * The apfloat defaults assume a desktop computer: large caches and a heap
+ * that is small compared to the physical memory. On small ARM modules the
+ * caches are smaller and shared by more cores, and the heap may be a large
+ * part of the RAM. The profile is calibrated from the cache sizes reported
+ * in sysfs, the physical memory and the maximum heap size, and a short
+ * micro-benchmark that picks the fastest L2 cache size setting for the
+ * number theoretic transforms. The same benchmark decides whether the
+ * {@link NTTConvolutionStrategy} kernel is faster than the apfloat
+ * transforms on the device, see {@link #NTT_KERNEL}, and the crossovers of
+ * the multiplication algorithms are measured, see {@link ConvolutionTuning}.
+ * The profile is stored in a properties file and reused until the hardware
+ * or heap size changes.
+ */
+
+public class ApfloatContextProfile {
+	private ApfloatContextProfile() {
+	}
+
+	/**
+	 * Apply the stored profile to the global context, calibrating and
+	 * storing a new profile first if there is no valid one.
+	 *
+	 * @param profileFile
+	 *            The file where the profile is stored.
+	 * @param totalMemory
+	 *            The physical memory of the device in bytes, or 0 if not
+	 *            known.
+	 *
+	 * @return The profile applied.
+	 */
+
+	public static Properties apply(File profileFile, long totalMemory)
+			throws ApfloatRuntimeException {
+		String fingerprint = getFingerprint(totalMemory);
+		Properties profile = load(profileFile);
+		if (profile == null
+				|| !fingerprint.equals(profile.getProperty(FINGERPRINT))
+				|| !isComplete(profile)) {
+			profile = calibrate(totalMemory);
+			profile.setProperty(FINGERPRINT, fingerprint);
+			store(profileFile, profile);
+		}
+
+		ApfloatContext ctx = ApfloatContext.getGlobalContext();
+		for (String key : KEYS) {
+			String value = profile.getProperty(key);
+			if (value != null) {
+				ctx.setProperty(key, value);
+			}
+		}
+
+		return profile;
+	}
+
+	/**
+	 * Calibrate a profile for this device.
+	 *
+	 * @param totalMemory
+	 *            The physical memory of the device in bytes, or 0 if not
+	 *            known.
+	 *
+	 * @return The calibrated {@link ApfloatContext} properties.
+	 */
+
+	public static Properties calibrate(long totalMemory)
+			throws ApfloatRuntimeException {
+		ApfloatContext ctx = ApfloatContext.getContext();
+		int numberOfProcessors = ctx.getNumberOfProcessors();
+
+		// Caches, smallest over all cores since the threads may run on any of them
+
+		int cacheL1Size = readCacheSize(1, ctx.getCacheL1Size());
+		int cacheL2Size = readCacheSize(2, ctx.getCacheL2Size());
+		int cacheBurst = readCacheBurst(ctx.getCacheBurst());
+
+		// Memory, leaving room for the rest of the system and the application
+
+		long available = Runtime.getRuntime().maxMemory();
+		if (totalMemory > 0) {
+			available = Math.min(available, totalMemory / 2);
+		}
+		long maxMemoryBlockSize = Long.highestOneBit(available / 4 * 3);
+		long memoryThreshold = Math.max(maxMemoryBlockSize >> 5,
+				MIN_MEMORY_THRESHOLD);
+		long sharedMemoryTreshold = maxMemoryBlockSize / numberOfProcessors
+				/ 32;
+		int blockSize = (int) Math.max(
+				Math.min(Long.highestOneBit(maxMemoryBlockSize >> 10),
+						MAX_BLOCK_SIZE), MIN_BLOCK_SIZE);
+
+		Properties profile = new Properties();
+		profile.setProperty(ApfloatContext.CACHE_L1_SIZE,
+				String.valueOf(cacheL1Size));
+		profile.setProperty(ApfloatContext.CACHE_BURST,
+				String.valueOf(cacheBurst));
+		profile.setProperty(ApfloatContext.MAX_MEMORY_BLOCK_SIZE,
+				String.valueOf(maxMemoryBlockSize));
+		profile.setProperty(ApfloatContext.MEMORY_THRESHOLD,
+				String.valueOf(memoryThreshold));
+		profile.setProperty(ApfloatContext.SHARED_MEMORY_TRESHOLD,
+				String.valueOf(sharedMemoryTreshold));
+		profile.setProperty(ApfloatContext.BLOCK_SIZE,
+				String.valueOf(blockSize));
+
+		// The reported L2 size is shared by the cores, so the best setting
+		// for the transforms may be smaller
+
+		BuilderFactory builderFactory = DelegatingBuilderFactory.unwrap(ctx
+				.getBuilderFactory());
+		ApfloatContext benchmarkCtx = (ApfloatContext) ctx.clone();
+		benchmarkCtx.setProperties(profile);
+		benchmarkCtx.setBuilderFactory(builderFactory);
+		int bestCacheL2Size = cacheL2Size;
+		long bestTime = Long.MAX_VALUE;
+		for (int candidate = cacheL2Size; candidate >= cacheL1Size
+				&& candidate >= cacheL2Size / 4; candidate /= 2) {
+			benchmarkCtx.setCacheL2Size(candidate);
+			long time = benchmark(benchmarkCtx);
+			if (time < bestTime) {
+				bestTime = time;
+				bestCacheL2Size = candidate;
+			}
+		}
+		profile.setProperty(ApfloatContext.CACHE_L2_SIZE,
+				String.valueOf(bestCacheL2Size));
+
+		// The kernel only replaces the apfloat transforms, with the same
+		// context settings
+
+		boolean nttKernel = false;
+		if (NTTBuilderFactory.isSupported(builderFactory)) {
+			benchmarkCtx.setCacheL2Size(bestCacheL2Size);
+			benchmarkCtx.setBuilderFactory(new NTTBuilderFactory(
+					builderFactory));
+			// Warm up, the apfloat transforms ran for each candidate above
+			benchmark(benchmarkCtx);
+			nttKernel = (benchmark(benchmarkCtx) < bestTime);
+		}
+		profile.setProperty(NTT_KERNEL, String.valueOf(nttKernel));
+
+		// Crossovers of the multiplication algorithms, with the transform
+		// that will be used
+
+		if (ConvolutionTuning.isSupported(builderFactory)) {
+			BuilderFactory tuningBuilderFactory = (nttKernel ? new NTTBuilderFactory(
+					builderFactory) : builderFactory);
+			benchmarkCtx.setBuilderFactory(tuningBuilderFactory);
+			ApfloatContext threadCtx = ApfloatContext.getThreadContext();
+			ApfloatContext.setThreadContext(benchmarkCtx);
+			try {
+				ConvolutionTuning.calibrate(tuningBuilderFactory,
+						benchmarkCtx.getDefaultRadix()).toProperties(profile);
+			} finally {
+				if (threadCtx != null) {
+					ApfloatContext.setThreadContext(threadCtx);
+				} else {
+					ApfloatContext.removeThreadContext();
+				}
+			}
+		}
+
+		return profile;
+	}
+
+	// Best time of a few multiplications that need the six-step transform with the given context
+	private static long benchmark(ApfloatContext benchmarkCtx)
+			throws ApfloatRuntimeException {
+		ApfloatContext threadCtx = ApfloatContext.getThreadContext();
+		ApfloatContext.setThreadContext(benchmarkCtx);
+		try {
+			Random random = new Random(BENCHMARK_DIGITS);
+			StringBuilder buffer = new StringBuilder(BENCHMARK_DIGITS + 2);
+			buffer.append("0.");
+			for (int i = 0; i < BENCHMARK_DIGITS; i++) {
+				buffer.append((char) ('0' + random.nextInt(10)));
+			}
+			Apfloat x = new Apfloat(buffer.toString(), BENCHMARK_DIGITS);
+
+			long bestTime = Long.MAX_VALUE;
+			for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+				long time = System.nanoTime();
+				x.multiply(x);
+				bestTime = Math.min(bestTime, System.nanoTime() - time);
+			}
+			return bestTime;
+		} finally {
+			if (threadCtx != null) {
+				ApfloatContext.setThreadContext(threadCtx);
+			} else {
+				ApfloatContext.removeThreadContext();
+			}
+		}
+	}
+
+	// Profiles stored by older versions lack the multiplication settings
+	private static boolean isComplete(Properties profile) {
+		return (profile.getProperty(NTT_KERNEL) != null && (ConvolutionTuning
+				.fromProperties(profile) != null || !ConvolutionTuning
+				.isSupported(ApfloatContext.getContext().getBuilderFactory())));
+	}
+
+	private static String getFingerprint(long totalMemory) {
+		return readCacheSize(1, 0) + "," + readCacheSize(2, 0) + ","
+				+ readCacheBurst(0) + "," + totalMemory + ","
+				+ Runtime.getRuntime().maxMemory() + ","
+				+ Runtime.getRuntime().availableProcessors();
+	}
+
+	// Smallest data or unified cache of the level on any core, in bytes
+	private static int readCacheSize(int level, int defaultValue) {
+		int size = Integer.MAX_VALUE;
+		for (File cache : listCaches()) {
+			if (String.valueOf(level).equals(readLine(new File(cache, "level")))
+					&& !"Instruction".equals(readLine(new File(cache, "type")))) {
+				int cacheSize = parseSize(readLine(new File(cache, "size")));
+				if (cacheSize > 0) {
+					size = Math.min(size, cacheSize);
+				}
+			}
+		}
+		return (size == Integer.MAX_VALUE ? defaultValue : size);
+	}
+
+	private static int readCacheBurst(int defaultValue) {
+		for (File cache : listCaches()) {
+			int lineSize = parseSize(readLine(new File(cache,
+					"coherency_line_size")));
+			if (lineSize > 0) {
+				return lineSize;
+			}
+		}
+		return defaultValue;
+	}
+
+	private static File[] listCaches() {
+		List<File> caches = new ArrayList<File>();
+		File[] cpus = new File(CPU_DIRECTORY).listFiles();
+		if (cpus != null) {
+			for (File cpu : cpus) {
+				if (cpu.getName().matches("cpu[0-9]+")) {
+					File[] indexes = new File(cpu, "cache").listFiles();
+					if (indexes != null) {
+						for (File index : indexes) {
+							if (index.getName().startsWith("index")) {
+								caches.add(index);
+							}
+						}
+					}
+				}
+			}
+		}
+		return caches.toArray(new File[caches.size()]);
+	}
+
+	// Sizes are like "32K" or "1M"
+	private static int parseSize(String size) {
+		if (size == null || size.length() == 0) {
+			return 0;
+		}
+		int multiplier = 1;
+		char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+		if (unit == 'K') {
+			multiplier = 1024;
+		} else if (unit == 'M') {
+			multiplier = 1024 * 1024;
+		}
+		try {
+			return Integer.parseInt(multiplier == 1 ? size : size.substring(0,
+					size.length() - 1)) * multiplier;
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	private static String readLine(File file) {
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line = reader.readLine();
+				return (line == null ? null : line.trim());
+			} finally {
+				reader.close();
+			}
+		} catch (IOException ioe) {
+			return null;
+		}
+	}
+
+	private static Properties load(File profileFile) {
+		if (!profileFile.isFile()) {
+			return null;
+		}
+		Properties profile = new Properties();
+		try {
+			InputStream in = new FileInputStream(profileFile);
+			try {
+				profile.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			return null;
+		}
+		return profile;
+	}
+
+	// Failing to store only means calibrating again on the next run
+	private static void store(File profileFile, Properties profile) {
+		try {
+			OutputStream out = new FileOutputStream(profileFile);
+			try {
+				profile.store(out, "apfloat context profile");
+			} finally {
+				out.close();
+			}
+		} catch (IOException ioe) {
+			if (Pi.err != null)
+				Pi.err.println("Unable to store profile: " + ioe.getMessage());
+		}
+	}
+
+	private static final String CPU_DIRECTORY = "/sys/devices/system/cpu";
+
+	/**
+	 * Profile property telling whether the {@link NTTConvolutionStrategy}
+	 * kernel was faster than the apfloat transforms, <code>true</code> or
+	 * <code>false</code>. The property is not applied to the context.
+	 */
+
+	public static final String NTT_KERNEL = "profile.nttKernel";
+
+	private static final String FINGERPRINT = "profile.fingerprint";
+
+	private static final String[] KEYS = { ApfloatContext.CACHE_L1_SIZE,
+			ApfloatContext.CACHE_L2_SIZE, ApfloatContext.CACHE_BURST,
+			ApfloatContext.MAX_MEMORY_BLOCK_SIZE,
+			ApfloatContext.MEMORY_THRESHOLD,
+			ApfloatContext.SHARED_MEMORY_TRESHOLD, ApfloatContext.BLOCK_SIZE };
+
+	private static final long MIN_MEMORY_THRESHOLD = 65536;
+
+	private static final long MIN_BLOCK_SIZE = 65536;
+
+	private static final long MAX_BLOCK_SIZE = 1024 * 1024;
+
+	private static final int BENCHMARK_DIGITS = 1 << 19;
+
+	private static final int BENCHMARK_ROUNDS = 3;
+}
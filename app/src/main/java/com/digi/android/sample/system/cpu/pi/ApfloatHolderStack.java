@@ -0,0 +1,115 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread stack of reusable {@link ApfloatHolder}s for the intermediate
+ * results of the binary splitting recursion.
+ * <p>
+ *
+ * Each recursion level pushes a frame for the results of its left range,
+ * and pops it after the combine step. Popping clears the references to the
+ * numbers held, so they can be garbage collected right away, and the next
+ * call at the same depth reuses the holders. The frames may be handed over
+ * to other threads to fill in, as long as the owning thread waits for them
+ * before popping.
+ */
+
+public class ApfloatHolderStack {
+	/**
+	 * Holders for the T, Q and P of one range of terms.
+	 */
+
+	public static class Frame {
+		private Frame() {
+			allocationCount.addAndGet(3);
+		}
+
+		private void clear() {
+			this.T.setApfloat(null);
+			this.Q.setApfloat(null);
+			this.P.setApfloat(null);
+		}
+
+		/**
+		 * Holder for T.
+		 */
+
+		public final ApfloatHolder T = new ApfloatHolder();
+
+		/**
+		 * Holder for Q.
+		 */
+
+		public final ApfloatHolder Q = new ApfloatHolder();
+
+		/**
+		 * Holder for P.
+		 */
+
+		public final ApfloatHolder P = new ApfloatHolder();
+	}
+
+	private ApfloatHolderStack() {
+		this.frames = new Frame[INITIAL_DEPTH];
+	}
+
+	/**
+	 * Push a frame on the stack of the current thread.
+	 *
+	 * @return A frame with empty holders.
+	 */
+
+	public static Frame push() {
+		ApfloatHolderStack stack = stacks.get();
+		if (stack.depth == stack.frames.length) {
+			Frame[] frames = new Frame[2 * stack.depth];
+			System.arraycopy(stack.frames, 0, frames, 0, stack.depth);
+			stack.frames = frames;
+		}
+		Frame frame = stack.frames[stack.depth];
+		if (frame == null) {
+			frame = new Frame();
+			stack.frames[stack.depth] = frame;
+		}
+		stack.depth++;
+
+		return frame;
+	}
+
+	/**
+	 * Pop the topmost frame from the stack of the current thread, clearing
+	 * its holders.
+	 */
+
+	public static void pop() {
+		ApfloatHolderStack stack = stacks.get();
+		assert (stack.depth > 0);
+		stack.frames[--stack.depth].clear();
+	}
+
+	/**
+	 * Get the total number of holders allocated by all stacks. This stays
+	 * proportional to the recursion depth times the number of threads,
+	 * instead of growing with the number of terms.
+	 *
+	 * @return The number of holders allocated.
+	 */
+
+	public static long getAllocationCount() {
+		return allocationCount.get();
+	}
+
+	private static final int INITIAL_DEPTH = 64;
+
+	private static final AtomicLong allocationCount = new AtomicLong();
+
+	private static final ThreadLocal<ApfloatHolderStack> stacks = new ThreadLocal<ApfloatHolderStack>() {
+		protected ApfloatHolderStack initialValue() {
+			return new ApfloatHolderStack();
+		}
+	};
+
+	private Frame[] frames;
+	private int depth;
+}
@@ -1,15 +1,21 @@
 package com.digi.android.sample.system.cpu.pi;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apfloat.ApfloatContext;
 
 /**
  * Class for running an {@link Operation} in the background in a separate thread.
  * The operation is executed using the ExecutorService retrieved from
- * {@link ApfloatContext#getExecutorService()}.
+ * {@link ApfloatContext#getExecutorService()}.<p>
+ *
+ * The operation is registered with the current {@link CancellationToken}
+ * of {@link Pi}, so cancelling the calculation cancels the operation.
  *
  * @version 1.1
  * @author Mikko Tommila
@@ -32,11 +38,25 @@ public class BackgroundOperation<T>
         {
             public T call()
             {
-                return operation.execute();
+                if (!BackgroundOperation.this.started.compareAndSet(false, true))
+                {
+                    // Cancelled before it was started
+                    return null;
+                }
+                try
+                {
+                    return operation.execute();
+                }
+                finally
+                {
+                    BackgroundOperation.this.finished.countDown();
+                }
             }
         };
 
+        this.cancellationToken = Pi.getCancellationToken();
         this.future = executorService.submit(callable);
+        this.cancellationToken.register(this.future);
     }
 
     /**
@@ -53,13 +73,18 @@ public class BackgroundOperation<T>
     /**
      * Get the result of the operation.
      * This method blocks until the operation has been completed.
+     * If the calling thread is interrupted, the calculation is cancelled.
+     * In any case this method does not return before the operation has
+     * stopped running.
      *
      * @return Result of the operation.
      *
+     * @exception CancellationException If the calculation was cancelled.
      * @exception RuntimeException If an exception was thrown by the executed operation.
      */
 
     public T getResult()
+        throws CancellationException
     {
         try
         {
@@ -67,13 +92,70 @@ public class BackgroundOperation<T>
         }
         catch (InterruptedException ie)
         {
-            throw new RuntimeException(ie);
+            this.cancellationToken.cancel();
+            awaitTermination();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+        catch (CancellationException ce)
+        {
+            awaitTermination();
+            throw ce;
         }
         catch (ExecutionException ee)
         {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
             throw new RuntimeException(ee);
         }
+        finally
+        {
+            this.cancellationToken.unregister(this.future);
+        }
+    }
+
+    /**
+     * Wait until the operation is not running, without getting its result.
+     * If the operation has not been started yet, it is prevented from starting.
+     * The wait can't be interrupted, since the operation may still be
+     * using data owned by the caller.
+     */
+
+    public void awaitTermination()
+    {
+        if (this.started.compareAndSet(false, true))
+        {
+            // Will never run
+            return;
+        }
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                this.finished.await();
+                break;
+            }
+            catch (InterruptedException ie)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
     }
 
     private Future<T> future;
+    private CancellationToken cancellationToken;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
 }
@@ -0,0 +1,220 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.Apint;
+import org.apfloat.ApintMath;
+
+/**
+ * Spot-checks calculated digits of pi with the Bailey-Borwein-Plouffe
+ * formula.
+ * <p>
+ *
+ * The BBP formula gives the hexadecimal digits of pi starting at any
+ * position, without calculating the digits before it, using only modular
+ * exponentiation of primitive integers and double precision sums. The
+ * calculated value is checked at its last digits and at a few random
+ * positions in the upper half. The hexadecimal digits at a position are the
+ * fractional part of pi multiplied by a power of 16. Going through the
+ * positions in increasing order, each product only needs the digits after
+ * the previous position, so the check costs about two full precision
+ * multiplications instead of converting all the digits to radix 16. The
+ * BBP sums run in the background in parallel with the multiplications.
+ * <p>
+ *
+ * Any corruption in the calculation changes practically all the digits
+ * after the point where it happened, so checking the last digits detects
+ * it, and the other positions tell roughly where it happened.
+ */
+
+public class BbpVerifier {
+	private BbpVerifier() {
+	}
+
+	/**
+	 * Check the last digits of pi and the digits at random positions.
+	 *
+	 * @param pi
+	 *            The calculated value of pi, correct to all of its digits.
+	 * @param positions
+	 *            Number of positions to check, including the last one.
+	 *
+	 * @exception VerificationException
+	 *                If the digits at some position are not correct.
+	 */
+
+	public static void verify(Apfloat pi, int positions)
+			throws VerificationException, ApfloatRuntimeException {
+		long maxPosition = getMaxPosition(pi.precision(), pi.radix());
+		if (maxPosition < 0 || positions <= 0) {
+			return;
+		}
+
+		// Corruption changes the digits from where it happened to the end,
+		// so the last position is always checked
+		Random random = new Random();
+		long[] position = new long[positions];
+		position[0] = maxPosition;
+		for (int i = 1; i < positions; i++) {
+			position[i] = maxPosition / 2
+					+ (long) (random.nextDouble() * (maxPosition - maxPosition / 2 + 1));
+		}
+		Arrays.sort(position);
+
+		final CancellationToken stop = new CancellationToken();
+		List<BackgroundOperation<Double>> expected = new ArrayList<BackgroundOperation<Double>>(
+				positions);
+		try {
+			for (int i = 0; i < positions; i++) {
+				final long d = position[i];
+				expected.add(new BackgroundOperation<Double>(
+						new Operation<Double>() {
+							public Double execute() {
+								return fraction(d, stop);
+							}
+						}));
+			}
+
+			// Each position is reached by shifting the fractional part at
+			// the previous position, so only the first product has all the
+			// digits
+			Apfloat x = pi;
+			long previousPosition = 0;
+			for (int i = 0; i < positions; i++) {
+				x = shift(x, position[i] - previousPosition);
+				previousPosition = position[i];
+				double actual = x.doubleValue();
+				double difference = Math.abs(expected.get(i).getResult()
+						- actual);
+				if (Math.min(difference, 1.0 - difference) >= TOLERANCE) {
+					throw new VerificationException("Hexadecimal digits at "
+							+ position[i] + " are " + toHex(actual)
+							+ ", expected "
+							+ toHex(expected.get(i).getResult()), position[i]);
+				}
+			}
+		} finally {
+			// The sums share the executor with the calculations, so the
+			// ones left when the check ends early must not keep running
+			stop.cancel();
+			for (BackgroundOperation<Double> operation : expected) {
+				operation.awaitTermination();
+			}
+		}
+	}
+
+	/**
+	 * Get the last position that can be checked in a value of pi.
+	 *
+	 * @param precision
+	 *            Precision of the value.
+	 * @param radix
+	 *            Radix of the value.
+	 *
+	 * @return The last position, or -1 if the value has too few digits.
+	 */
+
+	public static long getMaxPosition(long precision, int radix) {
+		long hexDigits = (long) (precision * Math.log(radix) / Math.log(16));
+		return Math.min(hexDigits - GUARD_DIGITS, MAX_POSITION);
+	}
+
+	/**
+	 * Calculate the fractional part of pi multiplied by 16<sup>d</sup> with
+	 * the BBP formula. The hexadecimal digits of the result are the
+	 * hexadecimal digits of pi starting at position <code>d + 1</code>.
+	 *
+	 * @param d
+	 *            The position, at most {@link #MAX_POSITION}.
+	 *
+	 * @return The fractional part, accurate to about 24 bits.
+	 */
+
+	public static double fraction(long d) {
+		return fraction(d, new CancellationToken());
+	}
+
+	// Stops with a CancellationException if the token is cancelled
+	private static double fraction(long d, CancellationToken stop) {
+		double x = 4 * series(1, d, stop) - 2 * series(4, d, stop)
+				- series(5, d, stop) - series(6, d, stop);
+		return x - Math.floor(x);
+	}
+
+	// Fractional part of x * 16^d
+	private static Apfloat shift(Apfloat x, long d)
+			throws ApfloatRuntimeException {
+		Pi.checkAlive();
+		Apint power = ApintMath.pow(new Apint(16, x.radix()), d);
+		Pi.checkAlive();
+		return x.multiply(power).frac();
+	}
+
+	// Fractional part of sum 16^(d - k) / (8k + j) for k >= 0
+	private static double series(int j, long d, CancellationToken stop) {
+		double s = 0;
+		for (long k = 0; k <= d; k++) {
+			if ((k & CHECK_INTERVAL) == 0) {
+				Pi.checkAlive();
+				stop.throwIfCancelled();
+			}
+			long m = 8 * k + j;
+			s += (double) powMod16(d - k, m) / m;
+			s -= Math.floor(s);
+		}
+		for (long k = d + 1;; k++) {
+			double term = Math.pow(16, d - k) / (8 * k + j);
+			if (term < TAIL_EPSILON) {
+				break;
+			}
+			s += term;
+		}
+		return s - Math.floor(s);
+	}
+
+	// 16^e mod m, with m < 2^31 so the products fit in a long
+	private static long powMod16(long e, long m) {
+		long result = 1 % m, base = 16 % m;
+		while (e > 0) {
+			if ((e & 1) != 0) {
+				result = result * base % m;
+			}
+			base = base * base % m;
+			e >>= 1;
+		}
+		return result;
+	}
+
+	private static String toHex(double fraction) {
+		String hex = Long.toHexString((long) (fraction * (1 << 4 * HEX_DIGITS))
+				| 1L << 4 * HEX_DIGITS);
+		return hex.substring(1).toUpperCase();
+	}
+
+	/**
+	 * Largest position that can be checked. The moduli of the BBP sums must
+	 * fit in 31 bits.
+	 */
+
+	public static final long MAX_POSITION = (Integer.MAX_VALUE - 6) / 8;
+
+	// Number of digits displayed in the error message
+	private static final int HEX_DIGITS = 6;
+
+	// The BBP sums are accurate to about 1e-9 even at the largest position.
+	// Values that differ within the first six digits almost always differ
+	// by more than this.
+	private static final double TOLERANCE = 1.0 / (1 << 4 * HEX_DIGITS);
+
+	// The product with the power of 16 needs digits after the position
+	private static final long GUARD_DIGITS = 16;
+
+	private static final double TAIL_EPSILON = 1e-17;
+
+	private static final long CHECK_INTERVAL = 0xFFFF;
+}
@@ -0,0 +1,103 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Token for cooperatively cancelling a calculation.
+ * <p>
+ *
+ * The calculation polls the token between operations and stops with a
+ * {@link CancellationException}. Futures of the work running in the
+ * background are registered with the token, so cancelling also cancels
+ * them: work that has not started yet never runs, and threads waiting for
+ * the futures wake up. The running threads are not interrupted, since an
+ * interrupt would close the file channels of the disk data storages.
+ * Instead an apfloat operation that has already started runs to its end,
+ * so the time until all threads are idle is bounded by the longest single
+ * multiplication in progress.
+ * <p>
+ *
+ * This implementation is thread safe.
+ */
+
+public class CancellationToken {
+	/**
+	 * Cancel the calculation.
+	 */
+
+	public void cancel() {
+		List<Future<?>> futures;
+		synchronized (this) {
+			if (this.cancelled) {
+				return;
+			}
+			this.cancelled = true;
+			futures = this.futures;
+			this.futures = null;
+		}
+		for (Future<?> future : futures) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Test if the calculation has been cancelled.
+	 * 
+	 * @return <code>true</code> if {@link #cancel()} has been called.
+	 */
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Stop the calculation if it has been cancelled.
+	 * 
+	 * @exception CancellationException
+	 *                If {@link #cancel()} has been called.
+	 */
+
+	public void throwIfCancelled() throws CancellationException {
+		if (this.cancelled) {
+			throw new CancellationException("Calculation cancelled");
+		}
+	}
+
+	/**
+	 * Register a future of background work, to be cancelled with the
+	 * calculation. If the calculation has been cancelled already, the future
+	 * is cancelled immediately.
+	 * 
+	 * @param future
+	 *            The future.
+	 */
+
+	public void register(Future<?> future) {
+		synchronized (this) {
+			if (!this.cancelled) {
+				this.futures.add(future);
+				return;
+			}
+		}
+		future.cancel(false);
+	}
+
+	/**
+	 * Remove a future that has completed.
+	 * 
+	 * @param future
+	 *            The future.
+	 */
+
+	public synchronized void unregister(Future<?> future) {
+		if (this.futures != null) {
+			this.futures.remove(future);
+		}
+	}
+
+	private volatile boolean cancelled;
+	private List<Future<?>> futures = new ArrayList<Future<?>>();
+}
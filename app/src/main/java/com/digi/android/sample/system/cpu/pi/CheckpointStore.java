@@ -0,0 +1,312 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Stores the T, Q and P of completed binary splitting ranges in files, so
+ * that an interrupted calculation can be resumed.
+ * <p>
+ *
+ * Each range is stored in its own file, with a small header followed by
+ * the numbers in the native apfloat serialized form, which keeps the digits
+ * in the packed binary format of the data storages. Files are written to a
+ * temporary name, synced and then renamed, so a reset while writing never
+ * leaves a partial checkpoint behind. When a range has been stored, the
+ * checkpoints of the ranges inside it are deleted.
+ * <p>
+ *
+ * The stored ranges are only valid for the same calculation, so the store
+ * is tied to a fingerprint of the calculation parameters, and resuming only
+ * finds the ranges if the calculation splits the terms the same way.
+ * <p>
+ *
+ * This implementation is thread safe.
+ */
+
+public class CheckpointStore {
+	/**
+	 * Open a checkpoint store. Any checkpoints in the directory made with a
+	 * different fingerprint are deleted.
+	 *
+	 * @param directory
+	 *            The directory of the checkpoint files, created if needed.
+	 * @param fingerprint
+	 *            Identifies the calculation parameters.
+	 * @param minTerms
+	 *            Ranges shorter than this are not stored.
+	 * @param interval
+	 *            Minimum time in milliseconds between storing ranges.
+	 *
+	 * @exception IOException
+	 *                If the directory can't be created or read.
+	 */
+
+	public CheckpointStore(File directory, String fingerprint, long minTerms,
+			long interval) throws IOException {
+		this.directory = directory;
+		this.minTerms = minTerms;
+		this.interval = interval;
+		this.lastSaveTime = System.currentTimeMillis();
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + directory);
+		}
+
+		File manifest = new File(directory, MANIFEST);
+		Properties properties = new Properties();
+		if (manifest.isFile()) {
+			InputStream in = new FileInputStream(manifest);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		if (!fingerprint.equals(properties.getProperty(FINGERPRINT))) {
+			clear();
+			properties.setProperty(FINGERPRINT, fingerprint);
+			OutputStream out = new FileOutputStream(manifest);
+			try {
+				properties.store(out, "Pi checkpoints");
+			} finally {
+				out.close();
+			}
+		}
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to list " + directory);
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(TEMPORARY_SUFFIX)) {
+				file.delete();
+			} else if (name.endsWith(SUFFIX)) {
+				String[] range = name.substring(0,
+						name.length() - SUFFIX.length()).split("-");
+				try {
+					put(Long.parseLong(range[0]), Long.parseLong(range[1]));
+				} catch (RuntimeException re) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of terms a range must have to be stored.
+	 *
+	 * @return Minimum number of terms.
+	 */
+
+	public long getMinTerms() {
+		return this.minTerms;
+	}
+
+	/**
+	 * Load a stored range.
+	 *
+	 * @param n1
+	 *            Start term.
+	 * @param n2
+	 *            End term.
+	 * @param T
+	 *            Receives T of the range.
+	 * @param Q
+	 *            Receives Q of the range.
+	 * @param P
+	 *            Receives P of the range, may be <code>null</code>.
+	 *
+	 * @return <code>true</code> if the range was stored, <code>false</code>
+	 *         if it needs to be calculated.
+	 */
+
+	public boolean load(long n1, long n2, ApfloatHolder T, ApfloatHolder Q,
+			ApfloatHolder P) throws ApfloatRuntimeException {
+		if (!contains(n1, n2)) {
+			return false;
+		}
+		File file = getFile(n1, n2, SUFFIX);
+		try {
+			ObjectInputStream in = new ObjectInputStream(
+					new BufferedInputStream(new FileInputStream(file),
+							BUFFER_SIZE));
+			try {
+				if (in.readInt() != MAGIC || in.readLong() != n1
+						|| in.readLong() != n2) {
+					throw new IOException("Invalid checkpoint " + file);
+				}
+				boolean hasP = in.readBoolean();
+				if (P != null && !hasP) {
+					return false;
+				}
+				T.setApfloat((Apfloat) in.readObject());
+				Q.setApfloat((Apfloat) in.readObject());
+				if (P != null) {
+					P.setApfloat((Apfloat) in.readObject());
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			return discard(n1, n2, ioe);
+		} catch (ClassNotFoundException cnfe) {
+			return discard(n1, n2, cnfe);
+		}
+		return true;
+	}
+
+	/**
+	 * Store a completed range, if it is long enough and enough time has
+	 * passed since the previous range was stored.
+	 *
+	 * @param n1
+	 *            Start term.
+	 * @param n2
+	 *            End term.
+	 * @param T
+	 *            T of the range.
+	 * @param Q
+	 *            Q of the range.
+	 * @param P
+	 *            P of the range, may be <code>null</code>.
+	 */
+
+	public void save(long n1, long n2, Apfloat T, Apfloat Q, Apfloat P)
+			throws ApfloatRuntimeException {
+		if (n2 - n1 < this.minTerms) {
+			return;
+		}
+		synchronized (this) {
+			long time = System.currentTimeMillis();
+			if (time - this.lastSaveTime < this.interval) {
+				return;
+			}
+			this.lastSaveTime = time;
+		}
+
+		File temporaryFile = getFile(n1, n2, TEMPORARY_SUFFIX);
+		try {
+			FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+			try {
+				ObjectOutputStream out = new ObjectOutputStream(
+						new BufferedOutputStream(fileOut, BUFFER_SIZE));
+				out.writeInt(MAGIC);
+				out.writeLong(n1);
+				out.writeLong(n2);
+				out.writeBoolean(P != null);
+				out.writeObject(T);
+				out.writeObject(Q);
+				if (P != null) {
+					out.writeObject(P);
+				}
+				out.flush();
+				fileOut.getFD().sync();
+			} finally {
+				fileOut.close();
+			}
+			if (!temporaryFile.renameTo(getFile(n1, n2, SUFFIX))) {
+				throw new IOException("Unable to rename " + temporaryFile);
+			}
+		} catch (IOException ioe) {
+			// Not fatal, the range is just not resumable
+			temporaryFile.delete();
+			if (Pi.err != null)
+				Pi.err.println("Unable to store checkpoint: "
+						+ ioe.getMessage());
+			return;
+		}
+
+		// The ranges inside this one are not needed any more
+		for (long[] range : put(n1, n2)) {
+			getFile(range[0], range[1], SUFFIX).delete();
+		}
+	}
+
+	/**
+	 * Delete all the checkpoints.
+	 */
+
+	public void clear() {
+		synchronized (this) {
+			this.ranges.clear();
+		}
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(SUFFIX)
+						|| file.getName().endsWith(TEMPORARY_SUFFIX)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	// Adds a range and returns the ranges inside it, which are removed
+	private synchronized List<long[]> put(long n1, long n2) {
+		List<long[]> inside = new ArrayList<long[]>();
+		for (Map.Entry<Long, Long> entry : this.ranges.subMap(n1, n2)
+				.entrySet()) {
+			if (entry.getValue() <= n2) {
+				inside.add(new long[] { entry.getKey(), entry.getValue() });
+			}
+		}
+		for (long[] range : inside) {
+			this.ranges.remove(range[0]);
+		}
+		this.ranges.put(n1, n2);
+		return inside;
+	}
+
+	private synchronized boolean contains(long n1, long n2) {
+		Long end = this.ranges.get(n1);
+		return (end != null && end == n2);
+	}
+
+	private boolean discard(long n1, long n2, Exception e) {
+		synchronized (this) {
+			this.ranges.remove(n1);
+		}
+		getFile(n1, n2, SUFFIX).delete();
+		if (Pi.err != null)
+			Pi.err.println("Discarding checkpoint: " + e.getMessage());
+		return false;
+	}
+
+	private File getFile(long n1, long n2, String suffix) {
+		return new File(this.directory, n1 + "-" + n2 + suffix);
+	}
+
+	private static final String MANIFEST = "checkpoint.properties";
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String SUFFIX = ".ckpt";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final int MAGIC = 0x50694350; // "PiCP"
+	private static final int BUFFER_SIZE = 65536;
+
+	private final File directory;
+	private final long minTerms;
+	private final long interval;
+	private long lastSaveTime;
+
+	// End term of the stored range starting at each term; since stored
+	// ranges never overlap partially, one range per start term is enough
+	private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+}
@@ -0,0 +1,499 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.internal.IntConvolutionBuilder;
+import org.apfloat.internal.IntRadixConstants;
+import org.apfloat.internal.LongConvolutionBuilder;
+import org.apfloat.internal.LongRadixConstants;
+import org.apfloat.spi.ArrayAccess;
+import org.apfloat.spi.BuilderFactory;
+import org.apfloat.spi.ConvolutionBuilder;
+import org.apfloat.spi.ConvolutionStrategy;
+import org.apfloat.spi.DataStorage;
+import org.apfloat.spi.NTTBuilder;
+import org.apfloat.spi.Util;
+
+/**
+ * Crossover points between the multiplication algorithms, measured on the
+ * device.
+ * <p>
+ *
+ * apfloat picks the algorithm of each multiplication from a cost model.
+ * Multiplying numbers of <i>n</i><sub>1</sub> &le; <i>n</i><sub>2</sub>
+ * elements costs <i>n</i><sub>1</sub><i>n</i><sub>2</sub> with the basic
+ * algorithm, <i>k</i><i>n</i><sub>1</sub><sup>log<sub>2</sub>3</sup>
+ * <i>n</i><sub>2</sub>/<i>n</i><sub>1</sub> with Karatsuba and
+ * <i>t</i><i>n</i> log<sub>2</sub><i>n</i> with the transform, where
+ * <i>n</i> = <i>n</i><sub>1</sub> + <i>n</i><sub>2</sub>, and numbers of at
+ * most the cutoff point elements always use the basic algorithm. The
+ * factors <i>k</i> and <i>t</i> are constants tuned for desktop computers.
+ * The relative speed of the algorithms depends on the caches and the
+ * pipeline of the core, so the algorithms are timed on the device at
+ * sizes around the crossovers, and the cutoff point and the factors are
+ * chosen so that the cost model picks the fastest algorithm at each size.
+ * <p>
+ *
+ * The tuning is stored in the {@link ApfloatContextProfile} and used
+ * through a {@link TunedBuilderFactory}.
+ */
+
+public class ConvolutionTuning {
+	/**
+	 * Create a tuning.
+	 *
+	 * @param karatsubaCutoffPoint
+	 *            Numbers of at most this many elements use the basic
+	 *            algorithm.
+	 * @param karatsubaCostFactor
+	 *            The Karatsuba factor <i>k</i> of the cost model.
+	 * @param nttCostFactor
+	 *            The transform factor <i>t</i> of the cost model.
+	 */
+
+	public ConvolutionTuning(int karatsubaCutoffPoint,
+			float karatsubaCostFactor, float nttCostFactor) {
+		this.karatsubaCutoffPoint = karatsubaCutoffPoint;
+		this.karatsubaCostFactor = karatsubaCostFactor;
+		this.nttCostFactor = nttCostFactor;
+	}
+
+	/**
+	 * Test if the multiplications of a builder factory can be tuned.
+	 *
+	 * @param builderFactory
+	 *            The builder factory.
+	 *
+	 * @return <code>true</code> if the elements are <code>int</code>s or
+	 *         <code>long</code>s.
+	 */
+
+	public static boolean isSupported(BuilderFactory builderFactory) {
+		Class<?> elementType = builderFactory.getElementType();
+		return (elementType == Integer.TYPE || elementType == Long.TYPE);
+	}
+
+	/**
+	 * Measure the crossover points of the multiplications of a builder
+	 * factory in the current context.
+	 *
+	 * @param builderFactory
+	 *            The builder factory, including the transform that will be
+	 *            used, for example an {@link NTTBuilderFactory}.
+	 * @param radix
+	 *            The radix of the numbers.
+	 *
+	 * @return The tuning.
+	 *
+	 * @exception IllegalArgumentException
+	 *                If the element type of the factory is not supported.
+	 */
+
+	public static ConvolutionTuning calibrate(BuilderFactory builderFactory,
+			int radix) throws IllegalArgumentException,
+			ApfloatRuntimeException {
+		Algorithms algorithms = createConvolutionBuilder(builderFactory,
+				DEFAULT);
+		int count = Util.log2down(MAX_SIZE / MIN_SIZE) + 1;
+		long[][] time = new long[ALGORITHMS][count];
+		for (int i = -WARMUP_SIZES; i < count; i++) {
+			long size = MIN_SIZE << (i < 0 ? i + WARMUP_SIZES : i);
+			DataStorage x = createDataStorage(builderFactory, radix, size), y = createDataStorage(
+					builderFactory, radix, size);
+			for (int algorithm = 0; algorithm < ALGORITHMS; algorithm++) {
+				ConvolutionStrategy convolutionStrategy;
+				if (algorithm == NTT
+						&& builderFactory instanceof NTTBuilderFactory
+						&& NTTConvolutionStrategy.isSupported(size, size)) {
+					convolutionStrategy = new NTTConvolutionStrategy(radix);
+				} else {
+					convolutionStrategy = algorithms.createConvolution(
+							algorithm, radix, size);
+				}
+				long elapsed = benchmark(convolutionStrategy, x, y);
+				if (i >= 0) {
+					time[algorithm][i] = elapsed;
+				}
+			}
+		}
+
+		// Many tunings make the cost model pick the fastest algorithm at the
+		// measured sizes, so the one closest to the apfloat defaults is used
+		ConvolutionTuning defaultTuning = algorithms.getDefaultTuning(), bestTuning = defaultTuning;
+		double bestRegret = regret(defaultTuning, time), bestDistance = 0;
+		for (int i = -1; i < count; i++) {
+			int karatsubaCutoffPoint = (i < 0 ? MIN_KARATSUBA_CUTOFF_POINT
+					: (int) (MIN_SIZE << i));
+			for (double karatsubaCostFactor = MIN_COST_FACTOR; karatsubaCostFactor <= MAX_COST_FACTOR; karatsubaCostFactor *= COST_FACTOR_STEP) {
+				for (double nttCostFactor = MIN_COST_FACTOR; nttCostFactor <= MAX_COST_FACTOR; nttCostFactor *= COST_FACTOR_STEP) {
+					ConvolutionTuning tuning = new ConvolutionTuning(
+							karatsubaCutoffPoint, (float) karatsubaCostFactor,
+							(float) nttCostFactor);
+					double regret = regret(tuning, time), distance = distance(
+							tuning, defaultTuning);
+					if (regret < bestRegret - REGRET_TOLERANCE
+							|| regret < bestRegret + REGRET_TOLERANCE
+							&& distance < bestDistance) {
+						bestTuning = tuning;
+						bestRegret = Math.min(regret, bestRegret);
+						bestDistance = distance;
+					}
+				}
+			}
+		}
+
+		return bestTuning;
+	}
+
+	/**
+	 * Read a tuning from properties.
+	 *
+	 * @param properties
+	 *            The properties, see {@link #KARATSUBA_CUTOFF_POINT},
+	 *            {@link #KARATSUBA_COST_FACTOR} and {@link #NTT_COST_FACTOR}.
+	 *
+	 * @return The tuning, or <code>null</code> if the properties don't
+	 *         contain a valid tuning.
+	 */
+
+	public static ConvolutionTuning fromProperties(Properties properties) {
+		try {
+			int karatsubaCutoffPoint = Integer.parseInt(properties
+					.getProperty(KARATSUBA_CUTOFF_POINT));
+			float karatsubaCostFactor = Float.parseFloat(properties
+					.getProperty(KARATSUBA_COST_FACTOR));
+			float nttCostFactor = Float.parseFloat(properties
+					.getProperty(NTT_COST_FACTOR));
+			if (karatsubaCutoffPoint > 0 && karatsubaCostFactor > 0
+					&& nttCostFactor > 0) {
+				return new ConvolutionTuning(karatsubaCutoffPoint,
+						karatsubaCostFactor, nttCostFactor);
+			}
+		} catch (RuntimeException re) {
+			// Missing or not a number
+		}
+		return null;
+	}
+
+	/**
+	 * Write the tuning to properties.
+	 *
+	 * @param properties
+	 *            The properties.
+	 */
+
+	public void toProperties(Properties properties) {
+		properties.setProperty(KARATSUBA_CUTOFF_POINT,
+				String.valueOf(this.karatsubaCutoffPoint));
+		properties.setProperty(KARATSUBA_COST_FACTOR,
+				String.valueOf(this.karatsubaCostFactor));
+		properties.setProperty(NTT_COST_FACTOR,
+				String.valueOf(this.nttCostFactor));
+	}
+
+	/**
+	 * Get the cutoff point of the basic algorithm.
+	 *
+	 * @return Numbers of at most this many elements use the basic algorithm.
+	 */
+
+	public int getKaratsubaCutoffPoint() {
+		return this.karatsubaCutoffPoint;
+	}
+
+	/**
+	 * Get the Karatsuba factor of the cost model.
+	 *
+	 * @return The factor <i>k</i>.
+	 */
+
+	public float getKaratsubaCostFactor() {
+		return this.karatsubaCostFactor;
+	}
+
+	/**
+	 * Get the transform factor of the cost model.
+	 *
+	 * @return The factor <i>t</i>.
+	 */
+
+	public float getNTTCostFactor() {
+		return this.nttCostFactor;
+	}
+
+	public String toString() {
+		return "cutoff " + this.karatsubaCutoffPoint + ", Karatsuba "
+				+ this.karatsubaCostFactor + ", NTT " + this.nttCostFactor;
+	}
+
+	/**
+	 * Create a convolution builder that picks the algorithms with this
+	 * tuning.
+	 *
+	 * @param builderFactory
+	 *            The builder factory the convolutions are for.
+	 *
+	 * @return The convolution builder.
+	 *
+	 * @exception IllegalArgumentException
+	 *                If the element type of the factory is not supported.
+	 */
+
+	ConvolutionBuilder createConvolutionBuilder(BuilderFactory builderFactory)
+			throws IllegalArgumentException {
+		return (ConvolutionBuilder) createConvolutionBuilder(builderFactory,
+				this);
+	}
+
+	private static Algorithms createConvolutionBuilder(
+			BuilderFactory builderFactory, ConvolutionTuning tuning)
+			throws IllegalArgumentException {
+		Class<?> elementType = builderFactory.getElementType();
+		if (elementType == Integer.TYPE) {
+			return new TunedIntConvolutionBuilder(tuning,
+					builderFactory.getNTTBuilder());
+		} else if (elementType == Long.TYPE) {
+			return new TunedLongConvolutionBuilder(tuning,
+					builderFactory.getNTTBuilder());
+		}
+		throw new IllegalArgumentException("Unsupported element type "
+				+ elementType);
+	}
+
+	// The algorithm picked for numbers of the same size, like
+	// AbstractConvolutionBuilder does
+	private static int select(ConvolutionTuning tuning, long size) {
+		if (size <= tuning.karatsubaCutoffPoint) {
+			return BASIC;
+		}
+		double basicCost = (double) size * size, karatsubaCost = tuning.karatsubaCostFactor
+				* Math.pow(size, LOG2_3), nttCost = tuning.nttCostFactor * 2
+				* size * Util.log2down(2 * size);
+		if (basicCost <= Math.min(karatsubaCost, nttCost)) {
+			return BASIC;
+		}
+		return (karatsubaCost <= nttCost ? KARATSUBA : NTT);
+	}
+
+	// Sum of the time of the picked algorithms relative to the fastest ones
+	private static double regret(ConvolutionTuning tuning, long[][] time) {
+		double regret = 0;
+		for (int i = 0; i < time[BASIC].length; i++) {
+			long bestTime = Math.min(time[BASIC][i],
+					Math.min(time[KARATSUBA][i], time[NTT][i]));
+			regret += (double) time[select(tuning, MIN_SIZE << i)][i]
+					/ bestTime - 1;
+		}
+		return regret;
+	}
+
+	private static double distance(ConvolutionTuning tuning1,
+			ConvolutionTuning tuning2) {
+		return Math.abs(Math.log((double) tuning1.karatsubaCutoffPoint
+				/ tuning2.karatsubaCutoffPoint))
+				+ Math.abs(Math.log(tuning1.karatsubaCostFactor
+						/ tuning2.karatsubaCostFactor))
+				+ Math.abs(Math.log(tuning1.nttCostFactor
+						/ tuning2.nttCostFactor));
+	}
+
+	// Random number with all elements below the base
+	private static DataStorage createDataStorage(BuilderFactory builderFactory,
+			int radix, long size) throws ApfloatRuntimeException {
+		Random random = new Random(size);
+		DataStorage dataStorage = builderFactory.getDataStorageBuilder()
+				.createDataStorage(size * builderFactory.getElementSize());
+		dataStorage.setSize(size);
+		ArrayAccess arrayAccess = dataStorage.getArray(DataStorage.WRITE, 0,
+				(int) size);
+		try {
+			if (builderFactory.getElementType() == Integer.TYPE) {
+				int[] data = arrayAccess.getIntData();
+				int base = IntRadixConstants.BASE[radix];
+				for (int i = 0; i < size; i++) {
+					data[arrayAccess.getOffset() + i] = random.nextInt(base);
+				}
+			} else {
+				long[] data = arrayAccess.getLongData();
+				long base = LongRadixConstants.BASE[radix];
+				for (int i = 0; i < size; i++) {
+					data[arrayAccess.getOffset() + i] = (random.nextLong() >>> 1)
+							% base;
+				}
+			}
+		} finally {
+			arrayAccess.close();
+		}
+		dataStorage.setReadOnly();
+		return dataStorage;
+	}
+
+	// Best time of a few rounds, each repeated long enough to be measurable
+	private static long benchmark(ConvolutionStrategy convolutionStrategy,
+			DataStorage x, DataStorage y) throws ApfloatRuntimeException {
+		long resultSize = x.getSize() + y.getSize(), bestTime = Long.MAX_VALUE;
+		for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+			int repeats = 0;
+			long time = System.nanoTime(), elapsed;
+			do {
+				convolutionStrategy.convolute(x, y, resultSize);
+				repeats++;
+				elapsed = System.nanoTime() - time;
+			} while (elapsed < MIN_BENCHMARK_TIME);
+			bestTime = Math.min(bestTime, elapsed / repeats);
+		}
+		return bestTime;
+	}
+
+	private interface Algorithms {
+		public ConvolutionStrategy createConvolution(int algorithm, int radix,
+				long size);
+
+		public ConvolutionTuning getDefaultTuning();
+	}
+
+	private static class TunedIntConvolutionBuilder extends
+			IntConvolutionBuilder implements Algorithms {
+		public TunedIntConvolutionBuilder(ConvolutionTuning tuning,
+				NTTBuilder nttBuilder) {
+			this.tuning = tuning;
+			this.nttBuilder = nttBuilder;
+		}
+
+		public ConvolutionStrategy createConvolution(int algorithm, int radix,
+				long size) {
+			switch (algorithm) {
+			case BASIC:
+				return createMediumConvolutionStrategy(radix);
+			case KARATSUBA:
+				return createKaratsubaConvolutionStrategy(radix);
+			default:
+				return createThreeNTTConvolutionStrategy(radix,
+						this.nttBuilder.createNTT(2 * size));
+			}
+		}
+
+		public ConvolutionTuning getDefaultTuning() {
+			return new ConvolutionTuning(super.getKaratsubaCutoffPoint(),
+					super.getKaratsubaCostFactor(), super.getNTTCostFactor());
+		}
+
+		protected int getKaratsubaCutoffPoint() {
+			return (this.tuning != null ? this.tuning.karatsubaCutoffPoint
+					: super.getKaratsubaCutoffPoint());
+		}
+
+		protected float getKaratsubaCostFactor() {
+			return (this.tuning != null ? this.tuning.karatsubaCostFactor
+					: super.getKaratsubaCostFactor());
+		}
+
+		protected float getNTTCostFactor() {
+			return (this.tuning != null ? this.tuning.nttCostFactor : super
+					.getNTTCostFactor());
+		}
+
+		private final ConvolutionTuning tuning;
+		private final NTTBuilder nttBuilder;
+	}
+
+	private static class TunedLongConvolutionBuilder extends
+			LongConvolutionBuilder implements Algorithms {
+		public TunedLongConvolutionBuilder(ConvolutionTuning tuning,
+				NTTBuilder nttBuilder) {
+			this.tuning = tuning;
+			this.nttBuilder = nttBuilder;
+		}
+
+		public ConvolutionStrategy createConvolution(int algorithm, int radix,
+				long size) {
+			switch (algorithm) {
+			case BASIC:
+				return createMediumConvolutionStrategy(radix);
+			case KARATSUBA:
+				return createKaratsubaConvolutionStrategy(radix);
+			default:
+				return createThreeNTTConvolutionStrategy(radix,
+						this.nttBuilder.createNTT(2 * size));
+			}
+		}
+
+		public ConvolutionTuning getDefaultTuning() {
+			return new ConvolutionTuning(super.getKaratsubaCutoffPoint(),
+					super.getKaratsubaCostFactor(), super.getNTTCostFactor());
+		}
+
+		protected int getKaratsubaCutoffPoint() {
+			return (this.tuning != null ? this.tuning.karatsubaCutoffPoint
+					: super.getKaratsubaCutoffPoint());
+		}
+
+		protected float getKaratsubaCostFactor() {
+			return (this.tuning != null ? this.tuning.karatsubaCostFactor
+					: super.getKaratsubaCostFactor());
+		}
+
+		protected float getNTTCostFactor() {
+			return (this.tuning != null ? this.tuning.nttCostFactor : super
+					.getNTTCostFactor());
+		}
+
+		private final ConvolutionTuning tuning;
+		private final NTTBuilder nttBuilder;
+	}
+
+	/**
+	 * Profile property of the cutoff point of the basic algorithm.
+	 */
+
+	public static final String KARATSUBA_CUTOFF_POINT = "profile.karatsubaCutoffPoint";
+
+	/**
+	 * Profile property of the Karatsuba factor of the cost model.
+	 */
+
+	public static final String KARATSUBA_COST_FACTOR = "profile.karatsubaCostFactor";
+
+	/**
+	 * Profile property of the transform factor of the cost model.
+	 */
+
+	public static final String NTT_COST_FACTOR = "profile.nttCostFactor";
+
+	// The builders use the apfloat constants without a tuning
+	private static final ConvolutionTuning DEFAULT = null;
+
+	private static final int BASIC = 0;
+	private static final int KARATSUBA = 1;
+	private static final int NTT = 2;
+	private static final int ALGORITHMS = 3;
+
+	// Sizes measured, in elements
+	private static final long MIN_SIZE = 16;
+	private static final long MAX_SIZE = 4096;
+
+	// The Karatsuba strategies use the basic algorithm below this anyway
+	private static final int MIN_KARATSUBA_CUTOFF_POINT = 15;
+
+	// Smallest sizes measured once more first, to compile the algorithms
+	private static final int WARMUP_SIZES = 3;
+
+	// Cost factors searched
+	private static final double MIN_COST_FACTOR = 0.5;
+	private static final double MAX_COST_FACTOR = 200;
+	private static final double COST_FACTOR_STEP = 1.1892071150027210667; // 2^(1/4)
+
+	// Differences in the relative time smaller than this are noise
+	private static final double REGRET_TOLERANCE = 0.05;
+
+	private static final int BENCHMARK_ROUNDS = 3;
+	private static final long MIN_BENCHMARK_TIME = 2000000;
+
+	private static final double LOG2_3 = Math.log(3) / Math.log(2);
+
+	private final int karatsubaCutoffPoint;
+	private final float karatsubaCostFactor;
+	private final float nttCostFactor;
+}
@@ -0,0 +1,77 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Watches for cores being enabled or disabled during a calculation, and
+ * updates the {@link CoreTopology} of {@link PiParallel} when they are.
+ * <p>
+ *
+ * The kernel doesn't notify changes of <code>/sys/devices/system/cpu/online</code>
+ * to inotify watches, so a separate low priority thread polls it at a
+ * fixed interval. Reading the one line costs a few microseconds.
+ * <p>
+ *
+ * This implementation is thread safe.
+ */
+
+public class CoreHotplugMonitor {
+	/**
+	 * Create a monitor.
+	 *
+	 * @param pollInterval
+	 *            Milliseconds between the polls.
+	 */
+
+	public CoreHotplugMonitor(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * Start polling.
+	 */
+
+	public synchronized void start() {
+		if (this.poller != null) {
+			return;
+		}
+		this.poller = new Thread(new Runnable() {
+			public void run() {
+				String online = CoreTopology.readOnlineCpuList();
+				try {
+					while (!Thread.interrupted()) {
+						Thread.sleep(CoreHotplugMonitor.this.pollInterval);
+						String current = CoreTopology.readOnlineCpuList();
+						if (current != null && !current.equals(online)) {
+							online = current;
+							PiParallel.updateCoreTopology();
+						}
+					}
+				} catch (InterruptedException ie) {
+					// Stopped
+				}
+			}
+		}, "Pi hotplug monitor");
+		this.poller.setPriority(Thread.MIN_PRIORITY);
+		this.poller.setDaemon(true);
+		this.poller.start();
+	}
+
+	/**
+	 * Stop polling.
+	 */
+
+	public synchronized void stop() {
+		if (this.poller == null) {
+			return;
+		}
+		this.poller.interrupt();
+		try {
+			this.poller.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		this.poller = null;
+	}
+
+	private final long pollInterval;
+	private Thread poller;
+}
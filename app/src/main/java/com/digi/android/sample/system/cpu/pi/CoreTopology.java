@@ -0,0 +1,259 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The cores that are currently enabled and their relative capacities, read
+ * from <code>/sys/devices/system/cpu</code>.
+ * <p>
+ *
+ * The capacity of a core is its maximum frequency,
+ * <code>cpuinfo_max_freq</code>. On heterogeneous SoCs the big cores have a
+ * higher maximum frequency than the LITTLE cores, and so get more of the
+ * work. The cores are ordered by decreasing capacity, so that consecutive
+ * slots of threads are placed on similar cores.
+ * <p>
+ *
+ * If the files can't be read, for example when not running on Linux, all
+ * of the available processors are assumed to be enabled and to have the
+ * same capacity.
+ * <p>
+ *
+ * Instances of this class are immutable. A new instance must be read after
+ * a core is enabled or disabled.
+ */
+
+public class CoreTopology {
+	private CoreTopology(int[] cpus, long[] capacities) {
+		this.cpus = cpus;
+		this.capacities = capacities;
+	}
+
+	/**
+	 * Read the currently enabled cores.
+	 *
+	 * @return The core topology.
+	 */
+
+	public static CoreTopology read() {
+		int[] online = readOnlineCpus();
+		if (online == null || online.length == 0) {
+			return createUniform(Runtime.getRuntime().availableProcessors());
+		}
+
+		List<long[]> cores = new ArrayList<long[]>(online.length);
+		long maxCapacity = 0;
+		for (int cpu : online) {
+			long capacity = readMaxFrequency(cpu);
+			cores.add(new long[] { cpu, capacity });
+			maxCapacity = Math.max(maxCapacity, capacity);
+		}
+		if (maxCapacity <= 0) {
+			return createUniform(online);
+		}
+
+		// Cores without a frequency driver are assumed to be big cores
+		for (long[] core : cores) {
+			if (core[1] <= 0)
+				core[1] = maxCapacity;
+		}
+		Collections.sort(cores, new Comparator<long[]>() {
+			public int compare(long[] core1, long[] core2) {
+				return (core1[1] != core2[1] ? Long.compare(core2[1], core1[1])
+						: Long.compare(core1[0], core2[0]));
+			}
+		});
+
+		int[] cpus = new int[cores.size()];
+		long[] capacities = new long[cores.size()];
+		for (int i = 0; i < cpus.length; i++) {
+			cpus[i] = (int) cores.get(i)[0];
+			capacities[i] = cores.get(i)[1];
+		}
+
+		return new CoreTopology(cpus, capacities);
+	}
+
+	/**
+	 * Get the number of enabled cores.
+	 *
+	 * @return The number of enabled cores, at least 1.
+	 */
+
+	public int getNumberOfCores() {
+		return this.cpus.length;
+	}
+
+	/**
+	 * Get the CPU number of a core.
+	 *
+	 * @param index
+	 *            Index of the core, in order of decreasing capacity.
+	 *
+	 * @return The CPU number, as used by the kernel.
+	 */
+
+	public int getCpu(int index) {
+		return this.cpus[index];
+	}
+
+	/**
+	 * Get the CPU numbers of all the enabled cores.
+	 *
+	 * @return The CPU numbers, in order of decreasing capacity.
+	 */
+
+	public int[] getCpus() {
+		return this.cpus.clone();
+	}
+
+	/**
+	 * Get the total capacity of consecutive cores. Indexes past the last
+	 * core wrap around, as the threads of the slots are then sharing the
+	 * cores.
+	 *
+	 * @param index
+	 *            Index of the first core.
+	 * @param count
+	 *            Number of cores.
+	 *
+	 * @return The total capacity, in kHz if the frequencies are known.
+	 */
+
+	public long getCapacity(int index, int count) {
+		long capacity = 0;
+		for (int i = 0; i < count; i++) {
+			capacity += this.capacities[(index + i) % this.capacities.length];
+		}
+		return capacity;
+	}
+
+	/**
+	 * Test if all the enabled cores have the same capacity.
+	 *
+	 * @return <code>true</code> if the cores are not heterogeneous.
+	 */
+
+	public boolean isUniform() {
+		return (this.capacities[0] == this.capacities[this.capacities.length - 1]);
+	}
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CoreTopology)) {
+			return false;
+		}
+		CoreTopology that = (CoreTopology) obj;
+		return (Arrays.equals(this.cpus, that.cpus) && Arrays.equals(
+				this.capacities, that.capacities));
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(this.cpus) * 31
+				+ Arrays.hashCode(this.capacities);
+	}
+
+	public String toString() {
+		StringBuilder buffer = new StringBuilder("CoreTopology[");
+		for (int i = 0; i < this.cpus.length; i++) {
+			if (i > 0)
+				buffer.append(", ");
+			buffer.append("cpu").append(this.cpus[i]).append('=')
+					.append(this.capacities[i]);
+		}
+		return buffer.append(']').toString();
+	}
+
+	private static CoreTopology createUniform(int numberOfProcessors) {
+		int[] cpus = new int[Math.max(numberOfProcessors, 1)];
+		for (int i = 0; i < cpus.length; i++) {
+			cpus[i] = i;
+		}
+		return createUniform(cpus);
+	}
+
+	private static CoreTopology createUniform(int[] cpus) {
+		long[] capacities = new long[cpus.length];
+		Arrays.fill(capacities, 1);
+		return new CoreTopology(cpus, capacities);
+	}
+
+	/**
+	 * Read the list of enabled cores, as given by the kernel. Cheaper than
+	 * {@link #read()} for checking if the cores have changed.
+	 *
+	 * @return The list, like <code>0-3,6</code>, or <code>null</code> if
+	 *         it can't be read.
+	 */
+
+	static String readOnlineCpuList() {
+		return readLine(new File(CPU_DIRECTORY, "online"));
+	}
+
+	// Parses a CPU list like "0-3,6", or returns null if it can't be read
+	private static int[] readOnlineCpus() {
+		String list = readOnlineCpuList();
+		if (list == null) {
+			return null;
+		}
+		List<Integer> cpus = new ArrayList<Integer>();
+		try {
+			for (String range : list.split(",")) {
+				range = range.trim();
+				if (range.length() == 0)
+					continue;
+				int dash = range.indexOf('-');
+				int first = Integer.parseInt(dash < 0 ? range : range
+						.substring(0, dash));
+				int last = (dash < 0 ? first : Integer.parseInt(range
+						.substring(dash + 1)));
+				for (int cpu = first; cpu <= last; cpu++) {
+					cpus.add(cpu);
+				}
+			}
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+		int[] result = new int[cpus.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = cpus.get(i);
+		}
+		return result;
+	}
+
+	// Returns 0 if the frequency is not known
+	private static long readMaxFrequency(int cpu) {
+		String frequency = readLine(new File(CPU_DIRECTORY, "cpu" + cpu
+				+ "/cpufreq/cpuinfo_max_freq"));
+		try {
+			return (frequency == null ? 0 : Long.parseLong(frequency.trim()));
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	private static String readLine(File file) {
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				return in.readLine();
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			return null;
+		}
+	}
+
+	private static final String CPU_DIRECTORY = "/sys/devices/system/cpu";
+
+	private final int[] cpus;
+	private final long[] capacities;
+}
@@ -0,0 +1,109 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.spi.AdditionBuilder;
+import org.apfloat.spi.ApfloatBuilder;
+import org.apfloat.spi.BuilderFactory;
+import org.apfloat.spi.CarryCRTBuilder;
+import org.apfloat.spi.ConvolutionBuilder;
+import org.apfloat.spi.DataStorageBuilder;
+import org.apfloat.spi.MatrixBuilder;
+import org.apfloat.spi.NTTBuilder;
+
+/**
+ * Builder factory that delegates everything to another builder factory.
+ * Subclasses replace some of the builders, so that they can be combined
+ * with any data storage and with each other.
+ */
+
+public abstract class DelegatingBuilderFactory implements BuilderFactory {
+	/**
+	 * Create a builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory to delegate to.
+	 */
+
+	protected DelegatingBuilderFactory(BuilderFactory builderFactory) {
+		this.builderFactory = builderFactory;
+	}
+
+	/**
+	 * Get the builder factory that is delegated to.
+	 *
+	 * @return The delegate builder factory.
+	 */
+
+	public BuilderFactory getBuilderFactory() {
+		return this.builderFactory;
+	}
+
+	/**
+	 * Remove all delegating builder factories around a builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory.
+	 *
+	 * @return The innermost builder factory.
+	 */
+
+	public static BuilderFactory unwrap(BuilderFactory builderFactory) {
+		while (builderFactory instanceof DelegatingBuilderFactory) {
+			builderFactory = ((DelegatingBuilderFactory) builderFactory)
+					.getBuilderFactory();
+		}
+		return builderFactory;
+	}
+
+	public ApfloatBuilder getApfloatBuilder() {
+		return this.builderFactory.getApfloatBuilder();
+	}
+
+	public DataStorageBuilder getDataStorageBuilder() {
+		return this.builderFactory.getDataStorageBuilder();
+	}
+
+	public <T> AdditionBuilder<T> getAdditionBuilder(Class<T> elementType)
+			throws IllegalArgumentException {
+		return this.builderFactory.getAdditionBuilder(elementType);
+	}
+
+	public ConvolutionBuilder getConvolutionBuilder() {
+		return this.builderFactory.getConvolutionBuilder();
+	}
+
+	public NTTBuilder getNTTBuilder() {
+		return this.builderFactory.getNTTBuilder();
+	}
+
+	public MatrixBuilder getMatrixBuilder() {
+		return this.builderFactory.getMatrixBuilder();
+	}
+
+	public <T> CarryCRTBuilder<T> getCarryCRTBuilder(Class<T> elementArrayType)
+			throws IllegalArgumentException {
+		return this.builderFactory.getCarryCRTBuilder(elementArrayType);
+	}
+
+	public Class<?> getElementType() {
+		return this.builderFactory.getElementType();
+	}
+
+	public Class<?> getElementArrayType() {
+		return this.builderFactory.getElementArrayType();
+	}
+
+	public int getElementSize() {
+		return this.builderFactory.getElementSize();
+	}
+
+	public void shutdown() throws ApfloatRuntimeException {
+		this.builderFactory.shutdown();
+	}
+
+	public void gc() throws ApfloatRuntimeException {
+		this.builderFactory.gc();
+	}
+
+	private final BuilderFactory builderFactory;
+}
@@ -0,0 +1,262 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Keeps the digits of pi calculated in previous runs in files, so that a
+ * calculation to the same or a lower precision only needs to load them.
+ * <p>
+ *
+ * For each radix, the value with the most digits calculated so far is
+ * stored as text, after a small header giving the radix and the number of
+ * digits, so that lookups can be answered without loading the digits. The
+ * digits are read only up to the requested precision, so a short request
+ * after a long run doesn't load the whole value. The text doesn't depend on
+ * the element type of the data storage either. Files are written to a temporary name, synced and then renamed, so a
+ * reset while writing never leaves a partial value behind.
+ * <p>
+ *
+ * This implementation is thread safe.
+ */
+
+public class DigitCache {
+	/**
+	 * Open a digit cache.
+	 *
+	 * @param directory
+	 *            The directory of the cache files, created if needed.
+	 *
+	 * @exception IOException
+	 *                If the directory can't be created.
+	 */
+
+	public DigitCache(File directory) throws IOException {
+		this.directory = directory;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + directory);
+		}
+	}
+
+	/**
+	 * Get the number of digits cached for a radix.
+	 *
+	 * @param radix
+	 *            The radix.
+	 *
+	 * @return The number of digits that can be loaded, or 0 if none.
+	 */
+
+	public synchronized long getDigits(int radix) {
+		File file = getFile(radix, SUFFIX);
+		if (!file.isFile()) {
+			return 0;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				return (readHeader(in, radix) ? in.readLong() : 0);
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Load the cached digits.
+	 *
+	 * @param precision
+	 *            Number of digits needed.
+	 * @param radix
+	 *            The radix.
+	 *
+	 * @return The value truncated to <code>precision</code> digits, or
+	 *         <code>null</code> if fewer digits are cached.
+	 */
+
+	public synchronized Apfloat load(long precision, int radix)
+			throws ApfloatRuntimeException {
+		File file = getFile(radix, SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), BUFFER_SIZE));
+			try {
+				if (!readHeader(in, radix) || in.readLong() < precision) {
+					return null;
+				}
+				// Pi has at most two integer digits in any radix, the
+				// digits read beyond the precision are truncated
+				PushbackReader digits = new PushbackReader(new LimitedReader(
+						new InputStreamReader(in, CHARSET), precision + 1));
+				Apfloat value = new Apfloat(digits, precision, radix);
+				// Parsing stops at a damaged digit instead of failing
+				if (digits.read() >= 0) {
+					throw new IOException("Invalid digits in "
+							+ getFile(radix, SUFFIX));
+				}
+				return value;
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			return discard(radix, ioe);
+		} catch (NumberFormatException nfe) {
+			return discard(radix, nfe);
+		}
+	}
+
+	/**
+	 * Store a calculated value, if it has more digits than the cached value
+	 * of the same radix.
+	 *
+	 * @param value
+	 *            The value, correct to all of its digits.
+	 */
+
+	public synchronized void store(Apfloat value)
+			throws ApfloatRuntimeException {
+		int radix = value.radix();
+		long precision = value.precision();
+		if (precision <= getDigits(radix)) {
+			return;
+		}
+
+		File temporaryFile = getFile(radix, TEMPORARY_SUFFIX);
+		try {
+			FileOutputStream fileOut = new FileOutputStream(temporaryFile);
+			try {
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(fileOut, BUFFER_SIZE));
+				out.writeInt(MAGIC);
+				out.writeInt(radix);
+				out.writeLong(precision);
+				Writer digits = new OutputStreamWriter(out, CHARSET);
+				// Fixed point, so the digits can be read up to any precision
+				value.writeTo(digits, true);
+				digits.flush();
+				fileOut.getFD().sync();
+			} finally {
+				fileOut.close();
+			}
+			if (!temporaryFile.renameTo(getFile(radix, SUFFIX))) {
+				throw new IOException("Unable to rename " + temporaryFile);
+			}
+		} catch (IOException ioe) {
+			// Not fatal, the value is just calculated again next time
+			temporaryFile.delete();
+			if (Pi.err != null)
+				Pi.err.println("Unable to cache digits: " + ioe.getMessage());
+		}
+	}
+
+	/**
+	 * Delete all the cached digits.
+	 */
+
+	public synchronized void clear() {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(SUFFIX)
+						|| file.getName().endsWith(TEMPORARY_SUFFIX)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private static boolean readHeader(DataInputStream in, int radix)
+			throws IOException {
+		return (in.readInt() == MAGIC && in.readInt() == radix);
+	}
+
+	private Apfloat discard(int radix, Exception e) {
+		getFile(radix, SUFFIX).delete();
+		if (Pi.err != null)
+			Pi.err.println("Discarding cached digits: " + e.getMessage());
+		return null;
+	}
+
+	private File getFile(int radix, String suffix) {
+		return new File(this.directory, "pi-radix" + radix + suffix);
+	}
+
+	/**
+	 * Reader that ends after a number of digits, so that only the digits
+	 * needed are read. The radix point is not counted.
+	 */
+
+	private static class LimitedReader extends FilterReader {
+		public LimitedReader(Reader in, long remaining) {
+			super(in);
+			this.remaining = remaining;
+		}
+
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int c = super.read();
+			if (c >= 0 && c != '.') {
+				this.remaining--;
+			}
+			return c;
+		}
+
+		public int read(char[] buffer, int offset, int length)
+				throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int count = super.read(buffer, offset,
+					(int) Math.min(length, this.remaining));
+			for (int i = 0; i < count; i++) {
+				if (buffer[offset + i] != '.') {
+					this.remaining--;
+				}
+			}
+			return count;
+		}
+
+		public long skip(long n) throws IOException {
+			throw new IOException("Skip not supported");
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+
+		private long remaining;
+	}
+
+	private static final String SUFFIX = ".digits";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final int MAGIC = 0x50694454; // "PiDT"
+	private static final int BUFFER_SIZE = 65536;
+	private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+	private final File directory;
+}
@@ -0,0 +1,58 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Result sink that streams all the digits of the number to a file through a
+ * buffered {@link FileChannel}.
+ */
+
+public class FileResultSink implements ResultSink {
+	/**
+	 * Construct a sink writing to the specified file. An existing file is
+	 * overwritten.
+	 * 
+	 * @param file
+	 *            The file to write to.
+	 */
+
+	public FileResultSink(File file) {
+		this.file = file;
+	}
+
+	public void write(Apfloat result) throws IOException,
+			ApfloatRuntimeException {
+		FileChannel channel = new FileOutputStream(this.file).getChannel();
+		try {
+			Writer writer = new BufferedWriter(Channels.newWriter(channel,
+					"US-ASCII"), BUFFER_SIZE);
+			result.writeTo(writer, false);
+			writer.flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Get the file the digits are written to.
+	 * 
+	 * @return The file.
+	 */
+
+	public File getFile() {
+		return this.file;
+	}
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private File file;
+}
@@ -0,0 +1,77 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Listener that keeps the latest progress and result in memory, for
+ * running the calculation headless. Reporting never blocks, and the values
+ * can be polled from any thread.
+ */
+
+public class InMemoryPiListener implements ProgressListener, ResultListener {
+	public void progress(int percentComplete, double termsPerSecond,
+			long remainingMillis) {
+		this.termsPerSecond = termsPerSecond;
+		this.remainingMillis = remainingMillis;
+		this.percentComplete = percentComplete;
+	}
+
+	public void result(String prefix) {
+		this.result = prefix;
+	}
+
+	/**
+	 * Get the latest progress.
+	 * 
+	 * @return Percentage complete.
+	 */
+
+	public int getPercentComplete() {
+		return this.percentComplete;
+	}
+
+	/**
+	 * Get the latest calculation rate.
+	 * 
+	 * @return Average number of series terms calculated per second.
+	 */
+
+	public double getTermsPerSecond() {
+		return this.termsPerSecond;
+	}
+
+	/**
+	 * Get the latest estimate of the remaining time.
+	 * 
+	 * @return Remaining time in milliseconds, or -1 if not known.
+	 */
+
+	public long getRemainingMillis() {
+		return this.remainingMillis;
+	}
+
+	/**
+	 * Get the result.
+	 * 
+	 * @return The first digits of the result, or <code>null</code> if the
+	 *         calculation has not completed.
+	 */
+
+	public String getResult() {
+		return this.result;
+	}
+
+	/**
+	 * Clear the progress and result for a new calculation.
+	 */
+
+	public void reset() {
+		this.percentComplete = 0;
+		this.termsPerSecond = 0;
+		this.remainingMillis = -1;
+		this.result = null;
+	}
+
+	private volatile int percentComplete;
+	private volatile String result;
+	private volatile double termsPerSecond;
+	private volatile long remainingMillis = -1;
+}
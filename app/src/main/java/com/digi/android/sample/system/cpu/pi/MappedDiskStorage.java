@@ -0,0 +1,324 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.internal.BackingStorageException;
+import org.apfloat.internal.IntBuilderFactory;
+import org.apfloat.internal.IntDataStorageBuilder;
+import org.apfloat.internal.IntDiskDataStorage;
+import org.apfloat.internal.LongBuilderFactory;
+import org.apfloat.internal.LongDataStorageBuilder;
+import org.apfloat.internal.LongDiskDataStorage;
+import org.apfloat.spi.BuilderFactory;
+import org.apfloat.spi.DataStorage;
+import org.apfloat.spi.DataStorageBuilder;
+
+/**
+ * Disk data storage that reads and writes its file through memory mapped
+ * windows instead of seeking and copying with the file channel.
+ * <p>
+ *
+ * All data of the apfloat disk storages is transferred block by block with
+ * {@link org.apfloat.internal.DiskDataStorage#transferTo} and
+ * {@link org.apfloat.internal.DiskDataStorage#transferFrom}. The storages
+ * here map a window of the file around the requested position and copy
+ * directly from and to the mapped memory, so consecutive blocks and the
+ * column reads of the transposed NTT steps are served from the page cache
+ * without a system call for each block. One window is cached per file and
+ * shared by all subsequences of the storage.
+ * <p>
+ *
+ * Mapped windows are released only when they are garbage collected, so the
+ * disk space of deleted temporary files may be reclaimed with some delay.
+ */
+
+public class MappedDiskStorage {
+	private MappedDiskStorage() {
+	}
+
+	/**
+	 * Create a builder factory that uses memory mapped disk storages, with
+	 * the same element type as an existing builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory currently in use.
+	 *
+	 * @return A memory mapped builder factory, or <code>null</code> if the
+	 *         element type of the factory is not supported.
+	 */
+
+	public static BuilderFactory createBuilderFactory(
+			BuilderFactory builderFactory) {
+		Class<?> elementType = builderFactory.getElementType();
+		if (elementType == Long.TYPE) {
+			return new MappedLongBuilderFactory();
+		} else if (elementType == Integer.TYPE) {
+			return new MappedIntBuilderFactory();
+		}
+		return null;
+	}
+
+	/**
+	 * Test if a builder factory uses memory mapped disk storages.
+	 *
+	 * @param builderFactory
+	 *            The builder factory.
+	 *
+	 * @return <code>true</code> if the factory was created by
+	 *         {@link #createBuilderFactory(BuilderFactory)}.
+	 */
+
+	public static boolean isMapped(BuilderFactory builderFactory) {
+		return (builderFactory instanceof MappedLongBuilderFactory || builderFactory instanceof MappedIntBuilderFactory);
+	}
+
+	/**
+	 * Set the size of the mapped windows. Larger windows need fewer mappings
+	 * but more address space. Applies to windows mapped after the call.
+	 *
+	 * @param windowSize
+	 *            The window size in bytes, a power of two of at least
+	 *            {@link #MIN_WINDOW_SIZE}.
+	 *
+	 * @exception IllegalArgumentException
+	 *                If the window size is not valid.
+	 */
+
+	public static void setWindowSize(int windowSize)
+			throws IllegalArgumentException {
+		if (windowSize < MIN_WINDOW_SIZE
+				|| (windowSize & (windowSize - 1)) != 0) {
+			throw new IllegalArgumentException("Invalid window size "
+					+ windowSize);
+		}
+		MappedDiskStorage.windowSize = windowSize;
+	}
+
+	/**
+	 * Get the size of the mapped windows.
+	 *
+	 * @return The window size in bytes.
+	 */
+
+	public static int getWindowSize() {
+		return windowSize;
+	}
+
+	// Mapped window of one file, valid while the file is at least as long as the window
+	private static class Window {
+		// Returns a buffer positioned at position, with at most size bytes remaining
+		synchronized ByteBuffer slice(FileChannel channel, long position,
+				long size) throws IOException {
+			long fileSize = channel.size();
+			if (this.buffer == null || position < this.start
+					|| position >= this.end || this.end > fileSize) {
+				int windowSize = MappedDiskStorage.windowSize;
+				this.buffer = null;
+				this.start = position & -windowSize;
+				this.end = Math.min(this.start + windowSize, fileSize);
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+						this.start, this.end - this.start);
+			}
+			ByteBuffer slice = this.buffer.duplicate();
+			slice.position((int) (position - this.start));
+			slice.limit((int) Math.min(this.end - this.start, position
+					+ size - this.start));
+			return slice;
+		}
+
+		private MappedByteBuffer buffer;
+		private long start;
+		private long end;
+	}
+
+	private static Window getWindow(FileChannel channel) {
+		synchronized (windows) {
+			Window window = windows.get(channel);
+			if (window == null) {
+				window = new Window();
+				windows.put(channel, window);
+			}
+			return window;
+		}
+	}
+
+	// Returns false if the range is not all in the file yet, and the caller should use the unmapped transfer
+	private static boolean transferTo(FileChannel channel,
+			WritableByteChannel target, long position, long size)
+			throws ApfloatRuntimeException {
+		try {
+			if (position + size > channel.size()) {
+				return false;
+			}
+			Window window = getWindow(channel);
+			while (size > 0) {
+				ByteBuffer slice = window.slice(channel, position, size);
+				int count = slice.remaining();
+				while (slice.hasRemaining()) {
+					target.write(slice);
+				}
+				position += count;
+				size -= count;
+			}
+		} catch (IOException ioe) {
+			throw new BackingStorageException("Unable to read mapped file",
+					ioe);
+		}
+		return true;
+	}
+
+	private static boolean transferFrom(FileChannel channel,
+			ReadableByteChannel source, long position, long size)
+			throws ApfloatRuntimeException {
+		try {
+			if (position + size > channel.size()) {
+				return false;
+			}
+			Window window = getWindow(channel);
+			while (size > 0) {
+				ByteBuffer slice = window.slice(channel, position, size);
+				int count = slice.remaining();
+				while (slice.hasRemaining()) {
+					if (source.read(slice) == -1) {
+						throw new BackingStorageException(
+								"Unexpected end of data");
+					}
+				}
+				position += count;
+				size -= count;
+			}
+		} catch (IOException ioe) {
+			throw new BackingStorageException("Unable to write mapped file",
+					ioe);
+		}
+		return true;
+	}
+
+	private static class MappedLongDiskDataStorage extends LongDiskDataStorage {
+		public MappedLongDiskDataStorage() throws ApfloatRuntimeException {
+		}
+
+		protected MappedLongDiskDataStorage(
+				MappedLongDiskDataStorage longDiskDataStorage, long offset,
+				long length) {
+			super(longDiskDataStorage, offset, length);
+		}
+
+		protected DataStorage implSubsequence(long offset, long length)
+				throws ApfloatRuntimeException {
+			return new MappedLongDiskDataStorage(this, offset + getOffset(),
+					length);
+		}
+
+		protected void transferTo(WritableByteChannel out, long position,
+				long size) throws ApfloatRuntimeException {
+			if (!MappedDiskStorage.transferTo(getFileChannel(), out, position,
+					size)) {
+				super.transferTo(out, position, size);
+			}
+		}
+
+		protected void transferFrom(ReadableByteChannel in, long position,
+				long size) throws ApfloatRuntimeException {
+			if (!MappedDiskStorage.transferFrom(getFileChannel(), in, position,
+					size)) {
+				super.transferFrom(in, position, size);
+			}
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class MappedIntDiskDataStorage extends IntDiskDataStorage {
+		public MappedIntDiskDataStorage() throws ApfloatRuntimeException {
+		}
+
+		protected MappedIntDiskDataStorage(
+				MappedIntDiskDataStorage intDiskDataStorage, long offset,
+				long length) {
+			super(intDiskDataStorage, offset, length);
+		}
+
+		protected DataStorage implSubsequence(long offset, long length)
+				throws ApfloatRuntimeException {
+			return new MappedIntDiskDataStorage(this, offset + getOffset(),
+					length);
+		}
+
+		protected void transferTo(WritableByteChannel out, long position,
+				long size) throws ApfloatRuntimeException {
+			if (!MappedDiskStorage.transferTo(getFileChannel(), out, position,
+					size)) {
+				super.transferTo(out, position, size);
+			}
+		}
+
+		protected void transferFrom(ReadableByteChannel in, long position,
+				long size) throws ApfloatRuntimeException {
+			if (!MappedDiskStorage.transferFrom(getFileChannel(), in, position,
+					size)) {
+				super.transferFrom(in, position, size);
+			}
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class MappedLongDataStorageBuilder extends
+			LongDataStorageBuilder {
+		protected DataStorage createNonCachedDataStorage()
+				throws ApfloatRuntimeException {
+			return new MappedLongDiskDataStorage();
+		}
+	}
+
+	private static class MappedIntDataStorageBuilder extends
+			IntDataStorageBuilder {
+		protected DataStorage createNonCachedDataStorage()
+				throws ApfloatRuntimeException {
+			return new MappedIntDiskDataStorage();
+		}
+	}
+
+	private static class MappedLongBuilderFactory extends LongBuilderFactory {
+		public DataStorageBuilder getDataStorageBuilder() {
+			return dataStorageBuilder;
+		}
+
+		private static final DataStorageBuilder dataStorageBuilder = new MappedLongDataStorageBuilder();
+	}
+
+	private static class MappedIntBuilderFactory extends IntBuilderFactory {
+		public DataStorageBuilder getDataStorageBuilder() {
+			return dataStorageBuilder;
+		}
+
+		private static final DataStorageBuilder dataStorageBuilder = new MappedIntDataStorageBuilder();
+	}
+
+	/**
+	 * Smallest allowed window size.
+	 */
+
+	public static final int MIN_WINDOW_SIZE = 65536;
+
+	/**
+	 * Default window size.
+	 */
+
+	public static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+	private static volatile int windowSize = DEFAULT_WINDOW_SIZE;
+
+	// Windows are keyed by the file channel, which is shared by all subsequences of a storage,
+	// and must not refer back to it
+	private static final Map<FileChannel, Window> windows = new WeakHashMap<FileChannel, Window>();
+}
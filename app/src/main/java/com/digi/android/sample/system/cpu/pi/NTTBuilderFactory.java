@@ -0,0 +1,81 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import org.apfloat.internal.ThreeNTTConvolutionStrategy;
+import org.apfloat.spi.BuilderFactory;
+import org.apfloat.spi.ConvolutionBuilder;
+import org.apfloat.spi.ConvolutionStrategy;
+
+/**
+ * Builder factory that multiplies large numbers with the
+ * {@link NTTConvolutionStrategy} kernel instead of the apfloat transforms.
+ * <p>
+ *
+ * Everything else is delegated to another builder factory, so the kernel
+ * can be combined with any data storage, for example the memory mapped
+ * storage, and with the {@link TunedBuilderFactory}. The kernel is only
+ * used where the delegate would use its three-prime transform, so the
+ * basic and Karatsuba multiplications are still picked for short numbers,
+ * and the sizes must be supported by the kernel. Larger multiplications
+ * fall back to the apfloat transforms, which can work on disk.
+ */
+
+public class NTTBuilderFactory extends DelegatingBuilderFactory {
+	/**
+	 * Create a builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory to delegate to.
+	 *
+	 * @exception IllegalArgumentException
+	 *                If the element type of the factory is not supported.
+	 */
+
+	public NTTBuilderFactory(BuilderFactory builderFactory)
+			throws IllegalArgumentException {
+		super(builderFactory);
+		if (!isSupported(builderFactory)) {
+			throw new IllegalArgumentException("Unsupported element type "
+					+ builderFactory.getElementType());
+		}
+		this.convolutionBuilder = new NTTConvolutionBuilder(
+				builderFactory.getConvolutionBuilder());
+	}
+
+	/**
+	 * Test if the kernel supports the element type of a builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory.
+	 *
+	 * @return <code>true</code> if the elements are <code>int</code>s.
+	 */
+
+	public static boolean isSupported(BuilderFactory builderFactory) {
+		return (builderFactory.getElementType() == Integer.TYPE);
+	}
+
+	public ConvolutionBuilder getConvolutionBuilder() {
+		return this.convolutionBuilder;
+	}
+
+	private static class NTTConvolutionBuilder implements ConvolutionBuilder {
+		public NTTConvolutionBuilder(ConvolutionBuilder convolutionBuilder) {
+			this.convolutionBuilder = convolutionBuilder;
+		}
+
+		public ConvolutionStrategy createConvolution(int radix, long size1,
+				long size2, long resultSize) {
+			ConvolutionStrategy convolutionStrategy = this.convolutionBuilder
+					.createConvolution(radix, size1, size2, resultSize);
+			if (convolutionStrategy instanceof ThreeNTTConvolutionStrategy
+					&& NTTConvolutionStrategy.isSupported(size1, size2)) {
+				return new NTTConvolutionStrategy(radix);
+			}
+			return convolutionStrategy;
+		}
+
+		private final ConvolutionBuilder convolutionBuilder;
+	}
+
+	private final ConvolutionBuilder convolutionBuilder;
+}
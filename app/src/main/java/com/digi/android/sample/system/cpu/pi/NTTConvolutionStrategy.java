@@ -0,0 +1,442 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import org.apfloat.ApfloatContext;
+import org.apfloat.ApfloatRuntimeException;
+import org.apfloat.internal.IntRadixConstants;
+import org.apfloat.internal.ParallelRunnable;
+import org.apfloat.internal.ParallelRunner;
+import org.apfloat.spi.ArrayAccess;
+import org.apfloat.spi.ConvolutionStrategy;
+import org.apfloat.spi.DataStorage;
+import org.apfloat.spi.Util;
+
+/**
+ * Convolution with a three-prime number theoretic transform working
+ * directly on <code>int[]</code> arrays in memory.
+ * <p>
+ *
+ * The numbers are transformed modulo three primes below 2<sup>31</sup>, so
+ * all modular products fit in a <code>long</code> and are reduced with
+ * Montgomery multiplication instead of a division. The convolution is put
+ * together from the three residues with the Chinese remainder theorem, and
+ * the carries are propagated in the same pass.
+ * <p>
+ *
+ * The forward transform is a decimation in frequency and the inverse a
+ * decimation in time, so no bit reversal permutation is needed. The first
+ * levels of the transform are done in passes over the whole array with
+ * the butterflies divided between the threads. The rest is done as
+ * independent transforms, one per thread, that recurse depth first until
+ * a block together with its twiddle factors fits in the level 1 cache, so
+ * that every level below that is done in the cache.
+ * <p>
+ *
+ * Everything is kept in memory, so this is only used when the arrays fit
+ * in the maximum memory block size of the {@link ApfloatContext}, see
+ * {@link #isSupported(long, long)}. Only <code>int</code> elements are
+ * supported.
+ */
+
+public class NTTConvolutionStrategy implements ConvolutionStrategy {
+	/**
+	 * Create a convolution strategy.
+	 *
+	 * @param radix
+	 *            The radix of the numbers.
+	 */
+
+	public NTTConvolutionStrategy(int radix) {
+		this.base = IntRadixConstants.BASE[radix];
+	}
+
+	/**
+	 * Test if numbers of the given sizes can be multiplied with this
+	 * strategy in the current {@link ApfloatContext}.
+	 *
+	 * @param size1
+	 *            Size of the first number, in elements.
+	 * @param size2
+	 *            Size of the second number, in elements.
+	 *
+	 * @return <code>true</code> if the transform length is supported and
+	 *         the arrays fit in the maximum memory block size.
+	 */
+
+	public static boolean isSupported(long size1, long size2) {
+		long length = Util.round2up(size1 + size2 - 1);
+		return (length <= MAX_TRANSFORM_LENGTH && length * ARRAYS * 4 <= ApfloatContext
+				.getContext().getMaxMemoryBlockSize());
+	}
+
+	public DataStorage convolute(DataStorage x, DataStorage y, long resultSize)
+			throws ApfloatRuntimeException {
+		int size1 = (int) x.getSize(), size2 = (int) y.getSize(), length = Math
+				.max((int) Util.round2up((long) size1 + size2 - 1), 2);
+		ApfloatContext ctx = ApfloatContext.getContext();
+		int numberOfProcessors = ctx.getNumberOfProcessors();
+		int blockSize = Math.max(Util.round2down(ctx.getCacheL1Size() / 8),
+				MIN_BLOCK_SIZE);
+		int span = Math.min(Math.max(Util.round2down(length
+				/ (numberOfProcessors * TASKS_PER_PROCESSOR)), blockSize), length);
+
+		int[][] residues = new int[MODULUS.length][];
+		int[] buffer = (x == y ? null : new int[length]);
+		int[] table = new int[length], inverseTable = new int[length];
+		for (int i = 0; i < MODULUS.length; i++) {
+			Pi.checkAlive();
+			int[] data = new int[length];
+			createTables(i, table, inverseTable);
+			load(x, size1, data, MODULUS[i]);
+			transform(data, table, span, blockSize, i);
+			if (buffer != null) {
+				load(y, size2, buffer, MODULUS[i]);
+				transform(buffer, table, span, blockSize, i);
+			}
+			multiply(data, (buffer != null ? buffer : data), i);
+			inverseTransform(data, inverseTable, span, blockSize, i);
+			residues[i] = data;
+		}
+		buffer = table = inverseTable = null;
+
+		Pi.checkAlive();
+		DataStorage result = ctx.getBuilderFactory().getDataStorageBuilder()
+				.createDataStorage(resultSize * 4);
+		result.setSize(resultSize);
+		ArrayAccess arrayAccess = result.getArray(DataStorage.WRITE, 0,
+				(int) resultSize);
+		try {
+			carryCRT(residues, size1 + size2, arrayAccess.getIntData(),
+					arrayAccess.getOffset(), (int) resultSize);
+		} finally {
+			arrayAccess.close();
+		}
+		return result;
+	}
+
+	// Copies the number to the array, reduced modulo the prime and padded with zeros
+	private static void load(DataStorage x, int size, int[] data, int modulus)
+			throws ApfloatRuntimeException {
+		ArrayAccess arrayAccess = x.getArray(DataStorage.READ, 0, size);
+		try {
+			int[] source = arrayAccess.getIntData();
+			int offset = arrayAccess.getOffset();
+			for (int i = 0; i < size; i++) {
+				int value = source[offset + i];
+				data[i] = (value >= modulus ? value - modulus : value);
+			}
+		} finally {
+			arrayAccess.close();
+		}
+		for (int i = size; i < data.length; i++) {
+			data[i] = 0;
+		}
+	}
+
+	// The table for a transform length n holds the powers w_m^j for all the
+	// transform lengths m = 2h of the levels, at index h + j for j < h, so
+	// the factors of each level are contiguous
+	private static void createTables(int prime, int[] table,
+			int[] inverseTable) {
+		int modulus = MODULUS[prime], length = table.length, half = length / 2;
+		long w = pow(PRIMITIVE_ROOT[prime], (modulus - 1) / length, modulus), inverseW = pow(
+				w, modulus - 2, modulus);
+		int one = toMontgomery(1, prime), wm = toMontgomery(w, prime), inverseWm = toMontgomery(
+				inverseW, prime);
+		long inverse = INVERSE[prime];
+		table[half] = inverseTable[half] = one;
+		for (int j = 1; j < half; j++) {
+			table[half + j] = multiply(table[half + j - 1], wm, modulus,
+					inverse);
+			inverseTable[half + j] = multiply(inverseTable[half + j - 1],
+					inverseWm, modulus, inverse);
+		}
+		for (int h = half / 2; h >= 1; h /= 2) {
+			for (int j = 0; j < h; j++) {
+				table[h + j] = table[2 * h + 2 * j];
+				inverseTable[h + j] = inverseTable[2 * h + 2 * j];
+			}
+		}
+	}
+
+	// Decimation in frequency, from normal order to bit reversed order
+	private static void transform(final int[] data, final int[] table,
+			final int span, final int blockSize, final int prime) {
+		for (int m = data.length; m > span; m /= 2) {
+			pass(data, table, m, prime, false);
+		}
+		ParallelRunner.runParallel(new ParallelRunnable(data.length / span) {
+			protected Runnable getRunnable(final int start, final int count) {
+				return new Runnable() {
+					public void run() {
+						for (int i = start; i < start + count; i++) {
+							transform(data, table, i * span, span, blockSize,
+									prime);
+						}
+					}
+				};
+			}
+		});
+	}
+
+	// Decimation in time, from bit reversed order to normal order
+	private static void inverseTransform(final int[] data,
+			final int[] table, final int span, final int blockSize,
+			final int prime) {
+		ParallelRunner.runParallel(new ParallelRunnable(data.length / span) {
+			protected Runnable getRunnable(final int start, final int count) {
+				return new Runnable() {
+					public void run() {
+						for (int i = start; i < start + count; i++) {
+							inverseTransform(data, table, i * span, span,
+									blockSize, prime);
+						}
+					}
+				};
+			}
+		});
+		for (int m = 2 * span; m <= data.length; m *= 2) {
+			pass(data, table, m, prime, true);
+		}
+	}
+
+	// One level of butterflies over the whole array, divided between the threads
+	private static void pass(final int[] data, final int[] table, final int m,
+			int prime, final boolean inverse) {
+		final int modulus = MODULUS[prime], half = m / 2;
+		final long modulusInverse = INVERSE[prime];
+		ParallelRunner.runParallel(new ParallelRunnable(data.length / 2) {
+			protected Runnable getRunnable(final int start, final int count) {
+				return new Runnable() {
+					public void run() {
+						int j = start & (half - 1), i = 2 * (start - j) + j;
+						for (int k = 0; k < count; k++) {
+							if (inverse) {
+								inverseButterfly(data, i, half, table[half + j],
+										modulus, modulusInverse);
+							} else {
+								butterfly(data, i, half, table[half + j],
+										modulus, modulusInverse);
+							}
+							i++;
+							j++;
+							if (j == half) {
+								j = 0;
+								i += half;
+							}
+						}
+					}
+				};
+			}
+		});
+	}
+
+	// Transform of one part, depth first so that the small levels run in the cache
+	private static void transform(int[] data, int[] table, int offset,
+			int length, int blockSize, int prime) {
+		int modulus = MODULUS[prime];
+		long inverse = INVERSE[prime];
+		if (length <= blockSize) {
+			for (int half = length / 2; half >= 1; half /= 2) {
+				for (int i = offset; i < offset + length; i += 2 * half) {
+					for (int j = 0; j < half; j++) {
+						butterfly(data, i + j, half, table[half + j], modulus,
+								inverse);
+					}
+				}
+			}
+			return;
+		}
+		int half = length / 2;
+		for (int j = 0; j < half; j++) {
+			butterfly(data, offset + j, half, table[half + j], modulus,
+					inverse);
+		}
+		transform(data, table, offset, half, blockSize, prime);
+		transform(data, table, offset + half, half, blockSize, prime);
+	}
+
+	private static void inverseTransform(int[] data, int[] table,
+			int offset, int length, int blockSize, int prime) {
+		int modulus = MODULUS[prime];
+		long inverse = INVERSE[prime];
+		if (length <= blockSize) {
+			for (int half = 1; half < length; half *= 2) {
+				for (int i = offset; i < offset + length; i += 2 * half) {
+					for (int j = 0; j < half; j++) {
+						inverseButterfly(data, i + j, half, table[half + j],
+								modulus, inverse);
+					}
+				}
+			}
+			return;
+		}
+		int half = length / 2;
+		inverseTransform(data, table, offset, half, blockSize, prime);
+		inverseTransform(data, table, offset + half, half, blockSize, prime);
+		for (int j = 0; j < half; j++) {
+			inverseButterfly(data, offset + j, half, table[half + j], modulus,
+					inverse);
+		}
+	}
+
+	private static void butterfly(int[] data, int i, int half, int w,
+			int modulus, long inverse) {
+		int a = data[i], b = data[i + half];
+		data[i] = add(a, b, modulus);
+		data[i + half] = multiply(subtract(a, b, modulus), w, modulus, inverse);
+	}
+
+	private static void inverseButterfly(int[] data, int i, int half, int w,
+			int modulus, long inverse) {
+		int a = data[i], b = multiply(data[i + half], w, modulus, inverse);
+		data[i] = add(a, b, modulus);
+		data[i + half] = subtract(a, b, modulus);
+	}
+
+	// Pointwise product, also dividing by the transform length and undoing
+	// the Montgomery factor of the product
+	private static void multiply(final int[] data, final int[] data2, int prime) {
+		final int modulus = MODULUS[prime];
+		final long inverse = INVERSE[prime];
+		final int scale = toMontgomery(
+				toMontgomery(pow(data.length, modulus - 2, modulus), prime),
+				prime);
+		ParallelRunner.runParallel(new ParallelRunnable(data.length) {
+			protected Runnable getRunnable(final int start, final int count) {
+				return new Runnable() {
+					public void run() {
+						for (int i = start; i < start + count; i++) {
+							data[i] = multiply(
+									multiply(data[i], data2[i], modulus,
+											inverse), scale, modulus,
+									inverse);
+						}
+					}
+				};
+			}
+		});
+	}
+
+	// Element k of the convolution goes to element k + 1 of the product,
+	// which has size elements with the most significant first. The first
+	// resultSize elements are stored
+	private void carryCRT(int[][] residues, int size, int[] result,
+			int offset, int resultSize) {
+		int[] residue0 = residues[0], residue1 = residues[1], residue2 = residues[2];
+		int modulus0 = MODULUS[0], modulus1 = MODULUS[1], modulus2 = MODULUS[2];
+		long inverse1 = INVERSE[1], inverse2 = INVERSE[2];
+		long base = this.base, carry0 = 0, carry1 = 0, carry2 = 0;
+
+		for (int i = size; i < resultSize; i++) {
+			result[offset + i] = 0;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			// Garner's algorithm: value = r0 + p0 t1 + p0 p1 t2
+			int r0 = residue0[i - 1];
+			long t1 = multiply(subtract(residue1[i - 1], r0, modulus1),
+					CRT_INVERSE01, modulus1, inverse1);
+			int x2 = add(r0, multiply((int) t1, CRT_MODULUS0, modulus2,
+					inverse2), modulus2);
+			long t2 = multiply(subtract(residue2[i - 1], x2, modulus2),
+					CRT_INVERSE012, modulus2, inverse2);
+			long low = r0 + modulus0 * t1, product0 = t2 * MODULUS01_LOW, product1 = t2
+					* MODULUS01_HIGH;
+
+			// Add the carry in 32-bit words and divide by the base
+			long word0 = (low & MASK) + (product0 & MASK) + carry0;
+			long word1 = (low >>> 32) + (product0 >>> 32) + (product1 & MASK)
+					+ carry1 + (word0 >>> 32);
+			long word2 = (product1 >>> 32) + carry2 + (word1 >>> 32);
+			carry2 = word2 / base;
+			long remainder = word2 - carry2 * base;
+			long current = remainder << 32 | (word1 & MASK);
+			carry1 = current / base;
+			remainder = current - carry1 * base;
+			current = remainder << 32 | (word0 & MASK);
+			carry0 = current / base;
+			if (i < resultSize) {
+				result[offset + i] = (int) (current - carry0 * base);
+			}
+		}
+		result[offset] = (int) carry0;
+	}
+
+	// Montgomery multiplication with R = 2^32, a b / R mod p
+	private static int multiply(int a, int b, int modulus, long inverse) {
+		long t = (long) a * b, m = (t * inverse) & MASK, u = (t + m * modulus) >>> 32;
+		return (int) (u >= modulus ? u - modulus : u);
+	}
+
+	private static int add(int a, int b, int modulus) {
+		int s = a - modulus + b;
+		return (s < 0 ? s + modulus : s);
+	}
+
+	private static int subtract(int a, int b, int modulus) {
+		int d = a - b;
+		return (d < 0 ? d + modulus : d);
+	}
+
+	private static int toMontgomery(long a, int prime) {
+		return (int) ((a << 32) % MODULUS[prime]);
+	}
+
+	private static long pow(long a, long e, long modulus) {
+		long result = 1;
+		a %= modulus;
+		for (; e > 0; e >>= 1) {
+			if ((e & 1) != 0) {
+				result = result * a % modulus;
+			}
+			a = a * a % modulus;
+		}
+		return result;
+	}
+
+	// -p^-1 mod 2^32
+	private static long negativeInverse(int modulus) {
+		int inverse = modulus;
+		for (int i = 0; i < 5; i++) {
+			inverse *= 2 - modulus * inverse;
+		}
+		return -inverse & MASK;
+	}
+
+	/**
+	 * Longest supported transform, limited by the largest power of two that
+	 * divides <i>p</i> - 1 for all the primes.
+	 */
+
+	public static final long MAX_TRANSFORM_LENGTH = 1 << 25;
+
+	// Ascending, so that the residues modulo the first prime need no reduction
+	// for the other primes. The convolution of numbers up to the maximum
+	// transform length with elements below 2^31 is less than their product
+	private static final int[] MODULUS = { 1811939329, 2013265921, 2113929217 };
+	private static final int[] PRIMITIVE_ROOT = { 13, 31, 5 };
+	private static final long[] INVERSE = { negativeInverse(MODULUS[0]),
+			negativeInverse(MODULUS[1]), negativeInverse(MODULUS[2]) };
+
+	private static final long MASK = 0xFFFFFFFFL;
+
+	// Garner's algorithm constants in Montgomery form
+	private static final int CRT_INVERSE01 = toMontgomery(
+			pow(MODULUS[0], MODULUS[1] - 2, MODULUS[1]), 1);
+	private static final int CRT_MODULUS0 = toMontgomery(MODULUS[0], 2);
+	private static final int CRT_INVERSE012 = toMontgomery(
+			pow((long) MODULUS[0] * MODULUS[1] % MODULUS[2], MODULUS[2] - 2,
+					MODULUS[2]), 2);
+	private static final long MODULUS01_LOW = (long) MODULUS[0] * MODULUS[1]
+			& MASK;
+	private static final long MODULUS01_HIGH = (long) MODULUS[0] * MODULUS[1] >>> 32;
+
+	// Number of int arrays of the transform length needed at the same time
+	private static final int ARRAYS = 6;
+
+	private static final int MIN_BLOCK_SIZE = 256;
+
+	// Parallel parts of the transform, to even out the work
+	private static final int TASKS_PER_PROCESSOR = 4;
+
+	private final int base;
+}
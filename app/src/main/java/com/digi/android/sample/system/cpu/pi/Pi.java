@@ -3,17 +3,14 @@ package com.digi.android.sample.system.cpu.pi;
 import java.io.Serializable;
 import java.io.PrintWriter;
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatContext;
 import org.apfloat.ApfloatMath;
 import org.apfloat.ApfloatRuntimeException;
 
-import android.content.Intent;
-
-import com.digi.android.sample.system.cpu.CPUSampleApp;
-
 /**
  * Calculates pi using four different algorithms.
  * 
@@ -24,8 +21,6 @@ import com.digi.android.sample.system.cpu.CPUSampleApp;
 public class Pi {
 	// Implementation note: we use printf() for printing, because it flushes the
 	// output (print() does not)
-	
-	public final static String NEW_PROGRESS_INTENT = "NEW_PROGRESS";
 
 	/**
 	 * Terms for the binary splitting series.
@@ -60,6 +55,96 @@ public class Pi {
 		public Apfloat q(long n) throws ApfloatRuntimeException;
 	}
 
+	/**
+	 * Binary splitting series whose terms can also be evaluated with
+	 * primitive arithmetic, so that short ranges of terms can be calculated
+	 * without creating an {@link Apfloat} for every term.
+	 */
+
+	protected static interface PrimitiveBinarySplittingSeries extends
+			BinarySplittingSeries {
+		/**
+		 * Binary splitting term as a <code>long</code>.
+		 * 
+		 * @param n
+		 *            The term, less than {@link #getMaxPrimitiveTerm()}.
+		 */
+
+		public long aValue(long n);
+
+		/**
+		 * Binary splitting term as a product of positive factors less than
+		 * 2<sup>63</sup>.
+		 * 
+		 * @param n
+		 *            The term, less than {@link #getMaxPrimitiveTerm()}.
+		 * @param factors
+		 *            Receives the factors.
+		 * 
+		 * @return Number of factors, zero if the term is one.
+		 */
+
+		public int pFactors(long n, long[] factors);
+
+		/**
+		 * Binary splitting term as a product of positive factors less than
+		 * 2<sup>63</sup>.
+		 * 
+		 * @param n
+		 *            The term, less than {@link #getMaxPrimitiveTerm()}.
+		 * @param factors
+		 *            Receives the factors.
+		 * 
+		 * @return Number of factors, zero if the term is one.
+		 */
+
+		public int qFactors(long n, long[] factors);
+
+		/**
+		 * Get the first term that can not be evaluated with primitive
+		 * arithmetic.
+		 * 
+		 * @return The first term that is too large.
+		 */
+
+		public long getMaxPrimitiveTerm();
+
+		/**
+		 * Get the target precision.
+		 * 
+		 * @return The target precision.
+		 */
+
+		public long getPrecision();
+
+		/**
+		 * Get the radix.
+		 * 
+		 * @return The radix.
+		 */
+
+		public int getRadix();
+	}
+
+	/**
+	 * Estimates the cost of calculating a range of terms of a binary
+	 * splitting series.
+	 */
+
+	protected static interface BinarySplittingCostModel extends Serializable {
+		/**
+		 * Estimated relative cost of calculating terms <code>n1</code> to
+		 * <code>n2 - 1</code> with the binary splitting algorithm.
+		 * 
+		 * @param n1
+		 *            Start term.
+		 * @param n2
+		 *            End term.
+		 */
+
+		public double cost(long n1, long n2);
+	}
+
 	/**
 	 * Abstract base class for the binary splitting series.
 	 */
@@ -81,6 +166,55 @@ public class Pi {
 			this.radix = radix;
 		}
 
+		public long getPrecision() {
+			return this.precision;
+		}
+
+		public int getRadix() {
+			return this.radix;
+		}
+
+		/**
+		 * Estimates the cost of calculating terms <code>n1</code> to
+		 * <code>n2 - 1</code> of a series where <code>q(n)</code> is
+		 * <code>J n<sup>3</sup></code>. The size of the products grows
+		 * with the bit length of the terms, and each recursion level
+		 * multiplies numbers of that total size.
+		 * 
+		 * @param n1
+		 *            Start term.
+		 * @param n2
+		 *            End term.
+		 * @param bitsJ
+		 *            Bit length of the constant <code>J</code>.
+		 * 
+		 * @return The estimated relative cost.
+		 */
+
+		protected static double cubicTermCost(long n1, long n2, double bitsJ) {
+			long length = n2 - n1;
+			if (length <= 0) {
+				return 0;
+			}
+
+			// Sum of log2(n) over the range, using Stirling's approximation
+			double bits = length * bitsJ + 3
+					* (logFactorial(n2) - logFactorial(n1)) / Math.log(2.0);
+
+			return bits * (Math.log(bits + 2.0) / Math.log(2.0))
+					* (Math.log((double) length) / Math.log(2.0) + 1.0);
+		}
+
+		private static double logFactorial(long n) {
+			return (n < 2 ? 0.0 : n * Math.log((double) n) - n);
+		}
+
+		/**
+		 * First term whose factors may not fit in a <code>long</code>.
+		 */
+
+		protected static final long MAX_PRIMITIVE_TERM = 100000000L;
+
 		/**
 		 * Target precision.
 		 */
@@ -99,7 +233,8 @@ public class Pi {
 	 */
 
 	protected static class ChudnovskyBinarySplittingSeries extends
-			AbstractBinarySplittingSeries {
+			AbstractBinarySplittingSeries implements
+			PrimitiveBinarySplittingSeries, BinarySplittingCostModel {
 		/**
 		 * Default constructor.
 		 */
@@ -155,6 +290,46 @@ public class Pi {
 			return v;
 		}
 
+		public long aValue(long n) {
+			long v = 13591409L + 545140134L * n;
+
+			return ((n & 1) == 0 ? v : -v);
+		}
+
+		public int pFactors(long n, long[] factors) {
+			if (n == 0) {
+				return 0;
+			}
+
+			factors[0] = (6 * n - 1) * (6 * n - 5);
+			factors[1] = 2 * n - 1;
+
+			return 2;
+		}
+
+		public int qFactors(long n, long[] factors) {
+			if (n == 0) {
+				return 0;
+			}
+
+			factors[0] = 10939058860032000L;
+			factors[1] = n * n;
+			factors[2] = n;
+
+			return 3;
+		}
+
+		public long getMaxPrimitiveTerm() {
+			return MAX_PRIMITIVE_TERM;
+		}
+
+		public double cost(long n1, long n2) {
+			return cubicTermCost(n1, n2, BITS_J);
+		}
+
+		private static final double BITS_J = Math.log(10939058860032000.0)
+				/ Math.log(2.0);
+
 		private final Apfloat A;
 		private final Apfloat B;
 		private final Apfloat J;
@@ -169,7 +344,8 @@ public class Pi {
 	 */
 
 	protected static class RamanujanBinarySplittingSeries extends
-			AbstractBinarySplittingSeries {
+			AbstractBinarySplittingSeries implements
+			PrimitiveBinarySplittingSeries, BinarySplittingCostModel {
 		/**
 		 * Default constructor.
 		 */
@@ -223,6 +399,44 @@ public class Pi {
 			return v;
 		}
 
+		public long aValue(long n) {
+			return 1103L + 26390L * n;
+		}
+
+		public int pFactors(long n, long[] factors) {
+			if (n == 0) {
+				return 0;
+			}
+
+			factors[0] = (4 * n - 1) * (4 * n - 3);
+			factors[1] = 2 * n - 1;
+
+			return 2;
+		}
+
+		public int qFactors(long n, long[] factors) {
+			if (n == 0) {
+				return 0;
+			}
+
+			factors[0] = 3073907232L;
+			factors[1] = n * n;
+			factors[2] = n;
+
+			return 3;
+		}
+
+		public long getMaxPrimitiveTerm() {
+			return MAX_PRIMITIVE_TERM;
+		}
+
+		public double cost(long n1, long n2) {
+			return cubicTermCost(n1, n2, BITS_J);
+		}
+
+		private static final double BITS_J = Math.log(3073907232.0)
+				/ Math.log(2.0);
+
 		private final Apfloat A;
 		private final Apfloat B;
 		private final Apfloat J;
@@ -275,7 +489,20 @@ public class Pi {
 			assert (n1 != n2);
 			long length = n2 - n1;
 
-			if (length == 1) {
+			if (loadCheckpoint(n1, n2, T, Q, P, progressIndicator)) {
+				return;
+			}
+
+			if (length < PRIMITIVE_LEAF_TERMS
+					&& this.series instanceof PrimitiveBinarySplittingSeries
+					&& n2 <= ((PrimitiveBinarySplittingSeries) this.series)
+							.getMaxPrimitiveTerm()) {
+				// Short range, no need for an Apfloat for every term
+
+				PrimitiveLeafKernel.r(
+						(PrimitiveBinarySplittingSeries) this.series, n1, n2,
+						T, Q, P);
+			} else if (length == 1) {
 				Apfloat p0 = p(n1);
 
 				T.setApfloat(a(n1).multiply(p0));
@@ -284,16 +511,18 @@ public class Pi {
 					P.setApfloat(p0);
 			} else {
 				long nMiddle = n1 + n2 >> 1;
-				ApfloatHolder LT = new ApfloatHolder(), LQ = new ApfloatHolder(), LP = new ApfloatHolder();
+				ApfloatHolderStack.Frame left = ApfloatHolderStack.push();
 
-				r(n1, nMiddle, LT, LQ, LP, progressIndicator);
-				r(nMiddle, n2, T, Q, P, progressIndicator);
+				try {
+					r(n1, nMiddle, left.T, left.Q, left.P, progressIndicator);
+					r(nMiddle, n2, T, Q, P, progressIndicator);
 
-				T.setApfloat(Q.getApfloat().multiply(LT.getApfloat())
-						.add(LP.getApfloat().multiply(T.getApfloat())));
-				Q.setApfloat(LQ.getApfloat().multiply(Q.getApfloat()));
-				if (P != null)
-					P.setApfloat(LP.getApfloat().multiply(P.getApfloat()));
+					combine(left.T, left.Q, left.P, T, Q, P);
+				} finally {
+					ApfloatHolderStack.pop();
+				}
+
+				saveCheckpoint(n1, n2, T, Q, P);
 			}
 
 			if (progressIndicator != null) {
@@ -301,6 +530,117 @@ public class Pi {
 			}
 		}
 
+		/**
+		 * Combines the results of two adjacent ranges of terms.
+		 * 
+		 * @param LT
+		 *            T of the left range.
+		 * @param LQ
+		 *            Q of the left range.
+		 * @param LP
+		 *            P of the left range.
+		 * @param T
+		 *            T of the right range, receives the combined T.
+		 * @param Q
+		 *            Q of the right range, receives the combined Q.
+		 * @param P
+		 *            P of the right range, receives the combined P. May be
+		 *            <code>null</code> if P is not needed.
+		 */
+
+		protected void combine(ApfloatHolder LT, ApfloatHolder LQ,
+				ApfloatHolder LP, ApfloatHolder T, ApfloatHolder Q,
+				ApfloatHolder P) throws ApfloatRuntimeException {
+			Apfloat QLT = Q.getApfloat().multiply(LT.getApfloat());
+			checkAlive();
+			T.setApfloat(QLT.add(LP.getApfloat().multiply(T.getApfloat())));
+			checkAlive();
+			Q.setApfloat(LQ.getApfloat().multiply(Q.getApfloat()));
+			if (P != null) {
+				checkAlive();
+				P.setApfloat(LP.getApfloat().multiply(P.getApfloat()));
+			}
+		}
+
+		/**
+		 * Set the store for checkpoints of completed ranges.
+		 * 
+		 * @param checkpointStore
+		 *            The checkpoint store, or <code>null</code> for none.
+		 */
+
+		public void setCheckpointStore(CheckpointStore checkpointStore) {
+			this.checkpointStore = checkpointStore;
+		}
+
+		/**
+		 * Load a range from the checkpoint store, if it has been stored.
+		 * 
+		 * @param n1
+		 *            Start term.
+		 * @param n2
+		 *            End term.
+		 * @param T
+		 *            Receives T of the range.
+		 * @param Q
+		 *            Receives Q of the range.
+		 * @param P
+		 *            Receives P of the range, may be <code>null</code>.
+		 * @param progressIndicator
+		 *            Advanced by the whole range if it was loaded.
+		 * 
+		 * @return <code>true</code> if the range was loaded.
+		 */
+
+		protected boolean loadCheckpoint(long n1, long n2, ApfloatHolder T,
+				ApfloatHolder Q, ApfloatHolder P,
+				BinarySplittingProgressIndicator progressIndicator)
+				throws ApfloatRuntimeException {
+			if (this.checkpointStore == null
+					|| n2 - n1 < this.checkpointStore.getMinTerms()
+					|| !this.checkpointStore.load(n1, n2, T, Q, P)) {
+				return false;
+			}
+			if (progressIndicator != null) {
+				progressIndicator.skip(n1, n2);
+			}
+			return true;
+		}
+
+		/**
+		 * Store a completed range in the checkpoint store, if there is one.
+		 * 
+		 * @param n1
+		 *            Start term.
+		 * @param n2
+		 *            End term.
+		 * @param T
+		 *            T of the range.
+		 * @param Q
+		 *            Q of the range.
+		 * @param P
+		 *            P of the range, may be <code>null</code>.
+		 */
+
+		protected void saveCheckpoint(long n1, long n2, ApfloatHolder T,
+				ApfloatHolder Q, ApfloatHolder P)
+				throws ApfloatRuntimeException {
+			if (this.checkpointStore != null) {
+				this.checkpointStore.save(n1, n2, T.getApfloat(),
+						Q.getApfloat(), (P == null ? null : P.getApfloat()));
+			}
+		}
+
+		/**
+		 * Get the binary splitting series used by this calculator.
+		 * 
+		 * @return The binary splitting series.
+		 */
+
+		protected BinarySplittingSeries getSeries() {
+			return this.series;
+		}
+
 		private Apfloat a(long n) throws ApfloatRuntimeException {
 			return this.series.a(n);
 		}
@@ -313,7 +653,12 @@ public class Pi {
 			return this.series.q(n);
 		}
 
+		// Ranges shorter than this are calculated with primitive arithmetic.
+		// The progress indicator counts ranges up to this length in one step.
+		private static final long PRIMITIVE_LEAF_TERMS = 32;
+
 		private BinarySplittingSeries series;
+		private transient CheckpointStore checkpointStore;
 	}
 
 	/**
@@ -373,9 +718,24 @@ public class Pi {
 			long terms = (long) ((double) this.precision
 					* Math.log((double) this.radix) / 32.654450041768516);
 
+			// The factor does not depend on the series, so it can be
+			// calculated while the terms are being split
+
+			final Operation<Apfloat> factor = fork(new Operation<Apfloat>() {
+				public Apfloat execute() {
+					return factor();
+				}
+			});
+
 			long time = System.currentTimeMillis();
-			this.calculator.r(0, terms + 1, T, Q, null,
-					new BinarySplittingProgressIndicator(terms));
+			BinarySplittingProgressIndicator progressIndicator = new BinarySplittingProgressIndicator(
+					terms, Pi.progressListener);
+			progressIndicator.start();
+			try {
+				this.calculator.r(0, terms + 1, T, Q, null, progressIndicator);
+			} finally {
+				progressIndicator.stop();
+			}
 			time = System.currentTimeMillis() - time;
 
 //			Pi.err.println("100% complete, elapsed time " + time / 1000.0
@@ -383,14 +743,20 @@ public class Pi {
 //			Pi.err.printf("Final value ");
 
 			time = System.currentTimeMillis();
-			Apfloat t = T.getApfloat(), q = Q.getApfloat();
-			checkAlive();
-			Apfloat factor = ApfloatMath.inverseRoot(new Apfloat(640320,
-					this.precision, this.radix), 2);
+			final Apfloat t = T.getApfloat(), q = Q.getApfloat();
 			checkAlive();
-			Apfloat pi = ApfloatMath.inverseRoot(factor.multiply(t), 1)
-					.multiply(new Apfloat(53360, Apfloat.INFINITE, this.radix))
-					.multiply(q);
+
+			// pi = 53360 * 640320 * factor * q / t, where the inverse of t is
+			// the longest step and needs neither the factor nor q
+
+			Operation<Apfloat> numerator = fork(new Operation<Apfloat>() {
+				public Apfloat execute() {
+					return factor.execute().multiply(q)
+							.multiply(new Apfloat(53360L * 640320L,
+									Apfloat.INFINITE, q.radix()));
+				}
+			});
+			Apfloat pi = inverseRoot(t, 1).multiply(numerator.execute());
 			time = System.currentTimeMillis() - time;
 
 //			Pi.err.println("took " + time / 1000.0 + " seconds");
@@ -398,6 +764,26 @@ public class Pi {
 			return pi;
 		}
 
+		/**
+		 * Start an operation that the final value depends on. The operation
+		 * is just executed when its result is needed.
+		 * 
+		 * @param operation
+		 *            The operation.
+		 * 
+		 * @return An operation that returns the result of the operation.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return operation;
+		}
+
+		// 1 / sqrt(640320)
+		private Apfloat factor() throws ApfloatRuntimeException {
+			return inverseRoot(new Apfloat(640320, this.precision, this.radix),
+					2);
+		}
+
 		private BinarySplittingPiCalculator calculator;
 		private long precision;
 		private int radix;
@@ -459,9 +845,24 @@ public class Pi {
 			long terms = (long) ((double) this.precision
 					* Math.log((double) this.radix) / 18.38047940053836);
 
+			// The factor does not depend on the series, so it can be
+			// calculated while the terms are being split
+
+			final Operation<Apfloat> factor = fork(new Operation<Apfloat>() {
+				public Apfloat execute() {
+					return factor();
+				}
+			});
+
 			long time = System.currentTimeMillis();
-			this.calculator.r(0, terms + 1, T, Q, null,
-					new BinarySplittingProgressIndicator(terms));
+			BinarySplittingProgressIndicator progressIndicator = new BinarySplittingProgressIndicator(
+					terms, Pi.progressListener);
+			progressIndicator.start();
+			try {
+				this.calculator.r(0, terms + 1, T, Q, null, progressIndicator);
+			} finally {
+				progressIndicator.stop();
+			}
 			time = System.currentTimeMillis() - time;
 
 //			Pi.err.println("100% complete, elapsed time " + time / 1000.0
@@ -469,14 +870,20 @@ public class Pi {
 //			Pi.err.printf("Final value ");
 
 			time = System.currentTimeMillis();
-			Apfloat t = T.getApfloat(), q = Q.getApfloat();
+			final Apfloat t = T.getApfloat(), q = Q.getApfloat();
 			checkAlive();
-			Apfloat factor = ApfloatMath.inverseRoot(new Apfloat(8,
-					this.precision, this.radix), 2);
-			checkAlive();
-			Apfloat pi = ApfloatMath.inverseRoot(t, 1).multiply(factor)
-					.multiply(new Apfloat(9801, Apfloat.INFINITE, this.radix))
-					.multiply(q);
+
+			// pi = 9801 * factor * q / t, where the inverse of t is the
+			// longest step and needs neither the factor nor q
+
+			Operation<Apfloat> numerator = fork(new Operation<Apfloat>() {
+				public Apfloat execute() {
+					return factor.execute().multiply(q)
+							.multiply(new Apfloat(9801, Apfloat.INFINITE,
+									q.radix()));
+				}
+			});
+			Apfloat pi = inverseRoot(t, 1).multiply(numerator.execute());
 			time = System.currentTimeMillis() - time;
 
 //			Pi.err.println("took " + time / 1000.0 + " seconds");
@@ -484,6 +891,25 @@ public class Pi {
 			return pi;
 		}
 
+		/**
+		 * Start an operation that the final value depends on. The operation
+		 * is just executed when its result is needed.
+		 * 
+		 * @param operation
+		 *            The operation.
+		 * 
+		 * @return An operation that returns the result of the operation.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return operation;
+		}
+
+		// 1 / sqrt(8)
+		private Apfloat factor() throws ApfloatRuntimeException {
+			return inverseRoot(new Apfloat(8, this.precision, this.radix), 2);
+		}
+
 		private BinarySplittingPiCalculator calculator;
 		private long precision;
 		private int radix;
@@ -495,7 +921,10 @@ public class Pi {
 	 * <p>
 	 * 
 	 * This implementation is thread safe for multiple threads to use
-	 * concurrently.
+	 * concurrently. The calculating threads only add to a striped counter,
+	 * and a separate low priority thread samples it at a fixed interval and
+	 * reports the progress, rate and estimated remaining time to the
+	 * listener, so the listener is never called on the calculating threads.
 	 */
 
 	public static class BinarySplittingProgressIndicator implements
@@ -506,14 +935,63 @@ public class Pi {
 		 * 
 		 * @param terms
 		 *            Total number of terms to be calculated.
+		 * @param listener
+		 *            Receives the progress, may be <code>null</code>.
 		 */
 
-		public BinarySplittingProgressIndicator(long terms) {
+		public BinarySplittingProgressIndicator(long terms,
+				ProgressListener listener) {
+			this.listener = listener;
+			this.terms = terms;
 			this.totalElements = (long) (terms * (Math.log((double) terms)
 					/ Math.log(2.0) + 1.0)) + 1;
-			this.currentElements = new AtomicLong(); // Use atomic long for
-														// thread safe but
-														// non-blocking access
+			this.currentElements = new LongAdder(); // Striped, so the threads
+													// don't contend for one
+													// cache line
+		}
+
+		/**
+		 * Start reporting the progress to the listener.
+		 */
+
+		public synchronized void start() {
+			if (this.listener == null || this.reporter != null) {
+				return;
+			}
+			this.startTime = System.nanoTime();
+			this.reporter = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (!Thread.interrupted()) {
+							Thread.sleep(REPORT_INTERVAL);
+							report();
+						}
+					} catch (InterruptedException ie) {
+						// Stopped
+					}
+				}
+			}, "Pi progress");
+			this.reporter.setPriority(Thread.MIN_PRIORITY);
+			this.reporter.setDaemon(true);
+			this.reporter.start();
+		}
+
+		/**
+		 * Stop reporting the progress, after reporting the final progress.
+		 */
+
+		public synchronized void stop() {
+			if (this.reporter == null) {
+				return;
+			}
+			this.reporter.interrupt();
+			try {
+				this.reporter.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			this.reporter = null;
+			report();
 		}
 
 		/**
@@ -541,17 +1019,44 @@ public class Pi {
 				addedElements = length;
 			}
 
-			long oldElements = this.currentElements.getAndAdd(addedElements);
-			long elements = oldElements + addedElements;
+			this.currentElements.add(addedElements);
+		}
 
-			int oldPercentComplete = (int) (100 * oldElements / this.totalElements);
-			int percentComplete = (int) (100 * elements / this.totalElements);
+		/**
+		 * Advances the progress by a whole range of terms at once, including
+		 * all its recursive steps.
+		 * 
+		 * @param n1
+		 *            First term of the range.
+		 * @param n2
+		 *            Last term of the range, minus one.
+		 */
+
+		public void skip(long n1, long n2) {
+			long length = n2 - n1;
+			this.currentElements.add((long) (length * (Math
+					.log((double) length) / Math.log(2.0) + 1.0)));
+		}
 
-			if (percentComplete != oldPercentComplete) {
-				Intent intent = new Intent(NEW_PROGRESS_INTENT);
-				intent.putExtra("progress", (percentComplete < 100) ? percentComplete + "%" : "100%");
-				CPUSampleApp.getInstance().getApplicationContext().sendBroadcast(intent);
+		// Called by the reporter thread, or after it has been stopped
+		private void report() {
+			long elements = Math.min(this.currentElements.sum(),
+					this.totalElements);
+			if (elements == this.reportedElements) {
+				return;
 			}
+			this.reportedElements = elements;
+
+			double seconds = (System.nanoTime() - this.startTime) / 1e9;
+			int percentComplete = (int) (100 * elements / this.totalElements);
+			double termsPerSecond = (seconds > 0 ? elements * (double) this.terms
+					/ this.totalElements / seconds : 0);
+			long remainingMillis = (elements > 0 ? (long) ((this.totalElements - elements)
+					* seconds * 1000 / elements)
+					: -1);
+
+			this.listener.progress(percentComplete, termsPerSecond,
+					remainingMillis);
 		}
 
 		private long recursiveLength(long length) {
@@ -571,8 +1076,16 @@ public class Pi {
 
 		private static final long PROGRESS_RECURSION_THRESHOLD = 32;
 
+		// Milliseconds between progress reports
+		private static final long REPORT_INTERVAL = 250;
+
+		private ProgressListener listener;
+		private long terms;
 		private long totalElements;
-		private AtomicLong currentElements;
+		private LongAdder currentElements;
+		private transient Thread reporter;
+		private transient long startTime;
+		private transient long reportedElements;
 	}
 
 	/**
@@ -614,12 +1127,17 @@ public class Pi {
 			long time = System.currentTimeMillis();
 			Apfloat two = new Apfloat(2, this.precision, this.radix), four = new Apfloat(
 					4, this.precision, this.radix), a = new Apfloat(1,
-					this.precision, this.radix), b = ApfloatMath.inverseRoot(
-					two, 2), t = a.divide(four);
+					this.precision, this.radix), b = inverseRoot(two, 2), t = a
+					.divide(four);
 			time = System.currentTimeMillis() - time;
 
 			Pi.err.println("took " + time / 1000.0 + " seconds");
 
+			// The next b does not depend on t, so t is updated while the
+			// next b is calculated
+
+			Operation<Apfloat> tUpdate = null;
+
 			for (int i = 0; i < iterations; i++) {
 				checkAlive();
 
@@ -629,20 +1147,24 @@ public class Pi {
 
 				Apfloat tmp = a;
 				a = a.add(b).divide(two);
+				if (tUpdate != null) {
+					t = tUpdate.execute();
+				}
+				tUpdate = fork(tUpdate(t, tmp, a, i));
 				checkAlive();
 				b = tmp.multiply(b);
 				checkAlive();
-				b = ApfloatMath.sqrt(b);
-
-				checkAlive();
-				t = t.subtract(new Apfloat(1L << i, this.precision, this.radix)
-						.multiply(ApfloatMath.pow(tmp.subtract(a), 2)));
+				b = b.multiply(inverseRoot(b, 2));
 
 				time = System.currentTimeMillis() - time;
 
 				Pi.err.println("took " + time / 1000.0 + " seconds");
 			}
 
+			if (tUpdate != null) {
+				t = tUpdate.execute();
+			}
+
 			checkAlive();
 
 			Pi.err.printf("Final value ");
@@ -650,7 +1172,7 @@ public class Pi {
 			time = System.currentTimeMillis();
 			a = a.add(b);
 			t = four.multiply(t);
-			Apfloat pi = ApfloatMath.pow(a, 2).divide(t);
+			Apfloat pi = ApfloatMath.pow(a, 2).multiply(inverseRoot(t, 1));
 			time = System.currentTimeMillis() - time;
 
 			Pi.err.println("took " + time / 1000.0 + " seconds");
@@ -658,6 +1180,32 @@ public class Pi {
 			return pi;
 		}
 
+		/**
+		 * Start an operation that the next iterations depend on. The
+		 * operation is just executed when its result is needed.
+		 * 
+		 * @param operation
+		 *            The operation.
+		 * 
+		 * @return An operation that returns the result of the operation.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return operation;
+		}
+
+		// t - 2^i (a_old - a_new)^2
+		private Operation<Apfloat> tUpdate(final Apfloat t,
+				final Apfloat previousA, final Apfloat a, final int i) {
+			return new Operation<Apfloat>() {
+				public Apfloat execute() {
+					checkAlive();
+					return t.subtract(new Apfloat(1L << i, precision, radix)
+							.multiply(ApfloatMath.pow(previousA.subtract(a), 2)));
+				}
+			};
+		}
+
 		// What precision is achieved with k Gauss-Legendre iterations
 		private static long gaussLegendrePrecision(int k, int r, int radix) {
 			return (long) ((Math.pow(2.0, (double) k) * Math.sqrt((double) r)
@@ -708,12 +1256,17 @@ public class Pi {
 			long time = System.currentTimeMillis();
 			Apfloat one = new Apfloat(1, this.precision, this.radix), two = new Apfloat(
 					2, this.precision, this.radix), four = new Apfloat(4,
-					this.precision, this.radix), y = ApfloatMath.sqrt(two)
-					.subtract(one), a = two.subtract(four.multiply(y));
+					this.precision, this.radix), y = two.multiply(
+					inverseRoot(two, 2)).subtract(one), a = two.subtract(four.multiply(y));
 			time = System.currentTimeMillis() - time;
 
 			Pi.err.println("took " + time / 1000.0 + " seconds");
 
+			// The next y does not depend on a, so a is updated while the
+			// next y is calculated
+
+			Operation<Apfloat> aUpdate = null;
+
 			for (int i = 0; i < iterations; i++) {
 				checkAlive();
 
@@ -724,24 +1277,24 @@ public class Pi {
 				Apfloat tmp = ApfloatMath.pow(y, 4);
 				y = one.subtract(tmp);
 				checkAlive();
-				y = ApfloatMath.inverseRoot(y, 4);
-				checkAlive();
-				y = y.subtract(one).divide(y.add(one));
-
-				checkAlive();
-				tmp = ApfloatMath.pow(y.add(one), 2);
+				y = inverseRoot(y, 4);
 				checkAlive();
-				a = a.multiply(tmp).multiply(tmp);
+				y = y.subtract(one).multiply(inverseRoot(y.add(one), 1));
 
-				checkAlive();
-				a = a.subtract(new Apfloat(1L << (2 * i + 3), this.precision,
-						this.radix).multiply(y).multiply(tmp.subtract(y)));
+				if (aUpdate != null) {
+					a = aUpdate.execute();
+				}
+				aUpdate = fork(aUpdate(a, y, one, i));
 
 				time = System.currentTimeMillis() - time;
 
 				Pi.err.println("took " + time / 1000.0 + " seconds");
 			}
 
+			if (aUpdate != null) {
+				a = aUpdate.execute();
+			}
+
 			checkAlive();
 
 			Pi.err.printf("Final value ");
@@ -755,6 +1308,38 @@ public class Pi {
 			return pi;
 		}
 
+		/**
+		 * Start an operation that the next iterations depend on. The
+		 * operation is just executed when its result is needed.
+		 * 
+		 * @param operation
+		 *            The operation.
+		 * 
+		 * @return An operation that returns the result of the operation.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return operation;
+		}
+
+		// a (1 + y)^4 - 2^(2i + 3) y (1 + y + y^2)
+		private Operation<Apfloat> aUpdate(final Apfloat a, final Apfloat y,
+				final Apfloat one, final int i) {
+			return new Operation<Apfloat>() {
+				public Apfloat execute() {
+					checkAlive();
+					Apfloat tmp = ApfloatMath.pow(y.add(one), 2);
+					checkAlive();
+					Apfloat result = a.multiply(tmp).multiply(tmp);
+
+					checkAlive();
+					return result.subtract(new Apfloat(1L << (2 * i + 3),
+							precision, radix).multiply(y).multiply(
+							tmp.subtract(y)));
+				}
+			};
+		}
+
 		// What precision is achieved with k Borweins' quartic iterations
 		private static long borweinPrecision(int k, int r, int radix) {
 			return (long) ((Math.pow(4.0, (double) k) * Math.sqrt((double) r)
@@ -863,7 +1448,9 @@ public class Pi {
 
 	/**
 	 * Execute an operation and display some additional information. The return
-	 * value of the operation is written to {@link #out}.
+	 * value of the operation is written to {@link #out}. If verification is
+	 * enabled with {@link #setVerification(int)}, the value is checked before
+	 * it is passed on.
 	 * 
 	 * @param precision
 	 *            The precision to be used.
@@ -872,11 +1459,15 @@ public class Pi {
 	 * @param operation
 	 *            The operation to execute.
 	 * 
+	 * @return The value calculated by the operation.
+	 * 
 	 * @exception IOException
 	 *                In case writing the output fails.
+	 * @exception VerificationException
+	 *                If the value failed verification.
 	 */
 
-	public static void run(long precision, int radix,
+	public static Apfloat run(long precision, int radix,
 			Operation<Apfloat> operation) throws IOException,
 			ApfloatRuntimeException {
 //		dump();
@@ -886,16 +1477,120 @@ public class Pi {
 		long time = System.currentTimeMillis();
 		Apfloat pi = operation.execute();
 		time = System.currentTimeMillis() - time;
+
+		if (Pi.verification > 0) {
+			BbpVerifier.verify(pi, Pi.verification);
+		}
 		
-		Intent intent = new Intent(NEW_PROGRESS_INTENT);
-		String result = pi.toString();
-		intent.putExtra("result", (result.length() > 1000) ? result.substring(0, 1000) : result);
-		CPUSampleApp.getInstance().getApplicationContext().sendBroadcast(intent);
+		// Only the beginning of the number is displayed, so avoid converting
+		// all of the digits to a String
+		PrefixResultSink prefix = new PrefixResultSink(RESULT_PREFIX_LENGTH);
+		prefix.write(pi);
+
+		if (Pi.resultListener != null) {
+			Pi.resultListener.result(prefix.getPrefix());
+		}
+
+		if (Pi.resultSink != null) {
+			Pi.resultSink.write(pi);
+		}
 		
 //		pi.writeTo(Pi.out, true);
 //		Pi.out.println();
 
 //		Pi.err.println("Total elapsed time " + time / 1000.0 + " seconds");
+
+		return pi;
+	}
+
+	/**
+	 * Set the listener that receives the progress of the binary splitting
+	 * calculations started after the call.
+	 * 
+	 * @param progressListener
+	 *            The progress listener, or <code>null</code> for none.
+	 */
+
+	public static void setProgressListener(ProgressListener progressListener) {
+		Pi.progressListener = progressListener;
+	}
+
+	/**
+	 * Get the listener that receives the progress of the calculations.
+	 * 
+	 * @return The progress listener, or <code>null</code> if not set.
+	 */
+
+	public static ProgressListener getProgressListener() {
+		return Pi.progressListener;
+	}
+
+	/**
+	 * Set the listener that receives the beginning of the calculated
+	 * numbers for display.
+	 * 
+	 * @param resultListener
+	 *            The result listener, or <code>null</code> for none.
+	 */
+
+	public static void setResultListener(ResultListener resultListener) {
+		Pi.resultListener = resultListener;
+	}
+
+	/**
+	 * Get the listener that receives the beginning of the calculated
+	 * numbers.
+	 * 
+	 * @return The result listener, or <code>null</code> if not set.
+	 */
+
+	public static ResultListener getResultListener() {
+		return Pi.resultListener;
+	}
+
+	/**
+	 * Set a sink that receives all the digits of the calculated numbers.
+	 * 
+	 * @param resultSink
+	 *            The result sink, or <code>null</code> for none.
+	 */
+
+	public static void setResultSink(ResultSink resultSink) {
+		Pi.resultSink = resultSink;
+	}
+
+	/**
+	 * Get the sink that receives all the digits of the calculated numbers.
+	 * 
+	 * @return The result sink, or <code>null</code> if not set.
+	 */
+
+	public static ResultSink getResultSink() {
+		return Pi.resultSink;
+	}
+
+	/**
+	 * Set whether calculated values of pi are verified by checking their
+	 * hexadecimal digits at random positions with the BBP formula, see
+	 * {@link BbpVerifier}. This detects corrupted calculations at the cost
+	 * of a few multiplications.
+	 * 
+	 * @param positions
+	 *            Number of positions to check, or 0 to not verify.
+	 */
+
+	public static void setVerification(int positions) {
+		Pi.verification = positions;
+	}
+
+	/**
+	 * Get the number of positions checked by verification.
+	 * 
+	 * @return Number of positions, 0 if verification is not enabled.
+	 */
+
+	public static int getVerification() {
+		return Pi.verification;
 	}
 
 	/**
@@ -941,7 +1636,9 @@ public class Pi {
 	}
 
 	/**
-	 * Set whether the program should stop executing.
+	 * Set whether the program should stop executing. Setting to
+	 * <code>true</code> starts a new {@link CancellationToken} for the next
+	 * calculation, and setting to <code>false</code> cancels the current one.
 	 * 
 	 * @param isAlive
 	 *            <code>true</code> to keep running the program,
@@ -949,7 +1646,21 @@ public class Pi {
 	 */
 
 	public static void setAlive(boolean isAlive) {
-		Pi.isAlive = isAlive;
+		if (isAlive) {
+			Pi.cancellationToken = new CancellationToken();
+		} else {
+			Pi.cancellationToken.cancel();
+		}
+	}
+
+	/**
+	 * Get the token that cancels the current calculation.
+	 * 
+	 * @return The cancellation token.
+	 */
+
+	public static CancellationToken getCancellationToken() {
+		return Pi.cancellationToken;
 	}
 
 	Pi() {
@@ -979,19 +1690,19 @@ public class Pi {
 		}
 
 		long precision = getPrecision(args[0]);
-		int method = (args.length > 1 ? getInt(args[1], "method", 0, 3) : 0), radix = (args.length > 2 ? getRadix(args[2])
+		int method = (args.length > 1 ? getInt(args[1], "method", CHUDNOVSKY, BORWEIN) : CHUDNOVSKY), radix = (args.length > 2 ? getRadix(args[2])
 				: ApfloatContext.getContext().getDefaultRadix());
 
 		Operation<Apfloat> operation;
 
 		switch (method) {
-		case 0:
+		case CHUDNOVSKY:
 			operation = new ChudnovskyPiCalculator(precision, radix);
 			break;
-		case 1:
+		case RAMANUJAN:
 			operation = new RamanujanPiCalculator(precision, radix);
 			break;
-		case 2:
+		case GAUSS_LEGENDRE:
 			operation = new GaussLegendrePiCalculator(precision, radix);
 			break;
 		default:
@@ -1007,15 +1718,75 @@ public class Pi {
 	/**
 	 * Check whether the program should stop executing.
 	 * 
-	 * @exception ThreadDeath
-	 *                in case {@link #setAlive(boolean)} has been set to
-	 *                <code>false</code>.
+	 * @exception CancellationException
+	 *                in case the current {@link CancellationToken} has been
+	 *                cancelled.
+	 */
+
+	protected static void checkAlive() throws CancellationException {
+		Pi.cancellationToken.throwIfCancelled();
+	}
+
+	/**
+	 * Calculate the inverse <code>n</code>:th root of a number, stopping
+	 * between the iterations if the calculation is cancelled. Otherwise the
+	 * same as {@link ApfloatMath#inverseRoot(Apfloat,long)}, which can't be
+	 * stopped before it completes.
+	 * 
+	 * @param x
+	 *            The number.
+	 * @param n
+	 *            The root, positive.
+	 * 
+	 * @return <code>x<sup>-1/n</sup></code> to the precision of
+	 *         <code>x</code>.
+	 * 
+	 * @exception CancellationException
+	 *                in case the calculation is cancelled.
 	 */
 
-	protected static void checkAlive() {
-		if (!Pi.isAlive) {
-			throw new ThreadDeath();
+	protected static Apfloat inverseRoot(Apfloat x, long n)
+			throws CancellationException, ApfloatRuntimeException {
+		long targetPrecision = x.precision();
+		if (targetPrecision <= INVERSE_ROOT_INITIAL_PRECISION
+				|| targetPrecision == Apfloat.INFINITE) {
+			return ApfloatMath.inverseRoot(x, n);
+		}
+
+		// Each Newton iteration doubles the number of correct digits, so
+		// work back from the target precision to the initial approximation
+
+		long[] precisions = new long[64];
+		int iterations = 0;
+		long precision = targetPrecision + INVERSE_ROOT_GUARD_DIGITS;
+		while (precision > INVERSE_ROOT_INITIAL_PRECISION) {
+			precisions[iterations++] = precision;
+			precision = precision / 2 + INVERSE_ROOT_GUARD_DIGITS;
 		}
+
+		checkAlive();
+		Apfloat result = ApfloatMath.inverseRoot(
+				x.precision(INVERSE_ROOT_INITIAL_PRECISION), n), one = new Apfloat(
+				1, Apfloat.INFINITE, x.radix()), divisor = new Apfloat(n,
+				Apfloat.INFINITE, x.radix());
+
+		while (iterations > 0) {
+			precision = precisions[--iterations];
+
+			// result = result + result * (1 - x * result^n) / n
+			checkAlive();
+			result = result.precision(precision);
+			Apfloat error = one.subtract(x.precision(precision).multiply(
+					ApfloatMath.pow(result, n)));
+			checkAlive();
+			Apfloat correction = result.multiply(error);
+			if (n != 1) {
+				correction = correction.divide(divisor);
+			}
+			result = result.add(correction);
+		}
+
+		return result.precision(targetPrecision);
 	}
 
 	/**
@@ -1030,6 +1801,42 @@ public class Pi {
 
 	protected static PrintWriter err;
 
+	/**
+	 * Method for the Chudnovskys' binary splitting algorithm.
+	 */
+
+	public static final int CHUDNOVSKY = 0;
+
+	/**
+	 * Method for the Ramanujan binary splitting algorithm.
+	 */
+
+	public static final int RAMANUJAN = 1;
+
+	/**
+	 * Method for the Gauss-Legendre iteration.
+	 */
+
+	public static final int GAUSS_LEGENDRE = 2;
+
+	/**
+	 * Method for the Borweins' quartic iteration.
+	 */
+
+	public static final int BORWEIN = 3;
+
+	// Number of characters of the result that are passed to the result listener
+	private static final int RESULT_PREFIX_LENGTH = 1000;
+
+	private static volatile ProgressListener progressListener;
+	private static volatile ResultListener resultListener;
+	private static ResultSink resultSink;
+	private static volatile int verification;
+
+	// Initial precision and extra digits of the cancellable inverse root
+	private static final long INVERSE_ROOT_INITIAL_PRECISION = 1000;
+	private static final long INVERSE_ROOT_GUARD_DIGITS = 20;
+
 	// Interactive execution stop check
-	private static volatile boolean isAlive = true;
+	private static volatile CancellationToken cancellationToken = new CancellationToken();
 }
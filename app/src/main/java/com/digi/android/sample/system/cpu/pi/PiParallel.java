@@ -3,6 +3,16 @@ package com.digi.android.sample.system.cpu.pi;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatContext;
@@ -34,52 +44,636 @@ public class PiParallel extends Pi {
 	}
 	
 	public static void calculatePi(long decimals) {
+		calculatePi(decimals, false);
+	}
+
+	/**
+	 * Calculate pi with the Chudnovskys' algorithm in the default radix,
+	 * optionally resuming from the checkpoints of a previous calculation.
+	 * 
+	 * @param decimals
+	 *            Number of digits to calculate.
+	 * @param resume
+	 *            <code>true</code> to resume from the checkpoints,
+	 *            <code>false</code> to discard them and start over.
+	 * 
+	 * @return <code>true</code> if the digits were loaded from the digit
+	 *         cache instead of being calculated.
+	 * 
+	 * @see #calculatePi(long, int, int, boolean)
+	 */
+
+	public static boolean calculatePi(long decimals, boolean resume) {
+		return calculatePi(decimals, CHUDNOVSKY, ApfloatContext.getContext()
+				.getDefaultRadix(), resume);
+	}
+
+	/**
+	 * Calculate pi, optionally resuming from the checkpoints of a previous
+	 * calculation that was interrupted. If a digit cache has been set with
+	 * {@link #setDigitCache(File)} and it has enough digits, they are used
+	 * instead of calculating pi. Checkpoints are only made for the binary
+	 * splitting methods, if a directory has been set with
+	 * {@link #setCheckpointDirectory(File)}, and only used if the previous
+	 * calculation had the same parameters and number of threads. The
+	 * checkpoints are deleted when the calculation completes.
+	 * 
+	 * @param decimals
+	 *            Number of digits to calculate.
+	 * @param method
+	 *            The method, {@link #CHUDNOVSKY}, {@link #RAMANUJAN},
+	 *            {@link #GAUSS_LEGENDRE} or {@link #BORWEIN}.
+	 * @param radix
+	 *            The radix of the digits.
+	 * @param resume
+	 *            <code>true</code> to resume from the checkpoints,
+	 *            <code>false</code> to discard them and start over.
+	 * 
+	 * @return <code>true</code> if the digits were loaded from the digit
+	 *         cache instead of being calculated.
+	 * 
+	 * @exception IllegalArgumentException
+	 *                If the method or radix is not valid.
+	 * @exception VerificationException
+	 *                If verification is enabled and the digits are not
+	 *                correct.
+	 */
+
+	public static boolean calculatePi(long decimals, int method, int radix,
+			boolean resume) throws IllegalArgumentException {
+		long precision = decimals;
+		checkRadix(radix);
+		ApfloatContext ctx = prepareContext();
+
+		final DigitCache digitCache = (digitCacheBypass ? null
+				: PiParallel.digitCache);
+		final Apfloat cachedPi = (digitCache != null ? digitCache.load(
+				precision, radix) : null);
+		if (cachedPi != null) {
+			try {
+				runMonitored(precision, radix, new Operation<Apfloat>() {
+					public Apfloat execute() {
+						return cachedPi;
+					}
+				});
+			} catch (VerificationException e) {
+				digitCache.clear();
+				throw e;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return true;
+		}
+
+		BinarySplittingPiCalculator calculator = createCalculator(method,
+				precision, radix);
+		Operation<Apfloat> operation = createOperation(method, calculator,
+				precision, radix);
+
+		// Only the binary splitting can be resumed
+		CheckpointStore checkpointStore = null;
+		if (calculator != null) {
+			checkpointStore = createCheckpointStore(calculator, precision,
+					radix, resume);
+			calculator.setCheckpointStore(checkpointStore);
+		}
+
+		try {
+			Apfloat pi = runMonitored(precision, radix, operation);
+
+			// Only verified digits are kept
+			if (digitCache != null)
+				digitCache.store(pi);
+			if (checkpointStore != null)
+				checkpointStore.clear();
+		} catch (VerificationException e) {
+			// The checkpoints may be corrupted too
+			if (checkpointStore != null)
+				checkpointStore.clear();
+			throw e;
+		} catch (ApfloatRuntimeException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (DEBUG)
+				Pi.err.println("PiParallel.calculatePi() "
+						+ ApfloatHolderStack.getAllocationCount()
+						+ " holders allocated");
+
+			// Garbage collection may not have run perfectly by this point.
+			BuilderFactory builderFactory = ctx.getBuilderFactory();
+			builderFactory.gc();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Calculate pi with two methods at the same time, each using half of
+	 * the threads, and compare the results. Running two different
+	 * algorithms loads the CPU and memory differently than one, and any
+	 * difference in the results means that one of them was corrupted. The
+	 * digit cache and checkpoints are not used.
+	 * 
+	 * @param decimals
+	 *            Number of digits to calculate.
+	 * @param method1
+	 *            The method whose result is reported.
+	 * @param method2
+	 *            The method to compare with.
+	 * @param radix
+	 *            The radix of the digits.
+	 * 
+	 * @exception IllegalArgumentException
+	 *                If a method or the radix is not valid.
+	 * @exception VerificationException
+	 *                If the results differ, or verification is enabled and
+	 *                the digits are not correct.
+	 */
+
+	public static void crossCheckPi(long decimals, int method1, int method2,
+			int radix) throws IllegalArgumentException {
 		long precision = decimals;
-		int method = 0;
-		int numberOfProcessors = Runtime.getRuntime().availableProcessors();
+		checkRadix(radix);
+		ApfloatContext ctx = prepareContext();
+
+		int numberOfProcessors = ctx.getNumberOfProcessors(), numberOfProcessors1 = Math
+				.max(numberOfProcessors / 2, 1), numberOfProcessors2 = Math
+				.max(numberOfProcessors - numberOfProcessors1, 1);
+
+		Operation<Apfloat> operation = new CrossCheckPiCalculator(
+				new ThreadLimitedOperation<Apfloat>(createOperation(method1,
+						createCalculator(method1, precision, radix), precision,
+						radix), numberOfProcessors1, 0),
+				new ThreadLimitedOperation<Apfloat>(createOperation(method2,
+						createCalculator(method2, precision, radix), precision,
+						radix), numberOfProcessors2, numberOfProcessors1));
+
+		try {
+			runMonitored(precision, radix, operation);
+		} catch (ApfloatRuntimeException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			// Garbage collection may not have run perfectly by this point.
+			BuilderFactory builderFactory = ctx.getBuilderFactory();
+			builderFactory.gc();
+		}
+	}
+
+	// Sets up the context for a new calculation with all the enabled cores
+	private static ApfloatContext prepareContext() {
+		int numberOfProcessors = updateCoreTopology().getNumberOfCores();
 		ApfloatContext ctx = ApfloatContext.getContext();
-		int radix = ctx.getDefaultRadix();
 
 		Pi.setAlive(true);
 
 		ctx.setNumberOfProcessors(numberOfProcessors);
+		ctx.removeAttribute(FIRST_CORE);
+		requiredExecutorThreads = numberOfProcessors - 1;
+		setExecutorSize(ctx, numberOfProcessors - 1);
 		ctx.setCleanupAtExit(true);
 
-		// Write PI files to the temp directory.
-		String path = System.getProperty("java.io.tmpdir");
+		// Write PI files to the temp directory, or to the scratch directory
+		// of the memory mapped storage.
+		File scratchDirectory = PiParallel.scratchDirectory;
+		String path = (scratchDirectory != null ? scratchDirectory.getPath()
+				: System.getProperty("java.io.tmpdir"));
 		if (path != null && !path.endsWith(File.separator))
 			path = path + File.separator;
 		FilenameGenerator filenameGenerator = new FilenameGenerator(path, null, null);
 		ctx.setFilenameGenerator(filenameGenerator);
+		setBuilderFactory(ctx, scratchDirectory != null, convolutionTuning,
+				nttKernel);
 
-		Operation<Apfloat> operation;
+		setOut(new PrintWriter(System.out, true));
+		setErr(new PrintWriter(System.out, true));
+
+		return ctx;
+	}
+
+	// Runs the calculation, following the cores that are enabled or
+	// disabled while it runs
+	private static Apfloat runMonitored(long precision, int radix,
+			Operation<Apfloat> operation) throws IOException,
+			ApfloatRuntimeException {
+		CoreHotplugMonitor monitor = new CoreHotplugMonitor(
+				HOTPLUG_POLL_INTERVAL);
+		monitor.start();
+		try {
+			return run(precision, radix, operation);
+		} finally {
+			monitor.stop();
+			requiredExecutorThreads = 0;
+		}
+	}
+
+	// The split operations of a calculation wait for each other, so the
+	// executor needs one thread less than the calculation splits to. A
+	// forked operation holds a thread while the calculation continues, so
+	// it gets a thread of its own, see reserveExecutorThreads()
+	private static void setExecutorSize(ApfloatContext ctx,
+			int numberOfThreads) {
+		ExecutorService executorService = ctx.getExecutorService();
+		if (!(executorService instanceof ThreadPoolExecutor)) {
+			return;
+		}
+		ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executorService;
+		int size = Math.max(numberOfThreads, 1);
+		synchronized (threadPoolExecutor) {
+			// The core size can't exceed the maximum size
+			if (size > threadPoolExecutor.getMaximumPoolSize()) {
+				threadPoolExecutor.setMaximumPoolSize(size);
+				threadPoolExecutor.setCorePoolSize(size);
+			} else {
+				threadPoolExecutor.setCorePoolSize(size);
+				threadPoolExecutor.setMaximumPoolSize(size);
+			}
+		}
+	}
+
+	// Adds threads to the executor for operations that run alongside the
+	// split operations, or removes them when the operations are done
+	private static synchronized void reserveExecutorThreads(
+			int numberOfThreads) {
+		requiredExecutorThreads += numberOfThreads;
+		setExecutorSize(ApfloatContext.getContext(), Math.max(
+				coreTopology.getNumberOfCores() - 1, requiredExecutorThreads));
+	}
 
+	// Number of the threads that should run at the same time, so that the
+	// cores left enabled are not oversubscribed
+	private static int getAvailableProcessors(int numberOfProcessors) {
+		return Math.max(1, Math.min(numberOfProcessors,
+				coreTopology.getNumberOfCores()));
+	}
+
+	// First slot of the cores of the calculation, not 0 in a cross-check
+	private static int getFirstCore(ApfloatContext ctx) {
+		Object firstCore = ctx.getAttribute(FIRST_CORE);
+		return (firstCore instanceof Integer ? (Integer) firstCore : 0);
+	}
+
+	private static void checkRadix(int radix) throws IllegalArgumentException {
+		if (radix < Character.MIN_RADIX || radix > Character.MAX_RADIX) {
+			throw new IllegalArgumentException("Invalid radix " + radix);
+		}
+	}
+
+	// Returns null for the methods that don't use binary splitting
+	private static BinarySplittingPiCalculator createCalculator(int method,
+			long precision, int radix) {
 		switch (method) {
-		case 0:
-			operation = new ParallelChudnovskyPiCalculator(precision, radix);
-			break;
+		case CHUDNOVSKY:
+			return createCalculator(new ChudnovskyBinarySplittingSeries(
+					precision, radix));
+		case RAMANUJAN:
+			return createCalculator(new RamanujanBinarySplittingSeries(
+					precision, radix));
 		default:
-			operation = new ParallelRamanujanPiCalculator(precision, radix);
+			return null;
 		}
+	}
 
-		setOut(new PrintWriter(System.out, true));
-		setErr(new PrintWriter(System.out, true));
+	private static Operation<Apfloat> createOperation(int method,
+			BinarySplittingPiCalculator calculator, long precision, int radix)
+			throws IllegalArgumentException {
+		switch (method) {
+		case CHUDNOVSKY:
+			return new ParallelChudnovskyPiCalculator(calculator, precision,
+					radix);
+		case RAMANUJAN:
+			return new ParallelRamanujanPiCalculator(calculator, precision,
+					radix);
+		case GAUSS_LEGENDRE:
+			return new ParallelGaussLegendrePiCalculator(precision, radix);
+		case BORWEIN:
+			return new ParallelBorweinPiCalculator(precision, radix);
+		default:
+			throw new IllegalArgumentException("Invalid method " + method);
+		}
+	}
+	
+	/**
+	 * Cancel the calculation in progress. The calculating threads stop at
+	 * their next check, after the multiplication each is running.
+	 */
+
+	public static void cancel() {
+		Pi.setAlive(false);
+	}
+
+	/**
+	 * Read the cores that are currently enabled, after a core has been
+	 * enabled or disabled. The next calculation uses all the enabled cores.
+	 * A calculation in progress moves its threads off the disabled cores
+	 * and splits the ranges of terms that it has not split yet by the new
+	 * capacities of the cores. It also runs only as many work-stealing
+	 * tasks and multiplication threads at a time as there are cores left,
+	 * and uses the cores that are enabled for the rest of the calculation.
+	 * <p>
+	 * 
+	 * Calculations poll for the changes themselves, so calling this is only
+	 * needed to make a change take effect immediately.
+	 * 
+	 * @return The enabled cores.
+	 */
+
+	public static synchronized CoreTopology updateCoreTopology() {
+		CoreTopology coreTopology = CoreTopology.read();
+		CoreTopology previousCoreTopology = PiParallel.coreTopology;
+		if (!coreTopology.equals(previousCoreTopology)) {
+			int numberOfProcessors = coreTopology.getNumberOfCores();
+
+			if (DEBUG)
+				Pi.err.println("PiParallel.updateCoreTopology() "
+						+ coreTopology + ", pinning "
+						+ (ThreadAffinity.isAvailable() ? "available"
+								: "not available"));
+
+			PiParallel.coreTopology = coreTopology;
+			ENABLED_CORES.resize(numberOfProcessors
+					- previousCoreTopology.getNumberOfCores());
+
+			// Threads that a calculation in progress is waiting for must
+			// not be removed
+			ApfloatContext ctx = ApfloatContext.getGlobalContext();
+			ctx.setNumberOfProcessors(numberOfProcessors);
+			setExecutorSize(ctx, Math.max(numberOfProcessors - 1,
+					requiredExecutorThreads));
+		}
+		return PiParallel.coreTopology;
+	}
+
+	/**
+	 * Set whether the binary splitting should be done with a work-stealing
+	 * {@link ForkJoinPool} instead of splitting the work statically between
+	 * the available threads.
+	 * 
+	 * @param workStealing
+	 *            <code>true</code> to use work-stealing, <code>false</code>
+	 *            to split the work statically.
+	 */
+
+	public static void setWorkStealing(boolean workStealing) {
+		PiParallel.workStealing = workStealing;
+	}
+
+	/**
+	 * Set whether large multiplications should use the
+	 * {@link NTTConvolutionStrategy} kernel instead of the apfloat
+	 * transforms. Has no effect if the elements of the current builder
+	 * factory are not <code>int</code>s.
+	 * 
+	 * @param nttKernel
+	 *            <code>true</code> to use the kernel, <code>false</code> to
+	 *            use the apfloat transforms.
+	 */
+
+	public static void setNTTKernel(boolean nttKernel) {
+		PiParallel.nttKernel = nttKernel;
+	}
+
+	/**
+	 * Set the crossover points of the multiplication algorithms measured on
+	 * the device. Has no effect if the elements of the current builder
+	 * factory are not <code>int</code>s or <code>long</code>s.
+	 * 
+	 * @param convolutionTuning
+	 *            The tuning, or <code>null</code> to use the apfloat
+	 *            defaults.
+	 */
+
+	public static void setConvolutionTuning(
+			ConvolutionTuning convolutionTuning) {
+		PiParallel.convolutionTuning = convolutionTuning;
+	}
+
+	/**
+	 * Set whether parallel ranges of terms should be split so that both
+	 * parts have the same estimated cost, instead of the same number of
+	 * terms. Only affects series that provide a
+	 * {@link BinarySplittingCostModel}.
+	 * 
+	 * @param costBalancedSplit
+	 *            <code>true</code> to split by estimated cost,
+	 *            <code>false</code> to split by number of terms.
+	 */
+
+	public static void setCostBalancedSplit(boolean costBalancedSplit) {
+		PiParallel.costBalancedSplit = costBalancedSplit;
+	}
+
+	/**
+	 * Set whether numbers that exceed the memory threshold should be stored
+	 * in memory mapped files instead of files accessed with seeks and
+	 * reads. Mapping avoids a system call for every block transferred,
+	 * which dominates the run time of very large calculations on flash
+	 * storage.
+	 * 
+	 * @param scratchDirectory
+	 *            Directory for the mapped files, or <code>null</code> to
+	 *            use regular files in the temp directory.
+	 * @param windowSize
+	 *            Size of the mapped windows in bytes, see
+	 *            {@link MappedDiskStorage#setWindowSize(int)}. Ignored if
+	 *            <code>scratchDirectory</code> is <code>null</code>.
+	 * 
+	 * @exception IllegalArgumentException
+	 *                If the scratch directory is not a directory or the
+	 *                window size is not valid.
+	 */
+
+	public static void setMemoryMappedStorage(File scratchDirectory,
+			int windowSize) throws IllegalArgumentException {
+		if (scratchDirectory != null) {
+			if (!scratchDirectory.isDirectory() && !scratchDirectory.mkdirs()) {
+				throw new IllegalArgumentException("Not a directory: "
+						+ scratchDirectory);
+			}
+			MappedDiskStorage.setWindowSize(windowSize);
+		}
+		PiParallel.scratchDirectory = scratchDirectory;
+	}
+
+	/**
+	 * Set the directory where completed ranges of terms are checkpointed, so
+	 * that an interrupted calculation can be resumed with
+	 * {@link #calculatePi(long, boolean)}.
+	 * 
+	 * @param checkpointDirectory
+	 *            The checkpoint directory, or <code>null</code> to not make
+	 *            checkpoints.
+	 */
+
+	public static void setCheckpointDirectory(File checkpointDirectory) {
+		PiParallel.checkpointDirectory = checkpointDirectory;
+	}
+
+	/**
+	 * Set the directory where the calculated digits are cached. Later
+	 * calculations of the same or fewer digits in the same radix load the
+	 * digits instead of calculating them, and calculations of more digits
+	 * replace the cached digits.
+	 * 
+	 * @param digitCacheDirectory
+	 *            The cache directory, or <code>null</code> to not cache the
+	 *            digits.
+	 * 
+	 * @exception IllegalArgumentException
+	 *                If the cache directory can't be created.
+	 */
+
+	public static void setDigitCache(File digitCacheDirectory)
+			throws IllegalArgumentException {
+		DigitCache digitCache = null;
+		if (digitCacheDirectory != null) {
+			try {
+				digitCache = new DigitCache(digitCacheDirectory);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+		}
+		PiParallel.digitCache = digitCache;
+	}
+
+	/**
+	 * Get the digit cache.
+	 * 
+	 * @return The digit cache, or <code>null</code> if not set.
+	 */
+
+	public static DigitCache getDigitCache() {
+		return PiParallel.digitCache;
+	}
+
+	/**
+	 * Set whether the digit cache should be bypassed, so that the digits
+	 * are always calculated and the cache is not updated. Benchmark runs
+	 * should bypass the cache.
+	 * 
+	 * @param digitCacheBypass
+	 *            <code>true</code> to bypass the digit cache.
+	 */
+
+	public static void setDigitCacheBypass(boolean digitCacheBypass) {
+		PiParallel.digitCacheBypass = digitCacheBypass;
+	}
+
+	private static CheckpointStore createCheckpointStore(
+			BinarySplittingPiCalculator calculator, long precision, int radix,
+			boolean resume) {
+		File checkpointDirectory = PiParallel.checkpointDirectory;
+		if (checkpointDirectory == null)
+			return null;
+
+		// Resuming finds the stored ranges only if the terms are split the
+		// same way, and the stored numbers have the same element type
+		ApfloatContext ctx = ApfloatContext.getContext();
+		String fingerprint = calculator.getClass().getName() + ","
+				+ calculator.getSeries().getClass().getName() + ","
+				+ precision + "," + radix + ","
+				+ ctx.getNumberOfProcessors() + "," + coreTopology + ","
+				+ costBalancedSplit
+				+ "," + ctx.getBuilderFactory().getElementType();
 
 		try {
-			run(precision, radix, operation);
-		} catch (ApfloatRuntimeException e) {
-			e.printStackTrace();
+			CheckpointStore checkpointStore = new CheckpointStore(
+					checkpointDirectory, fingerprint, Math.max(
+							MIN_CHECKPOINT_TERMS, precision
+									/ CHECKPOINT_PRECISION_DIVISOR),
+					CHECKPOINT_INTERVAL);
+			if (!resume)
+				checkpointStore.clear();
+			return checkpointStore;
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Garbage collection may not have run perfectly by this point.
-			BuilderFactory builderFactory = ctx.getBuilderFactory();
-			builderFactory.gc();
+			return null;
 		}
 	}
-	
-	public static void cancel() {
-		Pi.setAlive(false);
+
+	private static void setBuilderFactory(ApfloatContext ctx, boolean mapped,
+			ConvolutionTuning convolutionTuning, boolean nttKernel) {
+		BuilderFactory builderFactory = DelegatingBuilderFactory.unwrap(ctx
+				.getBuilderFactory());
+		if (mapped && !MappedDiskStorage.isMapped(builderFactory)) {
+			BuilderFactory mappedBuilderFactory = MappedDiskStorage
+					.createBuilderFactory(builderFactory);
+			if (mappedBuilderFactory != null) {
+				unmappedBuilderFactory = builderFactory;
+				builderFactory = mappedBuilderFactory;
+			}
+		} else if (!mapped && MappedDiskStorage.isMapped(builderFactory)) {
+			builderFactory = unmappedBuilderFactory;
+		}
+		if (convolutionTuning != null
+				&& ConvolutionTuning.isSupported(builderFactory)) {
+			builderFactory = new TunedBuilderFactory(builderFactory,
+					convolutionTuning);
+		}
+		if (nttKernel && NTTBuilderFactory.isSupported(builderFactory)) {
+			builderFactory = new NTTBuilderFactory(builderFactory);
+		}
+		ctx.setBuilderFactory(builderFactory);
+	}
+
+	/**
+	 * Find the point where to split a range of terms for calculation by two
+	 * groups of threads. The threads can be weighted by the capacity of
+	 * their cores, or all given the weight 1.
+	 * 
+	 * @param series
+	 *            The binary splitting series.
+	 * @param n1
+	 *            Start term.
+	 * @param n2
+	 *            End term.
+	 * @param numberOfProcessors1
+	 *            Total weight of the threads calculating the lower part.
+	 * @param numberOfProcessors
+	 *            Total weight of all the threads.
+	 * 
+	 * @return The first term of the upper part.
+	 */
+
+	protected static long splitPoint(BinarySplittingSeries series, long n1,
+			long n2, long numberOfProcessors1, long numberOfProcessors) {
+		if (!costBalancedSplit || n2 - n1 < 2
+				|| !(series instanceof BinarySplittingCostModel)) {
+			return n1 + (n2 - n1) * numberOfProcessors1 / numberOfProcessors;
+		}
+
+		BinarySplittingCostModel costModel = (BinarySplittingCostModel) series;
+		double ratio = (double) numberOfProcessors1 / numberOfProcessors;
+
+		// The cost is increasing in the upper term, so use bisection
+		long low = n1 + 1, high = n2 - 1;
+		while (low < high) {
+			long nMiddle = low + high >>> 1;
+			double cost1 = costModel.cost(n1, nMiddle), cost2 = costModel
+					.cost(nMiddle, n2);
+			if (cost1 < ratio * (cost1 + cost2)) {
+				low = nMiddle + 1;
+			} else {
+				high = nMiddle;
+			}
+		}
+
+		if (DEBUG)
+			Pi.err.println("PiParallel.splitPoint(" + n1 + ", " + n2
+					+ ") cost-balanced at " + low + " instead of "
+					+ (n1 + (n2 - n1) * numberOfProcessors1 / numberOfProcessors));
+
+		return low;
+	}
+
+	private static BinarySplittingPiCalculator createCalculator(
+			BinarySplittingSeries series) {
+		if (workStealing)
+			return new ForkJoinBinarySplittingPiCalculator(series);
+		return new ParallelBinarySplittingPiCalculator(series);
 	}
 
 	protected static class ParallelBinarySplittingPiCalculator extends
@@ -105,6 +699,7 @@ public class PiParallel extends Pi {
 
 			ApfloatContext ctx = ApfloatContext.getContext();
 			int numberOfProcessors = ctx.getNumberOfProcessors();
+			int firstCore = getFirstCore(ctx);
 
 			if (n1 == n2) {
 				// Pathological case where available threads > terms needed
@@ -115,75 +710,122 @@ public class PiParallel extends Pi {
 					P.setApfloat(Apfloat.ONE);
 			} else if (numberOfProcessors == 1) {
 				// End of splitting work between threads
-				// calculate remaining terms on the current thread
+				// calculate remaining terms on the current thread, on the
+				// core of its slot
 
-				super.r(n1, n2, T, Q, P, progressIndicator);
+				PinnedCore pinnedCore = PINNED_CORE.get();
+				if (pinnedCore != null) {
+					// Recursing below the first range of this thread
+					pinnedCore.update();
+					super.r(n1, n2, T, Q, P, progressIndicator);
+				} else {
+					pinnedCore = new PinnedCore(firstCore);
+					PINNED_CORE.set(pinnedCore);
+					try {
+						pinnedCore.update();
+						super.r(n1, n2, T, Q, P, progressIndicator);
+					} finally {
+						// Pooled threads are reused for other work
+						PINNED_CORE.remove();
+						pinnedCore.release();
+					}
+				}
 			} else {
 				// Multiple threads available
 
-				final ApfloatHolder LT = new ApfloatHolder(), LQ = new ApfloatHolder(), LP = new ApfloatHolder();
+				if (loadCheckpoint(n1, n2, T, Q, P, progressIndicator)) {
+					return;
+				}
 
-				if (split(n1, n2, numberOfProcessors)) {
-					// Split work in ratio of number of threads and execute in
-					// parallel
+				ApfloatHolderStack.Frame left = ApfloatHolderStack.push();
+				final ApfloatHolder LT = left.T, LQ = left.Q, LP = left.P;
 
-					int numberOfProcessors1 = numberOfProcessors / 2, numberOfProcessors2 = numberOfProcessors
-							- numberOfProcessors1;
+				try {
+					if (split(n1, n2, numberOfProcessors)) {
+						// Split work in ratio of capacity of the cores of the
+						// threads and execute in parallel
 
-					final long nMiddle = n1 + (n2 - n1) * numberOfProcessors1
-							/ numberOfProcessors;
+						int numberOfProcessors1 = numberOfProcessors / 2, numberOfProcessors2 = numberOfProcessors
+								- numberOfProcessors1;
 
-					if (DEBUG)
-						Pi.err.println("PiParallel.r(" + n1 + ", " + n2
-								+ ") splitting " + numberOfProcessors
-								+ " threads to r(" + n1 + ", " + nMiddle + ") "
-								+ numberOfProcessors1 + " threads, r("
-								+ nMiddle + ", " + n2 + ") "
-								+ numberOfProcessors2 + " threads");
+						CoreTopology topology = coreTopology;
+						final long nMiddle = splitPoint(getSeries(), n1, n2,
+								topology.getCapacity(firstCore,
+										numberOfProcessors1),
+								topology.getCapacity(firstCore,
+										numberOfProcessors));
 
-					// Call recursively this r() method to further split the
-					// term calculation
-					Operation<Object> operation1 = new Operation<Object>() {
-						public Object execute() {
-							r(n1, nMiddle, LT, LQ, LP, progressIndicator);
-							return null;
-						}
-					};
-					Operation<Object> operation2 = new Operation<Object>() {
-						public Object execute() {
-							r(nMiddle, n2, T, Q, P, progressIndicator);
-							return null;
+						if (DEBUG)
+							Pi.err.println("PiParallel.r(" + n1 + ", " + n2
+									+ ") splitting " + numberOfProcessors
+									+ " threads to r(" + n1 + ", " + nMiddle + ") "
+									+ numberOfProcessors1 + " threads, r("
+									+ nMiddle + ", " + n2 + ") "
+									+ numberOfProcessors2 + " threads");
+
+						// Call recursively this r() method to further split the
+						// term calculation
+						Operation<Object> operation1 = new Operation<Object>() {
+							public Object execute() {
+								r(n1, nMiddle, LT, LQ, LP, progressIndicator);
+								return null;
+							}
+						};
+						Operation<Object> operation2 = new Operation<Object>() {
+							public Object execute() {
+								r(nMiddle, n2, T, Q, P, progressIndicator);
+								return null;
+							}
+						};
+
+						BackgroundOperation<?> operation = new BackgroundOperation<Object>(
+								new ThreadLimitedOperation<Object>(operation1,
+										numberOfProcessors1, firstCore));
+						try {
+							new ThreadLimitedOperation<Object>(operation2,
+									numberOfProcessors2, firstCore
+											+ numberOfProcessors1).execute();
+						} catch (Throwable t) {
+							// The left range must not be popped while the
+							// other thread is still calculating it
+							operation.awaitTermination();
+							throw t;
 						}
-					};
-
-					BackgroundOperation<?> operation = new BackgroundOperation<Object>(
-							new ThreadLimitedOperation<Object>(operation1,
-									numberOfProcessors1));
-					new ThreadLimitedOperation<Object>(operation2,
-							numberOfProcessors2).execute();
-					operation.getResult(); // Waits for operation to complete
-				} else {
-					// Do not split at this point
+						operation.getResult(); // Waits for operation to complete
+					} else {
+						// Do not split at this point
 
-					if (DEBUG)
-						Pi.err.println("PiParallel.r(" + n1 + ", " + n2
-								+ ") not splitting " + numberOfProcessors
-								+ " threads");
+						if (DEBUG)
+							Pi.err.println("PiParallel.r(" + n1 + ", " + n2
+									+ ") not splitting " + numberOfProcessors
+									+ " threads");
 
-					long nMiddle = (n1 + n2) / 2;
+						long nMiddle = (n1 + n2) / 2;
 
-					r(n1, nMiddle, LT, LQ, LP, progressIndicator);
-					r(nMiddle, n2, T, Q, P, progressIndicator);
-				}
+						r(n1, nMiddle, LT, LQ, LP, progressIndicator);
+						r(nMiddle, n2, T, Q, P, progressIndicator);
+					}
 
-				// Combine recursed results whether split in parallel or not,
-				// using all threads available here
+					// Combine recursed results whether split in parallel or not,
+					// using all threads available here, but no more than there
+					// are cores left enabled
 
-				T.setApfloat(Q.getApfloat().multiply(LT.getApfloat())
-						.add(LP.getApfloat().multiply(T.getApfloat())));
-				Q.setApfloat(LQ.getApfloat().multiply(Q.getApfloat()));
-				if (P != null)
-					P.setApfloat(LP.getApfloat().multiply(P.getApfloat()));
+					int availableProcessors = getAvailableProcessors(numberOfProcessors);
+					if (availableProcessors < numberOfProcessors) {
+						new ThreadLimitedOperation<Object>(new Operation<Object>() {
+							public Object execute() {
+								combine(LT, LQ, LP, T, Q, P);
+								return null;
+							}
+						}, availableProcessors).execute();
+					} else {
+						combine(LT, LQ, LP, T, Q, P);
+					}
+				} finally {
+					ApfloatHolderStack.pop();
+				}
+
+				saveCheckpoint(n1, n2, T, Q, P);
 
 				if (progressIndicator != null) {
 					progressIndicator.progress(n1, n2);
@@ -207,6 +849,304 @@ public class PiParallel extends Pi {
 		}
 	}
 
+	/**
+	 * Semaphore with a permit for each enabled core.
+	 */
+
+	private static class CoreSemaphore extends Semaphore {
+		public CoreSemaphore(int permits) {
+			super(permits);
+		}
+
+		public void resize(int delta) {
+			if (delta > 0) {
+				release(delta);
+			} else if (delta < 0) {
+				reducePermits(-delta);
+			}
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * The core that a thread calculating one range of terms is pinned to.
+	 * The core is looked up again when the enabled cores change, so the
+	 * thread moves off a core that was disabled.
+	 */
+
+	private static class PinnedCore {
+		public PinnedCore(int slot) {
+			this.slot = slot;
+		}
+
+		public void update() {
+			CoreTopology topology = coreTopology;
+			if (topology != this.topology) {
+				this.topology = topology;
+				int cpu = topology.getCpu(this.slot
+						% topology.getNumberOfCores());
+				boolean pinned = ThreadAffinity.setAffinity(cpu);
+
+				if (DEBUG)
+					Pi.err.println("PiParallel " + Thread.currentThread()
+							+ " slot " + this.slot + " on cpu" + cpu
+							+ (pinned ? "" : " not") + " pinned");
+			}
+		}
+
+		public void release() {
+			if (this.topology != null) {
+				ThreadAffinity.setAffinity(coreTopology.getCpus());
+			}
+		}
+
+		private final int slot;
+		private CoreTopology topology;
+	}
+
+	/**
+	 * Work-stealing version of the binary splitting algorithm. The terms are
+	 * split into {@link RecursiveAction}s well below the number of threads,
+	 * down to a cutoff relative to the total number of terms. The right-hand
+	 * (more expensive) half of each range is forked so that idle workers can
+	 * steal it, instead of waiting for a statically assigned half to finish.
+	 */
+
+	protected static class ForkJoinBinarySplittingPiCalculator extends
+			BinarySplittingPiCalculator {
+		/**
+		 * Construct a work-stealing pi calculator.
+		 * 
+		 * @param series
+		 *            The binary splitting series to be used.
+		 */
+
+		public ForkJoinBinarySplittingPiCalculator(BinarySplittingSeries series)
+				throws ApfloatRuntimeException {
+			super(series);
+		}
+
+		public void r(long n1, long n2, ApfloatHolder T, ApfloatHolder Q,
+				ApfloatHolder P,
+				BinarySplittingProgressIndicator progressIndicator)
+				throws ApfloatRuntimeException {
+			ApfloatContext ctx = ApfloatContext.getContext();
+			int numberOfProcessors = ctx.getNumberOfProcessors();
+
+			if (numberOfProcessors == 1 || n2 - n1 <= MIN_TASK_TERMS) {
+				// Single thread, or called from a task below the cutoff
+
+				super.r(n1, n2, T, Q, P, progressIndicator);
+				return;
+			}
+
+			checkAlive();
+
+			long cutoff = Math.max(MIN_TASK_TERMS, (n2 - n1)
+					/ (numberOfProcessors * TASKS_PER_PROCESSOR));
+
+			if (DEBUG)
+				Pi.err.println("PiParallel.r(" + n1 + ", " + n2
+						+ ") work-stealing with " + numberOfProcessors
+						+ " threads, cutoff " + cutoff + " terms");
+
+			// In a cross-check each calculation has its own range of cores
+			ForkJoinPool pool = new ForkJoinPool(numberOfProcessors,
+					new PinnedWorkerThreadFactory(numberOfProcessors,
+							getFirstCore(ctx)), null, false);
+			try {
+				pool.invoke(new SplitTask(n1, n2, T, Q, P, numberOfProcessors,
+						cutoff, progressIndicator));
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		/**
+		 * Calculates one range of terms, forking the right half of the range
+		 * as long as the range is above the cutoff.
+		 */
+
+		private class SplitTask extends RecursiveAction {
+			SplitTask(long n1, long n2, ApfloatHolder T, ApfloatHolder Q,
+					ApfloatHolder P, int numberOfProcessors, long cutoff,
+					BinarySplittingProgressIndicator progressIndicator) {
+				this.n1 = n1;
+				this.n2 = n2;
+				this.T = T;
+				this.Q = Q;
+				this.P = P;
+				this.numberOfProcessors = numberOfProcessors;
+				this.cutoff = cutoff;
+				this.progressIndicator = progressIndicator;
+			}
+
+			protected void compute() {
+				checkAlive();
+
+				Thread thread = Thread.currentThread();
+				if (thread instanceof PinnedWorkerThread) {
+					((PinnedWorkerThread) thread).update();
+				}
+
+				if (this.n2 - this.n1 <= this.cutoff) {
+					// Calculate the whole subtree on this worker, without
+					// parallelizing the multiplications any further
+
+					// Extra workers wait while cores are disabled
+					ENABLED_CORES.acquireUninterruptibly();
+					try {
+						new ThreadLimitedOperation<Object>(new Operation<Object>() {
+							public Object execute() {
+								r(SplitTask.this.n1, SplitTask.this.n2,
+										SplitTask.this.T, SplitTask.this.Q,
+										SplitTask.this.P,
+										SplitTask.this.progressIndicator);
+								return null;
+							}
+						}, 1).execute();
+					} finally {
+						ENABLED_CORES.release();
+					}
+				} else if (!loadCheckpoint(this.n1, this.n2, this.T, this.Q,
+						this.P, this.progressIndicator)) {
+					ApfloatHolderStack.Frame left = ApfloatHolderStack.push();
+					final ApfloatHolder LT = left.T, LQ = left.Q, LP = left.P;
+
+					int numberOfProcessors1 = Math.max(1,
+							this.numberOfProcessors / 2), numberOfProcessors2 = Math
+							.max(1, this.numberOfProcessors
+									- numberOfProcessors1);
+
+					// Both halves are stealable, so aim for equal cost
+					long nMiddle = splitPoint(getSeries(), this.n1, this.n2,
+							1, 2);
+
+					try {
+						SplitTask right = new SplitTask(nMiddle, this.n2, this.T,
+								this.Q, this.P, numberOfProcessors2, this.cutoff,
+								this.progressIndicator);
+						right.fork();
+						try {
+							new SplitTask(this.n1, nMiddle, LT, LQ, LP,
+									numberOfProcessors1, this.cutoff,
+									this.progressIndicator).compute();
+						} catch (Throwable t) {
+							// The holders must not be popped while the right
+							// task is still calculating
+							right.quietlyJoin();
+							throw t;
+						}
+						right.join();
+
+						// Larger ranges are combined near the top of the tree,
+						// where fewer tasks compete for the threads
+
+						new ThreadLimitedOperation<Object>(new Operation<Object>() {
+							public Object execute() {
+								combine(LT, LQ, LP, SplitTask.this.T,
+										SplitTask.this.Q, SplitTask.this.P);
+								return null;
+							}
+						}, getAvailableProcessors(this.numberOfProcessors))
+								.execute();
+					} finally {
+						ApfloatHolderStack.pop();
+					}
+
+					saveCheckpoint(this.n1, this.n2, this.T, this.Q, this.P);
+
+					if (this.progressIndicator != null) {
+						this.progressIndicator.progress(this.n1, this.n2);
+					}
+				}
+			}
+
+			private final long n1;
+			private final long n2;
+			private final ApfloatHolder T;
+			private final ApfloatHolder Q;
+			private final ApfloatHolder P;
+			private final int numberOfProcessors;
+			private final long cutoff;
+			private final BinarySplittingProgressIndicator progressIndicator;
+		}
+
+		/**
+		 * Worker thread that is pinned to the core of its slot in the pool.
+		 * Stealing balances the work between big and LITTLE cores, and
+		 * pinning keeps two workers from sharing a core.
+		 */
+
+		private static class PinnedWorkerThread extends ForkJoinWorkerThread {
+			public PinnedWorkerThread(ForkJoinPool pool,
+					PinnedWorkerThreadFactory factory, int slot) {
+				super(pool);
+				this.factory = factory;
+				this.slot = slot;
+			}
+
+			public void update() {
+				if (this.pinnedCore != null)
+					this.pinnedCore.update();
+			}
+
+			protected void onStart() {
+				super.onStart();
+				this.pinnedCore = new PinnedCore(this.slot);
+				this.pinnedCore.update();
+			}
+
+			protected void onTermination(Throwable exception) {
+				this.factory.releaseSlot(this.slot);
+				super.onTermination(exception);
+			}
+
+			private final PinnedWorkerThreadFactory factory;
+			private final int slot;
+			private PinnedCore pinnedCore;
+		}
+
+		/**
+		 * Creates the workers of one pool, each with its own slot. The pool
+		 * indexes of the workers are not dense, so they can't be used as the
+		 * slots.
+		 */
+
+		private static class PinnedWorkerThreadFactory implements
+				ForkJoinWorkerThreadFactory {
+			public PinnedWorkerThreadFactory(int parallelism, int firstCore) {
+				this.parallelism = parallelism;
+				this.firstCore = firstCore;
+			}
+
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				// A worker replacing a retired one takes over its slot
+				Integer slot = this.releasedSlots.poll();
+				return new PinnedWorkerThread(pool, this,
+						(slot != null ? slot : this.firstCore
+								+ Math.min(this.nextSlot.getAndIncrement(),
+										this.parallelism - 1)));
+			}
+
+			void releaseSlot(int slot) {
+				this.releasedSlots.add(slot);
+			}
+
+			private final int parallelism;
+			private final int firstCore;
+			private final AtomicInteger nextSlot = new AtomicInteger();
+			private final Queue<Integer> releasedSlots = new ConcurrentLinkedQueue<Integer>();
+		}
+
+		// Ranges smaller than this are never split into separate tasks
+		private static final long MIN_TASK_TERMS = 64;
+
+		// Number of leaf tasks created per thread, to leave work to steal
+		private static final int TASKS_PER_PROCESSOR = 16;
+	}
+
 	/**
 	 * Class for calculating pi using the parallel Chudnovskys' binary splitting
 	 * algorithm.
@@ -251,6 +1191,15 @@ public class PiParallel extends Pi {
 		public Apfloat execute() {
 			return super.execute();
 		}
+
+		/**
+		 * Start an operation that the final value depends on in the
+		 * background, with one thread.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return background(operation, 1);
+		}
 	}
 
 	/**
@@ -305,6 +1254,185 @@ public class PiParallel extends Pi {
 
 			return super.execute();
 		}
+
+		/**
+		 * Start an operation that the final value depends on in the
+		 * background, with one thread.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return background(operation, 1);
+		}
+	}
+
+	// Starts an operation in a background thread with the specified number of
+	// threads, if there are threads to spare
+	private static <T> Operation<T> background(Operation<T> operation,
+			int numberOfProcessors) {
+		ApfloatContext ctx = ApfloatContext.getContext();
+		if (ctx.getNumberOfProcessors() == 1) {
+			return operation;
+		}
+
+		// The calling thread continues with the other threads, so the
+		// operation must not take the executor thread of a split operation
+		final Operation<T> limitedOperation = new ThreadLimitedOperation<T>(
+				operation, numberOfProcessors);
+		reserveExecutorThreads(1);
+		final BackgroundOperation<T> backgroundOperation = new BackgroundOperation<T>(
+				new Operation<T>() {
+					public T execute() {
+						try {
+							return limitedOperation.execute();
+						} finally {
+							reserveExecutorThreads(-1);
+						}
+					}
+				});
+		return new Operation<T>() {
+			public T execute() {
+				return backgroundOperation.getResult();
+			}
+		};
+	}
+
+	/**
+	 * Class for calculating pi using the Gauss-Legendre iteration, updating
+	 * t in parallel with the square root of the next iteration. Some extra
+	 * digits are calculated, since the iteration loses a few digits to
+	 * round-off.
+	 */
+
+	public static class ParallelGaussLegendrePiCalculator extends
+			GaussLegendrePiCalculator {
+		/**
+		 * Construct a pi calculator with the specified precision and radix.
+		 * 
+		 * @param precision
+		 *            The target precision.
+		 * @param radix
+		 *            The radix to be used.
+		 */
+
+		public ParallelGaussLegendrePiCalculator(long precision, int radix) {
+			super(precision + ITERATION_GUARD_DIGITS, radix);
+			this.precision = precision;
+		}
+
+		public Apfloat execute() {
+			return super.execute().precision(this.precision);
+		}
+
+		/**
+		 * Start an operation that the next iterations depend on in the
+		 * background, with half of the threads.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return background(operation, Math.max(ApfloatContext.getContext()
+					.getNumberOfProcessors() / 2, 1));
+		}
+
+		private long precision;
+	}
+
+	/**
+	 * Class for calculating pi using the Borweins' quartic iteration,
+	 * updating a in parallel with the roots of the next iteration. Some
+	 * extra digits are calculated, since the iteration loses a few digits
+	 * to round-off.
+	 */
+
+	public static class ParallelBorweinPiCalculator extends
+			BorweinPiCalculator {
+		/**
+		 * Construct a pi calculator with the specified precision and radix.
+		 * 
+		 * @param precision
+		 *            The target precision.
+		 * @param radix
+		 *            The radix to be used.
+		 */
+
+		public ParallelBorweinPiCalculator(long precision, int radix) {
+			super(precision + ITERATION_GUARD_DIGITS, radix);
+			this.precision = precision;
+		}
+
+		public Apfloat execute() {
+			return super.execute().precision(this.precision);
+		}
+
+		/**
+		 * Start an operation that the next iterations depend on in the
+		 * background, with half of the threads.
+		 */
+
+		protected Operation<Apfloat> fork(Operation<Apfloat> operation) {
+			return background(operation, Math.max(ApfloatContext.getContext()
+					.getNumberOfProcessors() / 2, 1));
+		}
+
+		private long precision;
+	}
+
+	/**
+	 * Calculates pi with two operations at the same time and compares the
+	 * results.
+	 */
+
+	public static class CrossCheckPiCalculator implements Operation<Apfloat> {
+		/**
+		 * Construct a cross-checking calculator.
+		 * 
+		 * @param operation1
+		 *            The operation whose result is returned, executed in the
+		 *            calling thread.
+		 * @param operation2
+		 *            The operation to compare with, executed in the
+		 *            background.
+		 */
+
+		public CrossCheckPiCalculator(Operation<Apfloat> operation1,
+				Operation<Apfloat> operation2) {
+			this.operation1 = operation1;
+			this.operation2 = operation2;
+		}
+
+		/**
+		 * Calculate pi with both operations.
+		 * 
+		 * @return The result of the first operation.
+		 * 
+		 * @exception VerificationException
+		 *                If the results differ.
+		 */
+
+		public Apfloat execute() throws VerificationException {
+			BackgroundOperation<Apfloat> operation = new BackgroundOperation<Apfloat>(
+					this.operation2);
+			Apfloat pi1;
+			try {
+				pi1 = this.operation1.execute();
+			} catch (Throwable t) {
+				operation.awaitTermination();
+				throw t;
+			}
+			Apfloat pi2 = operation.getResult();
+
+			// The last digit may be rounded differently
+			long precision = Math.min(pi1.precision(), pi2.precision());
+			long equalDigits = pi1.equalDigits(pi2);
+			if (equalDigits < precision - CROSS_CHECK_TOLERANCE) {
+				throw new VerificationException("Results differ after "
+						+ equalDigits + " digits", equalDigits - pi1.scale());
+			}
+
+			return pi1;
+		}
+
+		private Operation<Apfloat> operation1;
+		private Operation<Apfloat> operation2;
 	}
 
 	/**
@@ -326,8 +1454,30 @@ public class PiParallel extends Pi {
 
 		public ThreadLimitedOperation(Operation<T> operation,
 				int numberOfProcessors) {
+			this(operation, numberOfProcessors, -1);
+		}
+
+		/**
+		 * Wrap an existing operation to a thread limited context, whose
+		 * threads are placed on consecutive cores of the
+		 * {@link CoreTopology}.
+		 * 
+		 * @param operation
+		 *            The operation whose execution will have a limited number
+		 *            of threads available.
+		 * @param numberOfProcessors
+		 *            The maximum number of threads that can be used in the
+		 *            execution.
+		 * @param firstCore
+		 *            Index of the core of the first thread, or -1 to keep the
+		 *            cores of the current context.
+		 */
+
+		public ThreadLimitedOperation(Operation<T> operation,
+				int numberOfProcessors, int firstCore) {
 			this.operation = operation;
 			this.numberOfProcessors = numberOfProcessors;
+			this.firstCore = firstCore;
 		}
 
 		/**
@@ -343,22 +1493,67 @@ public class PiParallel extends Pi {
 			ApfloatContext ctx = (ApfloatContext) ApfloatContext.getContext()
 					.clone();
 			ctx.setNumberOfProcessors(this.numberOfProcessors);
+			if (this.firstCore >= 0)
+				ctx.setAttribute(FIRST_CORE, this.firstCore);
 			ApfloatContext.setThreadContext(ctx);
 
-			T result = this.operation.execute();
-
-			if (threadCtx != null) {
-				ApfloatContext.setThreadContext(threadCtx);
-			} else {
-				ApfloatContext.removeThreadContext();
+			try {
+				return this.operation.execute();
+			} finally {
+				// Pooled threads are reused, so always restore the context
+				if (threadCtx != null) {
+					ApfloatContext.setThreadContext(threadCtx);
+				} else {
+					ApfloatContext.removeThreadContext();
+				}
 			}
-
-			return result;
 		}
 
 		private Operation<T> operation;
 		private int numberOfProcessors;
+		private int firstCore;
 	}
 
 	private static final boolean DEBUG = false;
+
+	// Context attribute for the index of the core of the first thread
+	private static final String FIRST_CORE = PiParallel.class.getName()
+			+ ".firstCore";
+
+	// Milliseconds between the checks for cores enabled or disabled
+	private static final long HOTPLUG_POLL_INTERVAL = 250;
+
+	// The core of the thread calculating a range of terms, if pinned
+	private static final ThreadLocal<PinnedCore> PINNED_CORE = new ThreadLocal<PinnedCore>();
+
+	// Extra digits calculated by the iterative methods
+	private static final long ITERATION_GUARD_DIGITS = 20;
+
+	// Digits at the end of the cross-checked results that may differ
+	private static final long CROSS_CHECK_TOLERANCE = 2;
+
+	// Shortest range checkpointed, growing with the precision so that there
+	// are at most a few hundred checkpoints
+	private static final long MIN_CHECKPOINT_TERMS = 1000;
+	private static final long CHECKPOINT_PRECISION_DIVISOR = 1000;
+
+	// Minimum time between checkpoints in milliseconds
+	private static final long CHECKPOINT_INTERVAL = 30000;
+
+	private static volatile boolean workStealing = true;
+	private static volatile boolean costBalancedSplit = true;
+	private static volatile boolean nttKernel;
+	private static volatile CoreTopology coreTopology = CoreTopology.read();
+	private static volatile int requiredExecutorThreads;
+	private static volatile ConvolutionTuning convolutionTuning;
+	private static volatile File scratchDirectory;
+	private static volatile File checkpointDirectory;
+	private static volatile DigitCache digitCache;
+	private static volatile boolean digitCacheBypass;
+	private static BuilderFactory unmappedBuilderFactory;
+
+	// Permits for the leaf tasks of the work-stealing calculations, one for
+	// each enabled core
+	private static final CoreSemaphore ENABLED_CORES = new CoreSemaphore(
+			coreTopology.getNumberOfCores());
 }
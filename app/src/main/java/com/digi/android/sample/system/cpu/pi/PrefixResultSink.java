@@ -0,0 +1,66 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Result sink that keeps only the first characters of the number, for
+ * displaying it. The number is truncated before its digits are written, so
+ * the rest of the digits are never converted to characters.
+ */
+
+public class PrefixResultSink implements ResultSink {
+	/**
+	 * Construct a sink that keeps the specified number of characters.
+	 * 
+	 * @param maxLength
+	 *            Maximum number of characters to keep.
+	 */
+
+	public PrefixResultSink(int maxLength) {
+		this.buffer = new char[maxLength];
+	}
+
+	public void write(Apfloat result) throws IOException,
+			ApfloatRuntimeException {
+		this.length = 0;
+
+		// The precision is in digits, so at most one extra character (the
+		// decimal point) is written and discarded
+		if (result.precision() > this.buffer.length) {
+			result = result.precision(this.buffer.length);
+		}
+
+		result.writeTo(new Writer() {
+			public void write(char[] chars, int offset, int length) {
+				int count = Math.min(length, PrefixResultSink.this.buffer.length
+						- PrefixResultSink.this.length);
+				System.arraycopy(chars, offset, PrefixResultSink.this.buffer,
+						PrefixResultSink.this.length, count);
+				PrefixResultSink.this.length += count;
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		}, false);
+	}
+
+	/**
+	 * Get the characters written.
+	 * 
+	 * @return The first characters of the last number written.
+	 */
+
+	public String getPrefix() {
+		return new String(this.buffer, 0, this.length);
+	}
+
+	private char[] buffer;
+	private int length;
+}
@@ -0,0 +1,308 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Calculates T, Q and P of a short range of binary splitting terms with
+ * primitive arithmetic. The terms are accumulated in reusable arrays of
+ * 32-bit words, multiplying by 63-bit factors with 128-bit intermediate
+ * products, and an {@link Apfloat} is only created for the final values
+ * of the range.
+ * <p>
+ *
+ * Each thread uses its own kernel, so no synchronization is needed.
+ */
+
+class PrimitiveLeafKernel {
+	private PrimitiveLeafKernel() {
+		this.T = new Accumulator();
+		this.Q = new Accumulator();
+		this.P = new Accumulator();
+		this.term = new Accumulator();
+		this.scratch = new Accumulator();
+		this.factors = new long[MAX_FACTORS];
+	}
+
+	/**
+	 * Calculate terms <code>n1</code> to <code>n2 - 1</code> of the series.
+	 *
+	 * @param series
+	 *            The binary splitting series.
+	 * @param n1
+	 *            Start term.
+	 * @param n2
+	 *            End term.
+	 * @param T
+	 *            Receives T of the range.
+	 * @param Q
+	 *            Receives Q of the range.
+	 * @param P
+	 *            Receives P of the range, may be <code>null</code>.
+	 */
+
+	static void r(Pi.PrimitiveBinarySplittingSeries series, long n1, long n2,
+			ApfloatHolder T, ApfloatHolder Q, ApfloatHolder P)
+			throws ApfloatRuntimeException {
+		kernels.get().calculate(series, n1, n2, T, Q, P);
+	}
+
+	private void calculate(Pi.PrimitiveBinarySplittingSeries series, long n1,
+			long n2, ApfloatHolder T, ApfloatHolder Q, ApfloatHolder P)
+			throws ApfloatRuntimeException {
+		this.T.setValue(0);
+		this.Q.setValue(1);
+		this.P.setValue(1);
+
+		for (long n = n1; n < n2; n++) {
+			// T(n1, n + 1) = q(n) T(n1, n) + P(n1, n + 1) a(n)
+
+			int count = series.qFactors(n, this.factors);
+			for (int i = 0; i < count; i++) {
+				this.T.multiply(this.factors[i]);
+				this.Q.multiply(this.factors[i]);
+			}
+
+			count = series.pFactors(n, this.factors);
+			for (int i = 0; i < count; i++) {
+				this.P.multiply(this.factors[i]);
+			}
+
+			long a = series.aValue(n);
+			this.term.setProduct(this.P, Math.abs(a), a < 0);
+			this.T.add(this.term);
+		}
+
+		long precision = series.getPrecision();
+		int radix = series.getRadix();
+
+		T.setApfloat(this.T.toApfloat(precision, radix, this.scratch));
+		Q.setApfloat(this.Q.toApfloat(precision, radix, this.scratch));
+		if (P != null)
+			P.setApfloat(this.P.toApfloat(precision, radix, this.scratch));
+	}
+
+	/**
+	 * Signed integer stored as little-endian 32-bit words.
+	 */
+
+	private static class Accumulator {
+		void setValue(int value) {
+			this.negative = (value < 0);
+			this.length = 0;
+			if (value != 0) {
+				ensureCapacity(1);
+				this.words[0] = Math.abs(value);
+				this.length = 1;
+			}
+		}
+
+		// this = this * factor, factor must be positive
+		void multiply(long factor) {
+			long carry = 0;
+			for (int i = 0; i < this.length; i++) {
+				long word = this.words[i] & 0xFFFFFFFFL, low = word * factor, high = Math
+						.multiplyHigh(word, factor), sum = low + carry;
+				if (Long.compareUnsigned(sum, low) < 0) {
+					high++;
+				}
+				this.words[i] = (int) sum;
+				carry = (sum >>> 32) | (high << 32);
+			}
+			appendCarry(carry);
+		}
+
+		// this = source * factor, factor must be non-negative
+		void setProduct(Accumulator source, long factor, boolean negative) {
+			ensureCapacity(source.length);
+			System.arraycopy(source.words, 0, this.words, 0, source.length);
+			this.length = source.length;
+			this.negative = negative ^ source.negative;
+			if (factor == 0) {
+				this.length = 0;
+			} else {
+				multiply(factor);
+			}
+		}
+
+		// this = this + value
+		void add(Accumulator value) {
+			if (value.length == 0) {
+				return;
+			}
+			if (this.length == 0 || this.negative == value.negative) {
+				this.negative = value.negative;
+				addMagnitude(value);
+			} else if (compareMagnitude(value) >= 0) {
+				subtractMagnitude(value);
+			} else {
+				reverseSubtractMagnitude(value);
+				this.negative = value.negative;
+			}
+		}
+
+		Apfloat toApfloat(long precision, int radix, Accumulator scratch)
+				throws ApfloatRuntimeException {
+			if (this.length == 0) {
+				return Apfloat.ZERO;
+			}
+
+			// Split the magnitude into chunks of the largest power of the
+			// radix that fits in 31 bits, least significant chunk first
+
+			int chunkDigits = 0;
+			long chunkBase = 1;
+			while (chunkBase * radix < Integer.MAX_VALUE) {
+				chunkBase *= radix;
+				chunkDigits++;
+			}
+
+			scratch.ensureCapacity(this.length);
+			System.arraycopy(this.words, 0, scratch.words, 0, this.length);
+			scratch.length = this.length;
+
+			int maxChunks = (int) (this.length * 32 / (Math.log((double) chunkBase) / Math
+					.log(2.0))) + 2;
+			char[] digits = new char[maxChunks * chunkDigits + 1];
+			int position = digits.length;
+			while (scratch.length > 0) {
+				long remainder = scratch.divide(chunkBase);
+				for (int i = 0; i < chunkDigits; i++) {
+					digits[--position] = Character.forDigit(
+							(int) (remainder % radix), radix);
+					remainder /= radix;
+				}
+			}
+			while (digits[position] == '0') {
+				position++;
+			}
+			if (this.negative) {
+				digits[--position] = '-';
+			}
+
+			return new Apfloat(new String(digits, position, digits.length
+					- position), precision, radix);
+		}
+
+		// this = this / divisor, returns the remainder
+		private long divide(long divisor) {
+			long remainder = 0;
+			for (int i = this.length - 1; i >= 0; i--) {
+				long dividend = (remainder << 32) | (this.words[i] & 0xFFFFFFFFL);
+				this.words[i] = (int) (dividend / divisor);
+				remainder = dividend % divisor;
+			}
+			while (this.length > 0 && this.words[this.length - 1] == 0) {
+				this.length--;
+			}
+			return remainder;
+		}
+
+		private void addMagnitude(Accumulator value) {
+			ensureCapacity(Math.max(this.length, value.length));
+			long carry = 0;
+			int i = 0;
+			for (; i < value.length; i++) {
+				long sum = (i < this.length ? this.words[i] & 0xFFFFFFFFL : 0)
+						+ (value.words[i] & 0xFFFFFFFFL) + carry;
+				this.words[i] = (int) sum;
+				carry = sum >>> 32;
+			}
+			for (; i < this.length && carry != 0; i++) {
+				long sum = (this.words[i] & 0xFFFFFFFFL) + carry;
+				this.words[i] = (int) sum;
+				carry = sum >>> 32;
+			}
+			this.length = Math.max(this.length, value.length);
+			appendCarry(carry);
+		}
+
+		// this = this - value, |this| >= |value|
+		private void subtractMagnitude(Accumulator value) {
+			long borrow = 0;
+			for (int i = 0; i < this.length; i++) {
+				long difference = (this.words[i] & 0xFFFFFFFFL)
+						- (i < value.length ? value.words[i] & 0xFFFFFFFFL : 0)
+						- borrow;
+				this.words[i] = (int) difference;
+				borrow = (difference < 0 ? 1 : 0);
+			}
+			normalize();
+		}
+
+		// this = value - this, |value| > |this|
+		private void reverseSubtractMagnitude(Accumulator value) {
+			ensureCapacity(value.length);
+			long borrow = 0;
+			for (int i = 0; i < value.length; i++) {
+				long difference = (value.words[i] & 0xFFFFFFFFL)
+						- (i < this.length ? this.words[i] & 0xFFFFFFFFL : 0)
+						- borrow;
+				this.words[i] = (int) difference;
+				borrow = (difference < 0 ? 1 : 0);
+			}
+			this.length = value.length;
+			normalize();
+		}
+
+		private int compareMagnitude(Accumulator value) {
+			if (this.length != value.length) {
+				return (this.length < value.length ? -1 : 1);
+			}
+			for (int i = this.length - 1; i >= 0; i--) {
+				if (this.words[i] != value.words[i]) {
+					return Integer.compareUnsigned(this.words[i],
+							value.words[i]);
+				}
+			}
+			return 0;
+		}
+
+		private void appendCarry(long carry) {
+			while (carry != 0) {
+				ensureCapacity(this.length + 1);
+				this.words[this.length++] = (int) carry;
+				carry >>>= 32;
+			}
+		}
+
+		private void normalize() {
+			while (this.length > 0 && this.words[this.length - 1] == 0) {
+				this.length--;
+			}
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (this.words.length < capacity) {
+				int[] words = new int[Math.max(capacity, 2 * this.words.length)];
+				System.arraycopy(this.words, 0, words, 0, this.length);
+				this.words = words;
+			}
+		}
+
+		private int[] words = new int[INITIAL_CAPACITY];
+		private int length;
+		private boolean negative;
+	}
+
+	/**
+	 * Maximum number of factors a series can return for one term.
+	 */
+
+	static final int MAX_FACTORS = 4;
+
+	private static final int INITIAL_CAPACITY = 128;
+
+	private static final ThreadLocal<PrimitiveLeafKernel> kernels = new ThreadLocal<PrimitiveLeafKernel>() {
+		protected PrimitiveLeafKernel initialValue() {
+			return new PrimitiveLeafKernel();
+		}
+	};
+
+	private final Accumulator T;
+	private final Accumulator Q;
+	private final Accumulator P;
+	private final Accumulator term;
+	private final Accumulator scratch;
+	private final long[] factors;
+}
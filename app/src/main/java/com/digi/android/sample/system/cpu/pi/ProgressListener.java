@@ -0,0 +1,26 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Interface for receiving the progress of a pi calculation.
+ * <p>
+ *
+ * The progress is reported periodically from a separate low priority
+ * thread, never from the calculating threads.
+ */
+
+public interface ProgressListener {
+	/**
+	 * Called when the progress has advanced.
+	 * 
+	 * @param percentComplete
+	 *            Percentage of the binary splitting completed, 0 to 100.
+	 * @param termsPerSecond
+	 *            Average number of series terms calculated per second.
+	 * @param remainingMillis
+	 *            Estimated remaining time of the binary splitting in
+	 *            milliseconds, or -1 if not known yet.
+	 */
+
+	public void progress(int percentComplete, double termsPerSecond,
+			long remainingMillis);
+}
@@ -0,0 +1,20 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Interface for receiving the result of a pi calculation for display.
+ * <p>
+ *
+ * Only the beginning of the number is passed, to receive all the digits use
+ * a {@link ResultSink}.
+ */
+
+public interface ResultListener {
+	/**
+	 * Called when the calculation has completed.
+	 * 
+	 * @param prefix
+	 *            The first digits of the result.
+	 */
+
+	public void result(String prefix);
+}
@@ -0,0 +1,27 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.IOException;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatRuntimeException;
+
+/**
+ * Interface for consuming the digits of a calculated number. Implementations
+ * should stream the digits with {@link Apfloat#writeTo(java.io.Writer)}
+ * instead of converting the whole number to a <code>String</code>.
+ */
+
+public interface ResultSink {
+	/**
+	 * Write the calculated number.
+	 * 
+	 * @param result
+	 *            The calculated number.
+	 * 
+	 * @exception IOException
+	 *                In case writing the digits fails.
+	 */
+
+	public void write(Apfloat result) throws IOException,
+			ApfloatRuntimeException;
+}
@@ -0,0 +1,60 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Pins threads to cores with <code>sched_setaffinity</code>, through the
+ * small <code>piaffinity</code> JNI library.
+ * <p>
+ *
+ * If the library can't be loaded, for example when running outside of the
+ * device, pinning does nothing and the scheduler places the threads
+ * freely. The work is still split by the capacities of the cores, so the
+ * calculation gives the same results either way.
+ */
+
+public class ThreadAffinity {
+	private ThreadAffinity() {
+	}
+
+	/**
+	 * Test if threads can be pinned.
+	 *
+	 * @return <code>true</code> if the JNI library was loaded.
+	 */
+
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Restrict the current thread to run on some CPUs only.
+	 *
+	 * @param cpus
+	 *            The CPU numbers, as used by the kernel.
+	 *
+	 * @return <code>true</code> if the thread was pinned,
+	 *         <code>false</code> if pinning is not available or failed,
+	 *         for example because one of the CPUs was just disabled.
+	 */
+
+	public static boolean setAffinity(int... cpus) {
+		if (!AVAILABLE || cpus.length == 0) {
+			return false;
+		}
+		return setAffinity0(cpus);
+	}
+
+	private static native boolean setAffinity0(int[] cpus);
+
+	private static boolean loadLibrary() {
+		try {
+			System.loadLibrary("piaffinity");
+			return true;
+		} catch (UnsatisfiedLinkError ule) {
+			return false;
+		} catch (SecurityException se) {
+			return false;
+		}
+	}
+
+	private static final boolean AVAILABLE = loadLibrary();
+}
@@ -0,0 +1,54 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import org.apfloat.spi.BuilderFactory;
+import org.apfloat.spi.ConvolutionBuilder;
+
+/**
+ * Builder factory that picks the multiplication algorithms with a
+ * {@link ConvolutionTuning} measured on the device. Everything else is
+ * delegated to another builder factory.
+ * <p>
+ *
+ * The convolution builder of the delegate is replaced by the apfloat
+ * builder for the element type, so any other convolution builder of the
+ * delegate is not used.
+ */
+
+public class TunedBuilderFactory extends DelegatingBuilderFactory {
+	/**
+	 * Create a builder factory.
+	 *
+	 * @param builderFactory
+	 *            The builder factory to delegate to.
+	 * @param tuning
+	 *            The tuning.
+	 *
+	 * @exception IllegalArgumentException
+	 *                If the element type of the factory is not supported.
+	 */
+
+	public TunedBuilderFactory(BuilderFactory builderFactory,
+			ConvolutionTuning tuning) throws IllegalArgumentException {
+		super(builderFactory);
+		this.tuning = tuning;
+		this.convolutionBuilder = tuning
+				.createConvolutionBuilder(builderFactory);
+	}
+
+	/**
+	 * Get the tuning.
+	 *
+	 * @return The tuning.
+	 */
+
+	public ConvolutionTuning getTuning() {
+		return this.tuning;
+	}
+
+	public ConvolutionBuilder getConvolutionBuilder() {
+		return this.convolutionBuilder;
+	}
+
+	private final ConvolutionTuning tuning;
+	private final ConvolutionBuilder convolutionBuilder;
+}
@@ -0,0 +1,39 @@
+package com.digi.android.sample.system.cpu.pi;
+
+/**
+ * Thrown when the digits of a calculated number don't match an independent
+ * check. This means the calculation was corrupted, for example by an
+ * unstable CPU or memory.
+ */
+
+public class VerificationException extends RuntimeException {
+	/**
+	 * Construct a verification exception.
+	 *
+	 * @param message
+	 *            The detail message.
+	 * @param position
+	 *            Number of digits after the radix point before the digits
+	 *            that didn't match, in the radix of the check.
+	 */
+
+	public VerificationException(String message, long position) {
+		super(message);
+		this.position = position;
+	}
+
+	/**
+	 * Get the position where the digits didn't match.
+	 *
+	 * @return Number of digits after the radix point before the digits
+	 *         that didn't match, in the radix of the check.
+	 */
+
+	public long getPosition() {
+		return this.position;
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private final long position;
+}
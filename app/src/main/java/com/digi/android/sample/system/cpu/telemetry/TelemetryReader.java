@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.telemetry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scans the records written by {@link TelemetryRecorder}.
+ *
+ * <p>The segments are mapped read-only and the fields of the records are
+ * read in place through a {@link Cursor}, so scanning a range doesn't
+ * create an object per record. The records of each segment are sorted by
+ * timestamp, so the start of a range is found with a binary search.</p>
+ *
+ * <p>The reader can be used while recording, in the same process: the
+ * timestamp of a record is written last, behind a store fence, and records
+ * not written yet are skipped. Records whose checksum doesn't match, torn
+ * by a power cut, are skipped too.</p>
+ */
+public class TelemetryReader {
+
+	// Variables.
+	private final File directory;
+
+	/**
+	 * Class constructor. Instantiates a new {@code TelemetryReader}.
+	 *
+	 * @param directory Directory of the segment files.
+	 */
+	public TelemetryReader(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns a cursor over the records of a range of time, in the order
+	 * they were recorded.
+	 *
+	 * @param from Start of the range, in milliseconds.
+	 * @param to End of the range, exclusive.
+	 *
+	 * @return The cursor, positioned before the first record.
+	 */
+	public Cursor scan(long from, long to) {
+		return new Cursor(TelemetryRecorder.listSegments(directory), from, to);
+	}
+
+	/**
+	 * Position in the records of a range of time. The fields are read from
+	 * the mapped segment of the current record.
+	 *
+	 * <p>This class is not thread safe.</p>
+	 */
+	public static class Cursor {
+
+		// Variables.
+		private final File[] segments;
+		private final long from;
+		private final long to;
+
+		private int segmentIndex = -1;
+		private MappedByteBuffer segment;
+		private int numberOfCores;
+		private int recordSize;
+		private int records;
+		private int record;
+		private int position;
+
+		/**
+		 * Class constructor. Instantiates a new {@code Cursor}.
+		 *
+		 * @param segments Segment files, oldest first.
+		 * @param from Start of the range, in milliseconds.
+		 * @param to End of the range, exclusive.
+		 */
+		Cursor(File[] segments, long from, long to) {
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Moves to the next record of the range.
+		 *
+		 * @return {@code true} if there is a next record, {@code false} if
+		 *         the end of the range was reached.
+		 *
+		 * @throws IOException If a segment cannot be read.
+		 */
+		public boolean next() throws IOException {
+			while (true) {
+				if (segment != null && record < records) {
+					position = TelemetryRecorder.HEADER_SIZE + record * recordSize;
+					long timestamp = segment.getLong(position);
+					record++;
+					if (timestamp != 0 && timestamp < to) {
+						// The fields must not be read before the timestamp.
+						VarHandle.acquireFence();
+						if (isValid(timestamp))
+							return true;
+						continue;
+					}
+					// Later segments may start earlier if the clock went back.
+					segment = null;
+				}
+				if (!openNextSegment())
+					return false;
+			}
+		}
+
+		/**
+		 * Returns the number of cores of the current record.
+		 *
+		 * @return The number of cores.
+		 */
+		public int getNumberOfCores() {
+			return numberOfCores;
+		}
+
+		/**
+		 * Returns the timestamp of the current record.
+		 *
+		 * @return The timestamp, in milliseconds.
+		 */
+		public long getTimestamp() {
+			return segment.getLong(position);
+		}
+
+		/**
+		 * Returns a usage of the current record.
+		 *
+		 * @param index 0 for the overall usage, {@code i} for the usage of
+		 *              core {@code i - 1}.
+		 *
+		 * @return The usage, in percent.
+		 */
+		public float getUsage(int index) {
+			return segment.getFloat(position + Long.BYTES + index * Float.BYTES);
+		}
+
+		/**
+		 * Returns the frequency of a core of the current record.
+		 *
+		 * @param core Index of the core.
+		 *
+		 * @return The frequency, in kHz.
+		 */
+		public int getFrequency(int core) {
+			return segment.getInt(getFrequenciesOffset() + core * Integer.BYTES);
+		}
+
+		/**
+		 * Returns the temperature of the current record.
+		 *
+		 * @return The temperature, in degrees Celsius.
+		 */
+		public float getTemperature() {
+			return segment.getFloat(getFrequenciesOffset() + numberOfCores * Integer.BYTES);
+		}
+
+		/**
+		 * Returns the free memory of the current record.
+		 *
+		 * @return The free memory, in kB.
+		 */
+		public long getFreeMemory() {
+			return segment.getLong(getFrequenciesOffset() + numberOfCores * Integer.BYTES + Float.BYTES);
+		}
+
+		/**
+		 * Checks the checksum of the current record.
+		 *
+		 * @param timestamp Timestamp of the current record.
+		 *
+		 * @return {@code true} if the checksum matches the fields.
+		 */
+		private boolean isValid(long timestamp) {
+			return segment.getInt(position + recordSize - Integer.BYTES)
+					== TelemetryRecorder.checksum(segment, position, recordSize, timestamp);
+		}
+
+		/**
+		 * Returns the offset of the frequencies of the current record.
+		 *
+		 * @return The offset in the segment.
+		 */
+		private int getFrequenciesOffset() {
+			return position + Long.BYTES + (numberOfCores + 1) * Float.BYTES;
+		}
+
+		/**
+		 * Maps the next segment with records in the range, and moves to its
+		 * first record in the range. Segments of another format are skipped.
+		 *
+		 * @return {@code true} if a segment was opened, {@code false} if
+		 *         there are no more segments.
+		 *
+		 * @throws IOException If a segment cannot be mapped.
+		 */
+		private boolean openNextSegment() throws IOException {
+			while (++segmentIndex < segments.length) {
+				MappedByteBuffer buffer = map(segments[segmentIndex]);
+				if (buffer == null || buffer.getInt(TelemetryRecorder.MAGIC_OFFSET) != TelemetryRecorder.MAGIC
+						|| buffer.getInt(TelemetryRecorder.VERSION_OFFSET) != TelemetryRecorder.VERSION)
+					continue;
+				numberOfCores = buffer.getInt(TelemetryRecorder.CORES_OFFSET);
+				recordSize = buffer.getInt(TelemetryRecorder.RECORD_SIZE_OFFSET);
+				if (recordSize != TelemetryRecorder.getRecordSize(numberOfCores))
+					continue;
+				records = TelemetryRecorder.countRecords(buffer, recordSize);
+				record = findRecord(buffer, records);
+				if (record < records) {
+					segment = buffer;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Finds the first record of a segment at or after the start of the
+		 * range.
+		 *
+		 * @param buffer The mapped segment.
+		 * @param count Number of records of the segment.
+		 *
+		 * @return Index of the record, or {@code count} if none.
+		 */
+		private int findRecord(MappedByteBuffer buffer, int count) {
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (buffer.getLong(TelemetryRecorder.HEADER_SIZE + middle * recordSize) < from)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		/**
+		 * Maps a segment file for reading.
+		 *
+		 * @param file The segment file.
+		 *
+		 * @return The mapped segment, or {@code null} if the file is too
+		 *         small or was deleted.
+		 *
+		 * @throws IOException If the file cannot be mapped.
+		 */
+		private static MappedByteBuffer map(File file) throws IOException {
+			if (file.length() < TelemetryRecorder.HEADER_SIZE)
+				return null;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				 FileChannel channel = raf.getChannel()) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				buffer.order(TelemetryRecorder.BYTE_ORDER);
+				return buffer;
+			} catch (FileNotFoundException e) {
+				// Deleted by the recorder after the scan started.
+				return null;
+			}
+		}
+	}
+}
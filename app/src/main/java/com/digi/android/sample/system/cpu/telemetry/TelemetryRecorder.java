@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.telemetry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Flight recorder of the CPU status, which appends fixed-width binary
+ * records to memory-mapped segment files.
+ *
+ * <p>Each record holds the timestamp, the overall and per core usage, the
+ * per core frequency, the temperature, the free memory and a checksum of
+ * the other fields. Recording a
+ * sample is a few stores to the mapped segment: nothing is allocated or
+ * formatted, and the kernel writes the dirty pages back in the background.
+ * The segments are only forced to storage when they are full and when the
+ * recorder is closed, to keep the flash wear low.</p>
+ *
+ * <p>The timestamp of a record is written last, behind a store fence, so a
+ * {@link TelemetryReader} running in the same process sees all the fields
+ * of a record once it sees its timestamp. After a power cut the pages of a
+ * segment may have been written back in any order, so the readers skip the
+ * records whose checksum doesn't match.</p>
+ *
+ * <p>The segments are preallocated sparse files in a directory, named by
+ * an increasing sequence number. When a segment is full, or the clock goes
+ * back, the recording rolls over to a new segment and the oldest segments
+ * beyond the maximum are deleted. A recorder opened on the same directory
+ * continues the last segment if its layout matches. The records can be
+ * scanned with {@link TelemetryReader}.</p>
+ *
+ * <p>This class is not thread safe, it is meant to be used by one thread.</p>
+ */
+public class TelemetryRecorder implements Closeable {
+
+	// Constants.
+	static final int MAGIC = 0x544C4D31;
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 32;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int CORES_OFFSET = 8;
+	static final int RECORD_SIZE_OFFSET = 12;
+	static final String SEGMENT_SUFFIX = ".tlm";
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private static final String SEGMENT_FORMAT = "%08d" + SEGMENT_SUFFIX;
+
+	// FNV-1a parameters, applied to 32-bit words instead of bytes.
+	private static final int CHECKSUM_SEED = 0x811C9DC5;
+	private static final int CHECKSUM_PRIME = 0x01000193;
+
+	// Variables.
+	private final File directory;
+	private final int numberOfCores;
+	private final int recordSize;
+	private final int segmentSize;
+	private final int maxSegments;
+
+	private MappedByteBuffer segment;
+	private int sequence;
+	private int position;
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Class constructor. Instantiates a new {@code TelemetryRecorder}.
+	 *
+	 * @param directory Directory of the segment files, created if it
+	 *                  doesn't exist.
+	 * @param numberOfCores Number of cores of each record.
+	 * @param segmentSize Size of each segment file, in bytes.
+	 * @param maxSegments Maximum number of segment files kept.
+	 *
+	 * @throws IOException If the directory cannot be created or the last
+	 *                     segment cannot be opened.
+	 */
+	public TelemetryRecorder(File directory, int numberOfCores, int segmentSize, int maxSegments) throws IOException {
+		this.directory = directory;
+		this.numberOfCores = numberOfCores;
+		this.recordSize = getRecordSize(numberOfCores);
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+
+		if (segmentSize < HEADER_SIZE + recordSize)
+			throw new IllegalArgumentException("Segment too small for a record: " + segmentSize);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create " + directory);
+
+		File[] segments = listSegments(directory);
+		if (segments.length > 0) {
+			File last = segments[segments.length - 1];
+			sequence = getSequence(last);
+			resume(last);
+		}
+	}
+
+	/**
+	 * Appends a record.
+	 *
+	 * @param timestamp Time of the record, in milliseconds. Must not be 0.
+	 * @param usages Overall usage followed by the usage of each core, in
+	 *               percent.
+	 * @param frequencies Frequency of each core, in kHz.
+	 * @param temperature Temperature of the CPU, in degrees Celsius.
+	 * @param freeMemory Free memory, in kB.
+	 *
+	 * @throws IOException If a new segment cannot be created.
+	 */
+	public void record(long timestamp, float[] usages, int[] frequencies, float temperature,
+			long freeMemory) throws IOException {
+		if (segment == null || position + recordSize > segmentSize || timestamp < lastTimestamp)
+			rollOver();
+
+		int offset = position + Long.BYTES;
+		for (int i = 0; i <= numberOfCores; i++, offset += Float.BYTES)
+			segment.putFloat(offset, usages[i]);
+		for (int i = 0; i < numberOfCores; i++, offset += Integer.BYTES)
+			segment.putInt(offset, frequencies[i]);
+		segment.putFloat(offset, temperature);
+		segment.putLong(offset + Float.BYTES, freeMemory);
+		segment.putInt(position + recordSize - Integer.BYTES,
+				checksum(segment, position, recordSize, timestamp));
+		// The timestamp is written last, a record with a timestamp of 0 is
+		// the end of the segment. The fields must be visible before it.
+		VarHandle.storeStoreFence();
+		segment.putLong(position, timestamp);
+
+		position += recordSize;
+		lastTimestamp = timestamp;
+	}
+
+	/**
+	 * Forces the records of the current segment to storage.
+	 */
+	public void force() {
+		if (segment != null)
+			segment.force();
+	}
+
+	@Override
+	public void close() {
+		force();
+		segment = null;
+	}
+
+	/**
+	 * Returns the size of the records.
+	 *
+	 * @param numberOfCores Number of cores of each record.
+	 *
+	 * @return The size of a record, in bytes.
+	 */
+	static int getRecordSize(int numberOfCores) {
+		return Long.BYTES + (numberOfCores + 1) * Float.BYTES + numberOfCores * Integer.BYTES
+				+ Float.BYTES + Long.BYTES + Integer.BYTES;
+	}
+
+	/**
+	 * Computes the checksum of a record, over its timestamp and the fields
+	 * that follow it. All the fields are multiples of 4 bytes.
+	 *
+	 * @param buffer The mapped segment.
+	 * @param position Position of the record in the segment.
+	 * @param recordSize Size of the records.
+	 * @param timestamp Timestamp of the record.
+	 *
+	 * @return The checksum.
+	 */
+	static int checksum(ByteBuffer buffer, int position, int recordSize, long timestamp) {
+		int checksum = CHECKSUM_SEED ^ Long.hashCode(timestamp);
+		int end = position + recordSize - Integer.BYTES;
+		for (int offset = position + Long.BYTES; offset < end; offset += Integer.BYTES)
+			checksum = (checksum ^ buffer.getInt(offset)) * CHECKSUM_PRIME;
+		return checksum;
+	}
+
+	/**
+	 * Lists the segment files of a directory, oldest first.
+	 *
+	 * @param directory The directory.
+	 *
+	 * @return The segment files.
+	 */
+	static File[] listSegments(File directory) {
+		File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if (segments == null)
+			return new File[0];
+		// The names are zero padded, so they sort by sequence number.
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Returns the number of records written to a segment, which are
+	 * followed by records with a timestamp of 0.
+	 *
+	 * @param buffer The mapped segment.
+	 * @param recordSize Size of the records.
+	 *
+	 * @return The number of records.
+	 */
+	static int countRecords(MappedByteBuffer buffer, int recordSize) {
+		int low = 0;
+		int high = (buffer.capacity() - HEADER_SIZE) / recordSize;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (buffer.getLong(HEADER_SIZE + middle * recordSize) != 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Continues recording in an existing segment if its layout matches and
+	 * it has room for more records.
+	 *
+	 * @param file The segment file.
+	 *
+	 * @throws IOException If the segment cannot be mapped.
+	 */
+	private void resume(File file) throws IOException {
+		if (file.length() != segmentSize)
+			return;
+		MappedByteBuffer buffer = map(file);
+		if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION
+				|| buffer.getInt(CORES_OFFSET) != numberOfCores
+				|| buffer.getInt(RECORD_SIZE_OFFSET) != recordSize)
+			return;
+		int records = countRecords(buffer, recordSize);
+		segment = buffer;
+		position = HEADER_SIZE + records * recordSize;
+		if (records > 0)
+			lastTimestamp = buffer.getLong(position - recordSize);
+	}
+
+	/**
+	 * Starts a new segment and deletes the oldest segments beyond the
+	 * maximum.
+	 *
+	 * @throws IOException If the segment cannot be created.
+	 */
+	private void rollOver() throws IOException {
+		force();
+		sequence++;
+		File file = new File(directory, String.format(Locale.ROOT, SEGMENT_FORMAT, sequence));
+		segment = map(file);
+		segment.putInt(MAGIC_OFFSET, MAGIC);
+		segment.putInt(VERSION_OFFSET, VERSION);
+		segment.putInt(CORES_OFFSET, numberOfCores);
+		segment.putInt(RECORD_SIZE_OFFSET, recordSize);
+		position = HEADER_SIZE;
+		lastTimestamp = Long.MIN_VALUE;
+
+		File[] segments = listSegments(directory);
+		for (int i = 0; i < segments.length - maxSegments; i++) {
+			if (!segments[i].delete())
+				segments[i].deleteOnExit();
+		}
+	}
+
+	/**
+	 * Maps a segment file for writing, extending it to the segment size.
+	 *
+	 * @param file The segment file.
+	 *
+	 * @return The mapped segment.
+	 *
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	private MappedByteBuffer map(File file) throws IOException {
+		// The mapping stays valid after the channel is closed.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			 FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			buffer.order(BYTE_ORDER);
+			return buffer;
+		}
+	}
+
+	/**
+	 * Returns the sequence number of a segment file.
+	 *
+	 * @param file The segment file.
+	 *
+	 * @return The sequence number, or 0 if the name is not valid.
+	 */
+	private static int getSequence(File file) {
+		String name = file.getName();
+		try {
+			return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
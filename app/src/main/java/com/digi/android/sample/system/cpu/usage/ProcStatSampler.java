@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Samples the CPU usage from the jiffies counters of {@code /proc/stat}.
+ *
+ * <p>Unlike {@code CPUManager.getUsage()}, sampling doesn't block: each
+ * call reads the counters once and computes the usage since the previous
+ * call. The file is kept open, the counters are parsed from the bytes of a
+ * reusable buffer and kept in primitive arrays, so sampling doesn't
+ * allocate any objects and is cheap enough to run at 10-20 Hz without
+ * perturbing the load being measured.</p>
+ *
+ * <p>The usages are indexed like the list returned by
+ * {@code CPUManager.getUsage()}: index 0 is the overall usage and index
+ * {@code i} is the usage of core {@code i - 1}. Cores that are offline have
+ * a usage of 0.</p>
+ *
+ * <p>This class is not thread safe, it is meant to be used by one sampling
+ * thread.</p>
+ */
+public class ProcStatSampler implements UsageSource, Closeable {
+
+	// Constants.
+	private static final String PROC_STAT = "/proc/stat";
+
+	// The "cpu" lines are at the beginning of the file, this is enough for
+	// them on any device with a reasonable number of cores.
+	private static final int BUFFER_SIZE = 8192;
+
+	// Fields added to the total time: user, nice, system, idle, iowait, irq,
+	// softirq and steal. The guest times are already included in user.
+	private static final int TOTAL_FIELDS = 8;
+	private static final int IDLE_FIELD = 3;
+	private static final int IOWAIT_FIELD = 4;
+
+	// Variables.
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	private final long[] total;
+	private final long[] idle;
+	private final long[] previousTotal;
+	private final long[] previousIdle;
+	private final float[] usages;
+
+	/**
+	 * Class constructor. Instantiates a new {@code ProcStatSampler}.
+	 *
+	 * @param numberOfCores Number of cores of the device, including the
+	 *                      ones that are offline.
+	 *
+	 * @throws IOException If {@code /proc/stat} cannot be opened.
+	 */
+	public ProcStatSampler(int numberOfCores) throws IOException {
+		channel = FileChannel.open(Paths.get(PROC_STAT), StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		total = new long[numberOfCores + 1];
+		idle = new long[numberOfCores + 1];
+		previousTotal = new long[numberOfCores + 1];
+		previousIdle = new long[numberOfCores + 1];
+		usages = new float[numberOfCores + 1];
+		Arrays.fill(previousTotal, -1);
+	}
+
+	/**
+	 * Reads the counters and updates the usages with the time elapsed since
+	 * the previous sample. The usages are 0 after the first sample.
+	 *
+	 * @throws IOException If {@code /proc/stat} cannot be read.
+	 */
+	public void sample() throws IOException {
+		// Positional reads restart the file, so it doesn't need reopening.
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer, buffer.position());
+		} while (read > 0 && buffer.hasRemaining());
+
+		Arrays.fill(total, -1);
+		parse(buffer.array(), buffer.position());
+
+		for (int i = 0; i < usages.length; i++) {
+			long totalDelta = total[i] - previousTotal[i];
+			long idleDelta = idle[i] - previousIdle[i];
+			if (total[i] < 0 || previousTotal[i] < 0 || totalDelta <= 0)
+				// Offline, just came online, or no time elapsed.
+				usages[i] = 0.0f;
+			else
+				usages[i] = Math.max(0.0f, Math.min(100.0f,
+						100.0f * (totalDelta - idleDelta) / totalDelta));
+			previousTotal[i] = total[i];
+			previousIdle[i] = idle[i];
+		}
+	}
+
+	@Override
+	public void sample(float[] usages) throws IOException {
+		sample();
+		System.arraycopy(this.usages, 0, usages, 0, Math.min(usages.length, this.usages.length));
+	}
+
+	/**
+	 * Returns the usage of the last sample.
+	 *
+	 * @param index 0 for the overall usage, {@code i} for the usage of core
+	 *              {@code i - 1}.
+	 *
+	 * @return The usage, in percent.
+	 */
+	public float getUsage(int index) {
+		return usages[index];
+	}
+
+	/**
+	 * Returns the number of usages, that is the number of cores plus one.
+	 *
+	 * @return The number of usages.
+	 */
+	public int getNumberOfUsages() {
+		return usages.length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Parses the "cpu" lines at the beginning of the file into the counters.
+	 * Parsing stops at the first line that is not complete or not a "cpu"
+	 * line.
+	 *
+	 * @param data The bytes of the file.
+	 * @param length Number of bytes read.
+	 */
+	private void parse(byte[] data, int length) {
+		int position = 0;
+		while (position + 3 < length && data[position] == 'c'
+				&& data[position + 1] == 'p' && data[position + 2] == 'u') {
+			position += 3;
+
+			// "cpu " is the overall line, "cpuN " is core N.
+			int index = 0;
+			if (data[position] >= '0' && data[position] <= '9') {
+				int core = 0;
+				while (position < length && data[position] >= '0' && data[position] <= '9')
+					core = core * 10 + (data[position++] - '0');
+				index = core + 1;
+			}
+
+			long totalTime = 0;
+			long idleTime = 0;
+			int field = 0;
+			while (position < length && data[position] != '\n') {
+				byte b = data[position];
+				if (b >= '0' && b <= '9') {
+					long value = 0;
+					while (position < length && data[position] >= '0' && data[position] <= '9')
+						value = value * 10 + (data[position++] - '0');
+					if (field < TOTAL_FIELDS)
+						totalTime += value;
+					if (field == IDLE_FIELD || field == IOWAIT_FIELD)
+						idleTime += value;
+					field++;
+				} else {
+					position++;
+				}
+			}
+			if (position >= length)
+				// Truncated line.
+				return;
+			position++;
+
+			if (index < total.length) {
+				total[index] = totalTime;
+				idle[index] = idleTime;
+			}
+		}
+	}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Long-term history of the CPU usage, kept at several resolutions.
+ *
+ * <p>The samples are rolled up into tiers of decreasing resolution: one
+ * point per second for the last 10 minutes, one point per 10 seconds for
+ * the last 24 hours and one point per minute for the last 30 days. Each
+ * point keeps the minimum, maximum and average of every usage during its
+ * interval. The points of each tier are stored in preallocated primitive
+ * ring buffers, so adding samples doesn't allocate.</p>
+ *
+ * <p>Every point is also appended to a compact binary file, which is read
+ * back when the history is opened, so the history survives restarts. The
+ * writes are buffered and flushed every 10 seconds. When the file has
+ * grown to twice the size of the points kept, it is rewritten with only
+ * the points kept. Points still being accumulated when the history is
+ * closed are lost, except that the tiers are rebuilt from the finer tiers
+ * kept in the file.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public class UsageHistory implements Closeable {
+
+	// Constants.
+	public static final int TIER_SECONDS = 0;
+	public static final int TIER_TEN_SECONDS = 1;
+	public static final int TIER_MINUTES = 2;
+
+	private static final long[] RESOLUTIONS = {1000, 10000, 60000};
+	private static final int[] CAPACITIES = {600, 8640, 43200};
+
+	private static final int MAGIC = 0x55485354;
+	private static final int VERSION = 1;
+	private static final int COMPACT_FACTOR = 2;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	// Variables.
+	private final File file;
+	private final int width;
+	private final Tier[] tiers;
+
+	private DataOutputStream out;
+	private long fileRecords;
+
+	/**
+	 * Class constructor. Instantiates a new {@code UsageHistory}, loading
+	 * the points stored in the file.
+	 *
+	 * @param file The history file, created if it doesn't exist.
+	 * @param width Number of usages of each sample.
+	 *
+	 * @throws IOException If the file cannot be read or written.
+	 */
+	public UsageHistory(File file, int width) throws IOException {
+		this.file = file;
+		this.width = width;
+		this.tiers = new Tier[RESOLUTIONS.length];
+		for (int i = 0; i < tiers.length; i++)
+			tiers[i] = new Tier(RESOLUTIONS[i], CAPACITIES[i], width);
+
+		boolean complete = load();
+		if (!complete || fileRecords > COMPACT_FACTOR * getTotalCapacity())
+			compact();
+		else
+			openForAppend();
+
+		// Roll up the points of the finer tiers whose coarser point was not
+		// stored before the history was closed.
+		for (int i = 0; i < tiers.length - 1; i++) {
+			long end = tiers[i + 1].getEnd();
+			for (int index = 0; index < tiers[i].size; index++) {
+				if (tiers[i].getTime(index) >= end)
+					rollUp(i, tiers[i].getSlot(index), false);
+			}
+		}
+	}
+
+	/**
+	 * Adds a sample.
+	 *
+	 * @param timestamp Time of the sample, in milliseconds.
+	 * @param usages Array with the usages of the sample.
+	 * @param offset Index of the first usage of the sample in the array.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	public synchronized void add(long timestamp, float[] usages, int offset) throws IOException {
+		Tier tier = tiers[0];
+		if (tier.accumulate(timestamp, usages, usages, usages, offset)) {
+			int slot = tier.getSlot(tier.size - 1);
+			append(0, slot);
+			rollUp(0, slot, true);
+		}
+	}
+
+	/**
+	 * Returns the number of tiers.
+	 *
+	 * @return The number of tiers.
+	 */
+	public int getNumberOfTiers() {
+		return tiers.length;
+	}
+
+	/**
+	 * Returns the interval of the points of a tier.
+	 *
+	 * @param tier Index of the tier, {@link #TIER_SECONDS},
+	 *             {@link #TIER_TEN_SECONDS} or {@link #TIER_MINUTES}.
+	 *
+	 * @return The interval, in milliseconds.
+	 */
+	public long getResolution(int tier) {
+		return tiers[tier].resolution;
+	}
+
+	/**
+	 * Returns the number of points of a tier.
+	 *
+	 * @param tier Index of the tier.
+	 *
+	 * @return The number of points.
+	 */
+	public synchronized int getSize(int tier) {
+		return tiers[tier].size;
+	}
+
+	/**
+	 * Copies the points of a tier that start in a range of time, oldest
+	 * first.
+	 *
+	 * @param tier Index of the tier.
+	 * @param from Start of the range, in milliseconds.
+	 * @param to End of the range, exclusive.
+	 * @param maxPoints Maximum number of points to copy.
+	 * @param times Receives the start times of the points.
+	 * @param min Receives the minimum usages, {@code width} values for each point.
+	 * @param max Receives the maximum usages.
+	 * @param average Receives the average usages.
+	 *
+	 * @return The number of points copied.
+	 */
+	public synchronized int read(int tier, long from, long to, int maxPoints, long[] times,
+			float[] min, float[] max, float[] average) {
+		Tier t = tiers[tier];
+		int points = 0;
+		for (int index = t.find(from); index < t.size && points < maxPoints; index++) {
+			long time = t.getTime(index);
+			if (time >= to)
+				break;
+			int slot = t.getSlot(index);
+			times[points] = time;
+			System.arraycopy(t.min, slot * width, min, points * width, width);
+			System.arraycopy(t.max, slot * width, max, points * width, width);
+			System.arraycopy(t.average, slot * width, average, points * width, width);
+			points++;
+		}
+		return points;
+	}
+
+	/**
+	 * Writes the buffered points to the file.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	public synchronized void flush() throws IOException {
+		if (out != null)
+			out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Adds a closed point of a tier to the next tier.
+	 *
+	 * @param tier Index of the tier of the point.
+	 * @param slot Slot of the point.
+	 * @param cascade Whether to roll up the points closed in the next tier.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void rollUp(int tier, int slot, boolean cascade) throws IOException {
+		if (tier + 1 >= tiers.length)
+			return;
+		Tier source = tiers[tier];
+		Tier target = tiers[tier + 1];
+		if (target.accumulate(source.times[slot], source.min, source.max, source.average, slot * width)) {
+			int targetSlot = target.getSlot(target.size - 1);
+			append(tier + 1, targetSlot);
+			// Batches the writes to a flush per point of the second tier.
+			out.flush();
+			if (cascade)
+				rollUp(tier + 1, targetSlot, true);
+		}
+	}
+
+	/**
+	 * Appends a point to the file, compacting the file if it grew too much.
+	 *
+	 * @param tier Index of the tier of the point.
+	 * @param slot Slot of the point.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void append(int tier, int slot) throws IOException {
+		if (out == null)
+			throw new IOException("History closed");
+		writeRecord(out, tier, slot);
+		fileRecords++;
+		if (fileRecords > COMPACT_FACTOR * getTotalCapacity())
+			compact();
+	}
+
+	/**
+	 * Writes a point.
+	 *
+	 * @param stream The stream to write to.
+	 * @param tier Index of the tier of the point.
+	 * @param slot Slot of the point.
+	 *
+	 * @throws IOException If the point cannot be written.
+	 */
+	private void writeRecord(DataOutputStream stream, int tier, int slot) throws IOException {
+		Tier t = tiers[tier];
+		stream.writeByte(tier);
+		stream.writeLong(t.times[slot]);
+		int offset = slot * width;
+		for (int i = 0; i < width; i++)
+			stream.writeFloat(t.min[offset + i]);
+		for (int i = 0; i < width; i++)
+			stream.writeFloat(t.max[offset + i]);
+		for (int i = 0; i < width; i++)
+			stream.writeFloat(t.average[offset + i]);
+	}
+
+	/**
+	 * Loads the points stored in the file.
+	 *
+	 * @return {@code true} if the file was read completely, {@code false}
+	 *         if it is missing, of another format or ends with a partial
+	 *         point.
+	 *
+	 * @throws IOException If the file cannot be read.
+	 */
+	private boolean load() throws IOException {
+		if (!file.isFile())
+			return false;
+		float[] min = new float[width];
+		float[] max = new float[width];
+		float[] average = new float[width];
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != width)
+				return false;
+			while (true) {
+				int tier = in.read();
+				if (tier < 0)
+					return true;
+				long time = in.readLong();
+				for (int i = 0; i < width; i++)
+					min[i] = in.readFloat();
+				for (int i = 0; i < width; i++)
+					max[i] = in.readFloat();
+				for (int i = 0; i < width; i++)
+					average[i] = in.readFloat();
+				if (tier >= tiers.length)
+					return false;
+				tiers[tier].store(time, min, max, average, 0);
+				fileRecords++;
+			}
+		} catch (EOFException e) {
+			// Reset while writing.
+			return false;
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the points kept. The file is written to a
+	 * temporary name and then renamed, so a reset while writing never loses
+	 * the history.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void compact() throws IOException {
+		close();
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE))) {
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(width);
+			fileRecords = 0;
+			for (int tier = 0; tier < tiers.length; tier++) {
+				for (int index = 0; index < tiers[tier].size; index++) {
+					writeRecord(stream, tier, tiers[tier].getSlot(index));
+					fileRecords++;
+				}
+			}
+			stream.flush();
+			fileOut.getFD().sync();
+		}
+		if (!temp.renameTo(file))
+			throw new IOException("Unable to rename " + temp + " to " + file);
+		openForAppend();
+	}
+
+	/**
+	 * Opens the file to append the new points.
+	 *
+	 * @throws IOException If the file cannot be opened.
+	 */
+	private void openForAppend() throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+	}
+
+	/**
+	 * Returns the number of points kept by all the tiers.
+	 *
+	 * @return The number of points.
+	 */
+	private long getTotalCapacity() {
+		long capacity = 0;
+		for (Tier tier : tiers)
+			capacity += tier.capacity;
+		return capacity;
+	}
+
+	/**
+	 * Points of one resolution, and the point being accumulated.
+	 */
+	private static class Tier {
+
+		// Variables.
+		private final long resolution;
+		private final int capacity;
+		private final int width;
+
+		private final long[] times;
+		private final float[] min;
+		private final float[] max;
+		private final float[] average;
+		private int head;
+		private int size;
+
+		private long bucket;
+		private int count;
+		private final float[] bucketMin;
+		private final float[] bucketMax;
+		private final double[] bucketSum;
+
+		/**
+		 * Class constructor. Instantiates a new {@code Tier}.
+		 *
+		 * @param resolution Interval of the points, in milliseconds.
+		 * @param capacity Number of points kept.
+		 * @param width Number of usages of each point.
+		 */
+		Tier(long resolution, int capacity, int width) {
+			this.resolution = resolution;
+			this.capacity = capacity;
+			this.width = width;
+			this.times = new long[capacity];
+			this.min = new float[capacity * width];
+			this.max = new float[capacity * width];
+			this.average = new float[capacity * width];
+			this.bucketMin = new float[width];
+			this.bucketMax = new float[width];
+			this.bucketSum = new double[width];
+		}
+
+		/**
+		 * Adds values to the point being accumulated. If the values belong to
+		 * a later interval, the point is stored first.
+		 *
+		 * @param time Time of the values, in milliseconds.
+		 * @param minValues Array with the minimum values.
+		 * @param maxValues Array with the maximum values.
+		 * @param averageValues Array with the average values.
+		 * @param offset Index of the first value in the arrays.
+		 *
+		 * @return {@code true} if a point was stored.
+		 */
+		boolean accumulate(long time, float[] minValues, float[] maxValues, float[] averageValues, int offset) {
+			long start = time - Math.floorMod(time, resolution);
+			boolean stored = false;
+			if (count > 0 && start != bucket) {
+				for (int i = 0; i < width; i++)
+					bucketSum[i] /= count;
+				storeBucket();
+				stored = true;
+				count = 0;
+			}
+			if (count == 0) {
+				bucket = start;
+				Arrays.fill(bucketMin, Float.MAX_VALUE);
+				Arrays.fill(bucketMax, -Float.MAX_VALUE);
+				Arrays.fill(bucketSum, 0.0);
+			}
+			for (int i = 0; i < width; i++) {
+				bucketMin[i] = Math.min(bucketMin[i], minValues[offset + i]);
+				bucketMax[i] = Math.max(bucketMax[i], maxValues[offset + i]);
+				bucketSum[i] += averageValues[offset + i];
+			}
+			count++;
+			return stored;
+		}
+
+		/**
+		 * Stores the accumulated point, whose sums have been divided into
+		 * averages.
+		 */
+		private void storeBucket() {
+			int offset = head * width;
+			times[head] = bucket;
+			for (int i = 0; i < width; i++) {
+				min[offset + i] = bucketMin[i];
+				max[offset + i] = bucketMax[i];
+				average[offset + i] = (float) bucketSum[i];
+			}
+			advance();
+		}
+
+		/**
+		 * Stores a point, overwriting the oldest point if the tier is full.
+		 *
+		 * @param time Start time of the point.
+		 * @param minValues Array with the minimum values.
+		 * @param maxValues Array with the maximum values.
+		 * @param averageValues Array with the average values.
+		 * @param offset Index of the first value in the arrays.
+		 */
+		void store(long time, float[] minValues, float[] maxValues, float[] averageValues, int offset) {
+			times[head] = time;
+			System.arraycopy(minValues, offset, min, head * width, width);
+			System.arraycopy(maxValues, offset, max, head * width, width);
+			System.arraycopy(averageValues, offset, average, head * width, width);
+			advance();
+		}
+
+		/**
+		 * Moves to the next slot after storing a point.
+		 */
+		private void advance() {
+			head = (head + 1) % capacity;
+			if (size < capacity)
+				size++;
+		}
+
+		/**
+		 * Returns the slot of a point.
+		 *
+		 * @param index Index of the point, 0 for the oldest.
+		 *
+		 * @return The slot.
+		 */
+		int getSlot(int index) {
+			return (head - size + index + capacity) % capacity;
+		}
+
+		/**
+		 * Returns the start time of a point.
+		 *
+		 * @param index Index of the point, 0 for the oldest.
+		 *
+		 * @return The start time, in milliseconds.
+		 */
+		long getTime(int index) {
+			return times[getSlot(index)];
+		}
+
+		/**
+		 * Returns the end of the interval of the newest point.
+		 *
+		 * @return The end time, or {@link Long#MIN_VALUE} if there are no
+		 *         points.
+		 */
+		long getEnd() {
+			return size == 0 ? Long.MIN_VALUE : getTime(size - 1) + resolution;
+		}
+
+		/**
+		 * Finds the first point that starts at or after a time.
+		 *
+		 * @param time The time, in milliseconds.
+		 *
+		 * @return Index of the point, or the number of points if none.
+		 */
+		int find(long time) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (getTime(middle) < time)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+	}
+}
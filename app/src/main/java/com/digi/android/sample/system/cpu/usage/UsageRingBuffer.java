@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ring buffer of CPU usage samples, stored as primitive floats.
+ *
+ * <p>Each frame holds one sample of every usage: index 0 is the overall
+ * usage and index {@code i} is the usage of core {@code i - 1}, with the
+ * time the sample was taken. The frames are preallocated, so writing never
+ * allocates.</p>
+ *
+ * <p>There must be a single writer thread. Any number of threads can read
+ * the frames without locks and without blocking the writer: a reader copies
+ * the frames and then checks that the writer didn't wrap around and
+ * overwrite them while they were copied, retrying if it did. Each reader
+ * keeps its own position, so readers don't consume the frames from each
+ * other.</p>
+ */
+public class UsageRingBuffer {
+
+	// Variables.
+	private final int width;
+	private final int mask;
+	private final float[] values;
+	private final long[] timestamps;
+
+	// Number of frames written so far, the frame being written is not counted.
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Class constructor. Instantiates a new {@code UsageRingBuffer}.
+	 *
+	 * @param capacity Minimum number of frames kept, rounded up to a power
+	 *                 of two.
+	 * @param width Number of usages in each frame.
+	 */
+	public UsageRingBuffer(int capacity, int width) {
+		int frames = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.width = width;
+		this.mask = frames - 1;
+		this.values = new float[frames * width];
+		this.timestamps = new long[frames];
+	}
+
+	/**
+	 * Returns the number of frames kept.
+	 *
+	 * @return The capacity of the buffer.
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the number of usages in each frame.
+	 *
+	 * @return The width of the frames.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of frames written so far. The last frame written
+	 * has the sequence number {@code getSequence() - 1}.
+	 *
+	 * @return The number of frames written.
+	 */
+	public long getSequence() {
+		return sequence.get();
+	}
+
+	/**
+	 * Appends a frame, overwriting the oldest frame if the buffer is full.
+	 * Must only be called by the writer thread.
+	 *
+	 * @param timestamp Time the sample was taken, in milliseconds.
+	 * @param usages The usages, {@link #getWidth()} values.
+	 */
+	public void write(long timestamp, float[] usages) {
+		long next = sequence.get();
+		int slot = (int) (next & mask);
+		// The slot of the oldest frame must not be overwritten before the
+		// previous sequence number is visible, the readers check it after
+		// copying. The lazySet() of the previous write doesn't order the
+		// stores that follow it.
+		VarHandle.storeStoreFence();
+		System.arraycopy(usages, 0, values, slot * width, width);
+		timestamps[slot] = timestamp;
+		// Publishes the frame, the readers see it complete.
+		sequence.lazySet(next + 1);
+	}
+
+	/**
+	 * Copies the most recent frames, oldest first.
+	 *
+	 * @param maxFrames Maximum number of frames to copy.
+	 * @param usages Receives the usages of the frames, at least
+	 *               {@code maxFrames * getWidth()} values.
+	 * @param frameTimestamps Receives the timestamps of the frames, at least
+	 *                        {@code maxFrames} values, or {@code null}.
+	 *
+	 * @return The number of frames copied.
+	 */
+	public int readLatest(int maxFrames, float[] usages, long[] frameTimestamps) {
+		while (true) {
+			long end = sequence.get();
+			long start = Math.max(end - maxFrames, getOldest(end));
+			copy(start, end, usages, frameTimestamps);
+			if (isValid(start))
+				return (int) (end - start);
+		}
+	}
+
+	/**
+	 * Creates a reader that copies the frames in order, starting from the
+	 * next frame written.
+	 *
+	 * @return The reader.
+	 */
+	public Reader newReader() {
+		return new Reader(sequence.get());
+	}
+
+	/**
+	 * Copies frames from the buffer to arrays.
+	 *
+	 * @param start Sequence number of the first frame.
+	 * @param stop Sequence number after the last frame.
+	 * @param usages Receives the usages of the frames.
+	 * @param frameTimestamps Receives the timestamps of the frames, or
+	 *                        {@code null}.
+	 */
+	private void copy(long start, long stop, float[] usages, long[] frameTimestamps) {
+		for (long s = start; s < stop; s++) {
+			int slot = (int) (s & mask);
+			int frame = (int) (s - start);
+			System.arraycopy(values, slot * width, usages, frame * width, width);
+			if (frameTimestamps != null)
+				frameTimestamps[frame] = timestamps[slot];
+		}
+	}
+
+	/**
+	 * Checks that the frames copied from a sequence number were not
+	 * overwritten while they were copied.
+	 *
+	 * @param start Sequence number of the first frame copied.
+	 *
+	 * @return {@code true} if the copy is valid.
+	 */
+	private boolean isValid(long start) {
+		// The copies must complete before the sequence number is read again.
+		VarHandle.acquireFence();
+		return start >= getOldest(sequence.get());
+	}
+
+	/**
+	 * Returns the sequence number of the oldest frame that can be read.
+	 *
+	 * @param end Number of frames written.
+	 *
+	 * @return The sequence number of the oldest frame.
+	 */
+	private long getOldest(long end) {
+		// The slot of the oldest frame may be being written with a new frame.
+		return Math.max(0, end + 1 - getCapacity());
+	}
+
+	/**
+	 * Reads the frames of the buffer in order. Each reader has its own
+	 * position, and must be used by one thread only.
+	 */
+	public class Reader {
+
+		// Variables.
+		private long position;
+		private long skipped;
+
+		/**
+		 * Class constructor. Instantiates a new {@code Reader}.
+		 *
+		 * @param position Sequence number of the first frame to read.
+		 */
+		private Reader(long position) {
+			this.position = position;
+		}
+
+		/**
+		 * Copies the frames written since the previous read, oldest first.
+		 * If the reader fell behind more than the capacity of the buffer,
+		 * the frames that were overwritten are skipped.
+		 *
+		 * @param maxFrames Maximum number of frames to copy.
+		 * @param usages Receives the usages of the frames, at least
+		 *               {@code maxFrames * getWidth()} values.
+		 * @param frameTimestamps Receives the timestamps of the frames, at
+		 *                        least {@code maxFrames} values, or
+		 *                        {@code null}.
+		 *
+		 * @return The number of frames copied.
+		 */
+		public int read(int maxFrames, float[] usages, long[] frameTimestamps) {
+			while (true) {
+				long end = sequence.get();
+				long start = Math.max(position, getOldest(end));
+				long stop = Math.min(end, start + maxFrames);
+				copy(start, stop, usages, frameTimestamps);
+				if (isValid(start)) {
+					skipped += start - position;
+					position = stop;
+					return (int) (stop - start);
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of frames that were overwritten before they
+		 * could be read.
+		 *
+		 * @return The number of frames skipped.
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+	}
+}
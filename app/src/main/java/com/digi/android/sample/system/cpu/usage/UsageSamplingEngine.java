@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples the CPU usage at a fixed rate, up to 100 Hz, on a dedicated
+ * thread that writes the samples to a {@link UsageRingBuffer}.
+ *
+ * <p>The samples are taken at fixed times, so a slow sample doesn't shift
+ * the following ones. If the thread falls behind by more than a period, the
+ * missed samples are skipped instead of taken in a burst.</p>
+ *
+ * <p>Note that the kernel counts the CPU time in ticks, typically of 4 or
+ * 10 ms, so the usages of short periods are coarse.</p>
+ */
+public class UsageSamplingEngine {
+
+	// Constants.
+	public static final int MIN_SAMPLING_PERIOD = 10;
+
+	private static final String THREAD_NAME = "CPU usage sampler";
+
+	// Variables.
+	private final UsageSource source;
+	private final UsageRingBuffer buffer;
+	private final float[] usages;
+
+	private volatile int samplingPeriod;
+
+	private Thread samplerThread;
+
+	/**
+	 * Class constructor. Instantiates a new {@code UsageSamplingEngine}.
+	 *
+	 * @param source Source of the samples.
+	 * @param buffer Buffer the samples are written to. The engine must be
+	 *               its only writer.
+	 * @param samplingPeriod Milliseconds between the samples.
+	 */
+	public UsageSamplingEngine(UsageSource source, UsageRingBuffer buffer, int samplingPeriod) {
+		this.source = source;
+		this.buffer = buffer;
+		this.usages = new float[buffer.getWidth()];
+		setSamplingPeriod(samplingPeriod);
+	}
+
+	/**
+	 * Sets the time between the samples. Takes effect after the next sample.
+	 *
+	 * @param samplingPeriod Milliseconds between the samples, at least
+	 *                       {@link #MIN_SAMPLING_PERIOD}.
+	 */
+	public void setSamplingPeriod(int samplingPeriod) {
+		this.samplingPeriod = Math.max(samplingPeriod, MIN_SAMPLING_PERIOD);
+	}
+
+	/**
+	 * Returns the time between the samples.
+	 *
+	 * @return Milliseconds between the samples.
+	 */
+	public int getSamplingPeriod() {
+		return samplingPeriod;
+	}
+
+	/**
+	 * Returns the buffer the samples are written to.
+	 *
+	 * @return The buffer.
+	 */
+	public UsageRingBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Starts sampling.
+	 */
+	public synchronized void start() {
+		if (samplerThread != null)
+			return;
+		samplerThread = new Thread(this::sampleLoop, THREAD_NAME);
+		samplerThread.setDaemon(true);
+		samplerThread.start();
+	}
+
+	/**
+	 * Stops sampling, and waits for the sample in progress to complete.
+	 */
+	public synchronized void stop() {
+		if (samplerThread == null)
+			return;
+		samplerThread.interrupt();
+		try {
+			samplerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		samplerThread = null;
+	}
+
+	/**
+	 * Takes the samples until the thread is interrupted.
+	 */
+	private void sampleLoop() {
+		try {
+			// The first sample only sets the starting counters.
+			source.sample(usages);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		long next = System.nanoTime();
+		while (!Thread.currentThread().isInterrupted()) {
+			next += TimeUnit.MILLISECONDS.toNanos(samplingPeriod);
+			long now;
+			while ((now = System.nanoTime()) < next) {
+				LockSupport.parkNanos(next - now);
+				if (Thread.currentThread().isInterrupted())
+					return;
+			}
+			if (now - next > TimeUnit.MILLISECONDS.toNanos(samplingPeriod))
+				// Fell behind, skip the missed samples.
+				next = now;
+
+			try {
+				source.sample(usages);
+				buffer.write(System.currentTimeMillis(), usages);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import android.graphics.Canvas;
+
+import com.androidplot.Plot;
+import com.androidplot.PlotListener;
+import com.androidplot.xy.OrderedXYSeries;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plot series of CPU usages, stored in a circular array of primitive
+ * floats.
+ *
+ * <p>One thread appends the values while the plot renders them on another.
+ * The values are guarded by a sequence lock: the writer makes the sequence
+ * number odd while it updates the array, and before each redraw the plot
+ * copies the values and retries if the sequence number changed meanwhile.
+ * The renderer only sees the copy, so it never sees a torn or resized
+ * series, and the writer never waits for the renderer.</p>
+ *
+ * <p>Neither appending nor rendering allocates: the values handed to the
+ * renderer are preallocated mutable {@link Number}s. The X values are the
+ * indexes of the points.</p>
+ */
+public class UsageXYSeries implements OrderedXYSeries, PlotListener {
+
+	// Variables.
+	private final String title;
+	private final int mask;
+	private final float[] values;
+
+	// Even while the values are consistent, odd while they are being written.
+	private final AtomicLong sequence = new AtomicLong();
+	private long count;
+
+	private volatile int maxSize;
+
+	// Copy of the values for the renderer, only used by the plot thread.
+	private final PlotValue[] xValues;
+	private final PlotValue[] yValues;
+	private int renderSize;
+
+	/**
+	 * Class constructor. Instantiates a new {@code UsageXYSeries}.
+	 *
+	 * @param title Title of the series.
+	 * @param capacity Maximum number of points that can be shown.
+	 * @param maxSize Number of points shown, the most recent ones.
+	 */
+	public UsageXYSeries(String title, int capacity, int maxSize) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.title = title;
+		this.mask = size - 1;
+		this.values = new float[size];
+		this.xValues = new PlotValue[size];
+		this.yValues = new PlotValue[size];
+		for (int i = 0; i < size; i++) {
+			xValues[i] = new PlotValue(i);
+			yValues[i] = new PlotValue(0.0f);
+		}
+		setMaxSize(maxSize);
+	}
+
+	/**
+	 * Sets the number of points shown.
+	 *
+	 * @param maxSize Number of points shown, the most recent ones, up to the
+	 *                capacity of the series.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = Math.max(1, Math.min(maxSize, values.length));
+	}
+
+	/**
+	 * Appends a value, dropping the oldest one if the series is full. Must
+	 * only be called by one thread.
+	 *
+	 * @param value The value to append.
+	 */
+	public void add(float value) {
+		long s = sequence.get();
+		sequence.set(s + 1);
+		// The values must not be written before the sequence number is odd.
+		VarHandle.storeStoreFence();
+		values[(int) (count & mask)] = value;
+		count++;
+		sequence.lazySet(s + 2);
+	}
+
+	@Override
+	public void onBeforeDraw(Plot plot, Canvas canvas) {
+		while (true) {
+			long s = sequence.get();
+			if ((s & 1) != 0) {
+				// The writer is in the middle of an append.
+				Thread.onSpinWait();
+				continue;
+			}
+			long end = count;
+			int size = (int) Math.min(end, maxSize);
+			for (int i = 0; i < size; i++)
+				yValues[i].value = values[(int) ((end - size + i) & mask)];
+			// The copies must complete before the sequence number is read again.
+			VarHandle.acquireFence();
+			if (sequence.get() == s) {
+				renderSize = size;
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void onAfterDraw(Plot plot, Canvas canvas) { }
+
+	@Override
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public int size() {
+		return renderSize;
+	}
+
+	@Override
+	public Number getX(int index) {
+		return xValues[index];
+	}
+
+	@Override
+	public Number getY(int index) {
+		return yValues[index];
+	}
+
+	@Override
+	public XOrder getXOrder() {
+		return XOrder.ASCENDING;
+	}
+
+	/**
+	 * Mutable number handed to the renderer, so rendering doesn't box the
+	 * values.
+	 */
+	private static class PlotValue extends Number {
+
+		// Constants.
+		private static final long serialVersionUID = 1L;
+
+		// Variables.
+		private float value;
+
+		/**
+		 * Class constructor. Instantiates a new {@code PlotValue}.
+		 *
+		 * @param value The initial value.
+		 */
+		PlotValue(float value) {
+			this.value = value;
+		}
+
+		@Override
+		public int intValue() {
+			return (int) value;
+		}
+
+		@Override
+		public long longValue() {
+			return (long) value;
+		}
+
+		@Override
+		public float floatValue() {
+			return value;
+		}
+
+		@Override
+		public double doubleValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return Float.toString(value);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apfloat.Apfloat;
+import org.apfloat.Apint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that ranges stored in a {@link CheckpointStore} are loaded back
+ * unchanged when the store is opened again.
+ */
+
+public class CheckpointStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File directory = folder.newFolder();
+		CheckpointStore store = new CheckpointStore(directory, FINGERPRINT,
+				MIN_TERMS, 0);
+		store.save(0, 100, T, Q, P);
+		store.save(100, 200, T, Q, null);
+
+		store = new CheckpointStore(directory, FINGERPRINT, MIN_TERMS, 0);
+		ApfloatHolder t = new ApfloatHolder(), q = new ApfloatHolder(), p = new ApfloatHolder();
+		assertTrue(store.load(0, 100, t, q, p));
+		assertEquals(T, t.getApfloat());
+		assertEquals(Q, q.getApfloat());
+		assertEquals(P, p.getApfloat());
+		assertEquals(T.precision(), t.getApfloat().precision());
+		assertEquals(T.radix(), t.getApfloat().radix());
+
+		t = new ApfloatHolder();
+		q = new ApfloatHolder();
+		assertTrue(store.load(100, 200, t, q, null));
+		assertEquals(T, t.getApfloat());
+		assertEquals(Q, q.getApfloat());
+
+		// Stored without P, so it can't be used where P is needed
+		assertFalse(store.load(100, 200, t, q, new ApfloatHolder()));
+	}
+
+	@Test
+	public void testShortAndMissingRanges() throws IOException {
+		CheckpointStore store = new CheckpointStore(folder.newFolder(),
+				FINGERPRINT, MIN_TERMS, 0);
+		store.save(0, MIN_TERMS - 1, T, Q, P);
+
+		ApfloatHolder t = new ApfloatHolder(), q = new ApfloatHolder();
+		assertFalse(store.load(0, MIN_TERMS - 1, t, q, null));
+		assertFalse(store.load(0, 100, t, q, null));
+		assertNull(t.getApfloat());
+	}
+
+	@Test
+	public void testEnclosingRangeReplacesInner() throws IOException {
+		File directory = folder.newFolder();
+		CheckpointStore store = new CheckpointStore(directory, FINGERPRINT,
+				MIN_TERMS, 0);
+		store.save(0, 100, T, Q, P);
+		store.save(100, 200, T, Q, P);
+		store.save(0, 200, Q, T, P);
+
+		store = new CheckpointStore(directory, FINGERPRINT, MIN_TERMS, 0);
+		ApfloatHolder t = new ApfloatHolder(), q = new ApfloatHolder();
+		assertFalse(store.load(0, 100, t, q, null));
+		assertFalse(store.load(100, 200, t, q, null));
+		assertTrue(store.load(0, 200, t, q, null));
+		assertEquals(Q, t.getApfloat());
+		assertEquals(T, q.getApfloat());
+	}
+
+	@Test
+	public void testFingerprintChangeClears() throws IOException {
+		File directory = folder.newFolder();
+		new CheckpointStore(directory, FINGERPRINT, MIN_TERMS, 0).save(0, 100,
+				T, Q, P);
+
+		CheckpointStore store = new CheckpointStore(directory, "other",
+				MIN_TERMS, 0);
+		assertFalse(store.load(0, 100, new ApfloatHolder(),
+				new ApfloatHolder(), null));
+	}
+
+	@Test
+	public void testCorruptCheckpointIsDiscarded() throws IOException {
+		File directory = folder.newFolder();
+		new CheckpointStore(directory, FINGERPRINT, MIN_TERMS, 0).save(0, 100,
+				T, Q, P);
+		FileOutputStream out = new FileOutputStream(new File(directory,
+				"0-100.ckpt"));
+		try {
+			out.write(new byte[] { 1, 2, 3 });
+		} finally {
+			out.close();
+		}
+
+		CheckpointStore store = new CheckpointStore(directory, FINGERPRINT,
+				MIN_TERMS, 0);
+		assertFalse(store.load(0, 100, new ApfloatHolder(),
+				new ApfloatHolder(), null));
+		assertFalse(new File(directory, "0-100.ckpt").exists());
+	}
+
+	private static final String FINGERPRINT = "test";
+	private static final long MIN_TERMS = 10;
+	private static final Apfloat T = new Apfloat(
+			"-123456789012345678901234567890.5", 40, 10);
+	private static final Apfloat Q = new Apint(
+			"98765432109876543210987654321");
+	private static final Apfloat P = new Apint("-42", 16);
+}
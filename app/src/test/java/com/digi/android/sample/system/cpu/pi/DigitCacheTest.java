@@ -0,0 +1,84 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatMath;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that digits stored in a {@link DigitCache} are loaded back
+ * unchanged, in full and partially.
+ */
+
+public class DigitCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DigitCache cache = new DigitCache(folder.newFolder());
+		for (int radix : RADIXES) {
+			Apfloat pi = ApfloatMath.pi(DIGITS, radix);
+			cache.store(pi);
+			assertEquals(DIGITS, cache.getDigits(radix));
+
+			for (long precision : new long[] { 1, 2, 3, 17, DIGITS - 1, DIGITS }) {
+				Apfloat digits = cache.load(precision, radix);
+				String message = "radix " + radix + " precision " + precision;
+				assertEquals(message, radix, digits.radix());
+				assertEquals(message, precision, digits.precision());
+				assertTrue(message, digits.size() <= precision);
+				assertTrue(message, pi.equalDigits(digits) >= precision);
+			}
+			assertNull(cache.load(DIGITS + 1, radix));
+		}
+	}
+
+	@Test
+	public void testKeepsMostDigits() throws IOException {
+		File directory = folder.newFolder();
+		DigitCache cache = new DigitCache(directory);
+		cache.store(ApfloatMath.pi(DIGITS, 10));
+		cache.store(ApfloatMath.pi(DIGITS / 2, 10));
+		assertEquals(DIGITS, new DigitCache(directory).getDigits(10));
+		assertEquals(0, cache.getDigits(16));
+		assertNull(cache.load(1, 16));
+
+		cache.clear();
+		assertEquals(0, cache.getDigits(10));
+	}
+
+	@Test
+	public void testCorruptDigitsAreDiscarded() throws IOException {
+		File directory = folder.newFolder();
+		DigitCache cache = new DigitCache(directory);
+		cache.store(ApfloatMath.pi(DIGITS, 10));
+
+		File file = directory.listFiles()[0];
+		RandomAccessFile data = new RandomAccessFile(file, "rw");
+		try {
+			data.seek(data.length() - DIGITS / 2);
+			data.write('x');
+		} finally {
+			data.close();
+		}
+
+		// The digits before the damage can still be read
+		assertEquals(DIGITS / 3, cache.load(DIGITS / 3, 10).precision());
+		assertNull(cache.load(DIGITS, 10));
+		assertFalse(file.exists());
+	}
+
+	private static final long DIGITS = 500;
+	private static final int[] RADIXES = { 2, 3, 10, 16, 36 };
+}
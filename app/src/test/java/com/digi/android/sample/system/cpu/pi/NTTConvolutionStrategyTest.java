@@ -0,0 +1,126 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatContext;
+import org.apfloat.ApfloatMath;
+import org.apfloat.Apint;
+import org.apfloat.internal.IntBuilderFactory;
+import org.apfloat.spi.BuilderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks products calculated with the {@link NTTConvolutionStrategy}
+ * against the same products calculated by apfloat with its own
+ * transforms.
+ */
+
+public class NTTConvolutionStrategyTest {
+	@Before
+	public void setUp() {
+		ApfloatContext ctx = ApfloatContext.getContext();
+		this.originalBuilderFactory = ctx.getBuilderFactory();
+		this.builderFactory = new IntBuilderFactory();
+		this.nttBuilderFactory = new NTTBuilderFactory(this.builderFactory);
+	}
+
+	@After
+	public void tearDown() {
+		ApfloatContext.getContext().setBuilderFactory(
+				this.originalBuilderFactory);
+	}
+
+	@Test
+	public void testRandomProducts() {
+		Random random = new Random(1);
+		for (int radix : RADIXES) {
+			for (int digits : DIGITS) {
+				Apfloat x = random(random, digits, radix), y = random(random,
+						digits * 2 / 3 + 7, radix);
+				check(x, y);
+				check(x, x);
+			}
+		}
+	}
+
+	@Test
+	public void testLargestDigits() {
+		for (int radix : RADIXES) {
+			Apfloat x = largest(DIGITS[DIGITS.length - 1], radix);
+			check(x, x);
+			check(x, largest(DIGITS[1], radix));
+		}
+	}
+
+	@Test
+	public void testStrategyIsUsed() {
+		long size = 1 << 12;
+		assertTrue(this.nttBuilderFactory.getConvolutionBuilder()
+				.createConvolution(10, size, size, 2 * size) instanceof NTTConvolutionStrategy);
+	}
+
+	private void check(Apfloat x, Apfloat y) {
+		ApfloatContext ctx = ApfloatContext.getContext();
+		ctx.setBuilderFactory(this.builderFactory);
+		Apint a = integer(x), b = (x == y ? a : integer(y));
+		x = copy(x);
+		y = (x == y ? x : copy(y));
+		Apint expected = a.multiply(b);
+		Apfloat truncated = x.multiply(y);
+
+		ctx.setBuilderFactory(this.nttBuilderFactory);
+		Apint product = a.multiply(b);
+		Apfloat truncatedProduct = x.multiply(y);
+
+		String message = "radix " + x.radix() + " digits " + x.precision()
+				+ " x " + y.precision();
+		assertEquals(message, expected, product);
+		// apfloat doesn't propagate all the carries into the last digit of
+		// a truncated product, the kernel does
+		assertEquals(message, truncated.precision(),
+				truncatedProduct.precision());
+		assertTrue(message,
+				truncated.equalDigits(truncatedProduct) >= truncated
+						.precision() - 1);
+	}
+
+	// The digits of a number below one as an exact integer
+	private static Apint integer(Apfloat x) {
+		return new Apint(ApfloatMath.scale(x, x.precision()).toString(true),
+				x.radix());
+	}
+
+	private static Apfloat copy(Apfloat x) {
+		return new Apfloat(x.toString(true), x.precision(), x.radix());
+	}
+
+	private static Apfloat random(Random random, int digits, int radix) {
+		StringBuilder buffer = new StringBuilder("0.");
+		for (int i = 0; i < digits; i++) {
+			buffer.append(Character.forDigit(random.nextInt(radix), radix));
+		}
+		return new Apfloat(buffer.toString(), digits, radix);
+	}
+
+	// All digits radix - 1, so the products have the longest carries
+	private static Apfloat largest(int digits, int radix) {
+		StringBuilder buffer = new StringBuilder("0.");
+		for (int i = 0; i < digits; i++) {
+			buffer.append(Character.forDigit(radix - 1, radix));
+		}
+		return new Apfloat(buffer.toString(), digits, radix);
+	}
+
+	private static final int[] RADIXES = { 2, 7, 10, 16, 36 };
+	private static final int[] DIGITS = { 300, 1000, 5000, 33333, 100000 };
+
+	private BuilderFactory originalBuilderFactory;
+	private BuilderFactory builderFactory;
+	private BuilderFactory nttBuilderFactory;
+}
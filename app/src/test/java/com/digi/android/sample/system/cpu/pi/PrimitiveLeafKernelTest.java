@@ -0,0 +1,82 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apfloat.Apfloat;
+import org.apfloat.Apint;
+import org.junit.Test;
+
+/**
+ * Checks the terms calculated by {@link PrimitiveLeafKernel} against the
+ * same terms calculated with {@link Apint}.
+ */
+
+public class PrimitiveLeafKernelTest {
+	@Test
+	public void testChudnovsky() {
+		for (int radix : RADIXES) {
+			Pi.PrimitiveBinarySplittingSeries series = new Pi.ChudnovskyBinarySplittingSeries(
+					Apfloat.INFINITE, radix);
+			checkRanges(series);
+		}
+	}
+
+	@Test
+	public void testRamanujan() {
+		for (int radix : RADIXES) {
+			Pi.PrimitiveBinarySplittingSeries series = new Pi.RamanujanBinarySplittingSeries(
+					Apfloat.INFINITE, radix);
+			checkRanges(series);
+		}
+	}
+
+	@Test
+	public void testWithoutP() {
+		Pi.PrimitiveBinarySplittingSeries series = new Pi.ChudnovskyBinarySplittingSeries(
+				Apfloat.INFINITE, 10);
+		ApfloatHolder T = new ApfloatHolder(), Q = new ApfloatHolder();
+		PrimitiveLeafKernel.r(series, 5, 37, T, Q, null);
+
+		Apint[] expected = calculate(series, 5, 37);
+		assertEquals("T", expected[0], T.getApfloat());
+		assertEquals("Q", expected[1], Q.getApfloat());
+	}
+
+	private static void checkRanges(Pi.PrimitiveBinarySplittingSeries series) {
+		long max = series.getMaxPrimitiveTerm();
+		long[][] ranges = { { 0, 1 }, { 1, 2 }, { 0, 32 }, { 17, 48 },
+				{ 100000, 100031 }, { max - 31, max } };
+		for (long[] range : ranges) {
+			ApfloatHolder T = new ApfloatHolder(), Q = new ApfloatHolder(), P = new ApfloatHolder();
+			PrimitiveLeafKernel.r(series, range[0], range[1], T, Q, P);
+
+			String message = "radix " + series.getRadix() + " terms "
+					+ range[0] + "-" + range[1];
+			Apint[] expected = calculate(series, range[0], range[1]);
+			assertEquals(message + " T", expected[0], T.getApfloat());
+			assertEquals(message + " Q", expected[1], Q.getApfloat());
+			assertEquals(message + " P", expected[2], P.getApfloat());
+			assertEquals(message + " radix", series.getRadix(), T
+					.getApfloat().radix());
+		}
+	}
+
+	// T, Q and P of the range with the same recurrence as the kernel, in exact integers
+	private static Apint[] calculate(Pi.PrimitiveBinarySplittingSeries series,
+			long n1, long n2) {
+		int radix = series.getRadix();
+		Apint T = new Apint(0, radix), Q = new Apint(1, radix), P = new Apint(
+				1, radix);
+		for (long n = n1; n < n2; n++) {
+			Apint a = series.a(n).truncate(), p = series.p(n).truncate(), q = series
+					.q(n).truncate();
+			P = P.multiply(p);
+			T = T.multiply(q).add(P.multiply(a));
+			Q = Q.multiply(q);
+		}
+		return new Apint[] { T, Q, P };
+	}
+
+	private static final int[] RADIXES = { 10, 16, 7 };
+}
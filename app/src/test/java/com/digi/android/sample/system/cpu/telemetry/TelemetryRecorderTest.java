@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TelemetryRecorder} and {@link TelemetryReader}.
+ */
+public class TelemetryRecorderTest {
+
+	// Constants.
+	private static final int CORES = 4;
+	private static final int RECORDS_PER_SEGMENT = 10;
+	private static final int SEGMENT_SIZE = TelemetryRecorder.HEADER_SIZE
+			+ RECORDS_PER_SEGMENT * TelemetryRecorder.getRecordSize(CORES);
+
+	// Variables.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 1, 8);
+		recorder.close();
+
+		checkRecords(Long.MIN_VALUE, Long.MAX_VALUE, 1, 8);
+		checkRecords(3000, 6000, 3, 5);
+		checkRecords(8001, Long.MAX_VALUE, 1, 0);
+	}
+
+	@Test
+	public void testRolloverDeletesOldestSegments() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 3);
+		record(recorder, 1, 45);
+		recorder.close();
+
+		// 5 segments were written, the first 2 were deleted.
+		File[] segments = TelemetryRecorder.listSegments(directory);
+		assertEquals(3, segments.length);
+		for (File segment : segments)
+			assertEquals(SEGMENT_SIZE, segment.length());
+		checkRecords(Long.MIN_VALUE, Long.MAX_VALUE, 21, 45);
+		checkRecords(29000, 33000, 29, 32);
+	}
+
+	@Test
+	public void testReopenContinuesLastSegment() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 1, 15);
+		recorder.close();
+
+		recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 16, 25);
+		recorder.close();
+
+		assertEquals(3, TelemetryRecorder.listSegments(directory).length);
+		checkRecords(Long.MIN_VALUE, Long.MAX_VALUE, 1, 25);
+	}
+
+	@Test
+	public void testOtherLayoutStartsNewSegment() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 1, 5);
+		recorder.close();
+
+		recorder = new TelemetryRecorder(directory, CORES + 1, SEGMENT_SIZE, 4);
+		float[] usages = new float[CORES + 2];
+		int[] frequencies = new int[CORES + 1];
+		recorder.record(6000, usages, frequencies, 0, 0);
+		recorder.close();
+
+		File[] segments = TelemetryRecorder.listSegments(directory);
+		assertEquals(2, segments.length);
+		TelemetryReader.Cursor cursor = new TelemetryReader(directory).scan(Long.MIN_VALUE,
+				Long.MAX_VALUE);
+		for (int i = 1; i <= 6; i++) {
+			assertTrue(cursor.next());
+			assertEquals(i * 1000L, cursor.getTimestamp());
+			assertEquals(i <= 5 ? CORES : CORES + 1, cursor.getNumberOfCores());
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testClockGoingBackStartsNewSegment() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 11, 13);
+		record(recorder, 1, 3);
+		recorder.close();
+
+		assertEquals(2, TelemetryRecorder.listSegments(directory).length);
+		TelemetryReader.Cursor cursor = new TelemetryReader(directory).scan(Long.MIN_VALUE,
+				Long.MAX_VALUE);
+		int[] expected = {11, 12, 13, 1, 2, 3};
+		for (int i : expected) {
+			assertTrue(cursor.next());
+			checkRecord(cursor, i);
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testCorruptRecordIsSkipped() throws IOException {
+		TelemetryRecorder recorder = new TelemetryRecorder(directory, CORES, SEGMENT_SIZE, 4);
+		record(recorder, 1, 5);
+		recorder.close();
+
+		// Changes the overall usage of the third record.
+		RandomAccessFile file = new RandomAccessFile(TelemetryRecorder.listSegments(directory)[0], "rw");
+		try {
+			long position = TelemetryRecorder.HEADER_SIZE + 2 * TelemetryRecorder.getRecordSize(CORES);
+			file.seek(position + Long.BYTES);
+			file.write(0x7F);
+		} finally {
+			file.close();
+		}
+
+		TelemetryReader.Cursor cursor = new TelemetryReader(directory).scan(Long.MIN_VALUE,
+				Long.MAX_VALUE);
+		int[] expected = {1, 2, 4, 5};
+		for (int i : expected) {
+			assertTrue(cursor.next());
+			checkRecord(cursor, i);
+		}
+		assertFalse(cursor.next());
+	}
+
+	/**
+	 * Records a range of records, the fields of each record are derived
+	 * from its number and its timestamp is the number in seconds.
+	 *
+	 * @param recorder Recorder to record to.
+	 * @param first Number of the first record.
+	 * @param last Number of the last record.
+	 *
+	 * @throws IOException If a segment cannot be created.
+	 */
+	private static void record(TelemetryRecorder recorder, int first, int last) throws IOException {
+		float[] usages = new float[CORES + 1];
+		int[] frequencies = new int[CORES];
+		for (int i = first; i <= last; i++) {
+			for (int j = 0; j <= CORES; j++)
+				usages[j] = i + j / 10f;
+			for (int j = 0; j < CORES; j++)
+				frequencies[j] = i * 1000 + j;
+			recorder.record(i * 1000L, usages, frequencies, 40 + i, 100000L * i);
+		}
+	}
+
+	/**
+	 * Checks that a range of time has the consecutive records of a range of
+	 * numbers.
+	 *
+	 * @param from Start of the range, in milliseconds.
+	 * @param to End of the range, exclusive.
+	 * @param first Number of the first record expected.
+	 * @param last Number of the last record expected.
+	 *
+	 * @throws IOException If a segment cannot be read.
+	 */
+	private void checkRecords(long from, long to, int first, int last) throws IOException {
+		TelemetryReader.Cursor cursor = new TelemetryReader(directory).scan(from, to);
+		for (int i = first; i <= last; i++) {
+			assertTrue("record " + i, cursor.next());
+			checkRecord(cursor, i);
+		}
+		assertFalse(cursor.next());
+	}
+
+	/**
+	 * Checks the fields of the current record of a cursor.
+	 *
+	 * @param cursor The cursor.
+	 * @param number Number of the record expected.
+	 */
+	private static void checkRecord(TelemetryReader.Cursor cursor, int number) {
+		assertEquals(number * 1000L, cursor.getTimestamp());
+		assertEquals(CORES, cursor.getNumberOfCores());
+		for (int j = 0; j <= CORES; j++)
+			assertEquals(number + j / 10f, cursor.getUsage(j), 0);
+		for (int j = 0; j < CORES; j++)
+			assertEquals(number * 1000 + j, cursor.getFrequency(j));
+		assertEquals(40 + number, cursor.getTemperature(), 0);
+		assertEquals(100000L * number, cursor.getFreeMemory());
+	}
+}
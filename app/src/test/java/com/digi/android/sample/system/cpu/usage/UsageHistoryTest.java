@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link UsageHistory}.
+ */
+public class UsageHistoryTest {
+
+	// Constants.
+	private static final int WIDTH = 2;
+	private static final long START = 60000L * 29000000;
+	private static final int HEADER_SIZE = 12;
+	private static final int RECORD_SIZE = 1 + 8 + 3 * 4 * WIDTH;
+	private static final long TOTAL_CAPACITY = 600 + 8640 + 43200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAggregation() throws IOException {
+		UsageHistory history = new UsageHistory(folder.newFile(), WIDTH);
+		for (long time = 0; time < 130000; time += 100)
+			add(history, time);
+
+		// The points of the last interval of each tier are still open.
+		assertEquals(129, history.getSize(UsageHistory.TIER_SECONDS));
+		assertEquals(12, history.getSize(UsageHistory.TIER_TEN_SECONDS));
+		assertEquals(1, history.getSize(UsageHistory.TIER_MINUTES));
+
+		checkPoint(history, UsageHistory.TIER_SECONDS, 5, 5, 5, 5);
+		checkPoint(history, UsageHistory.TIER_TEN_SECONDS, 3, 30, 39, 34.5f);
+		checkPoint(history, UsageHistory.TIER_MINUTES, 0, 0, 59, 29.5f);
+		history.close();
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		File file = folder.newFile();
+		UsageHistory reference = new UsageHistory(folder.newFile(), WIDTH);
+		UsageHistory history = new UsageHistory(file, WIDTH);
+		long time = 0;
+		for (; time < 2 * 3600000 + 45500; time += 1000) {
+			add(reference, time);
+			add(history, time);
+		}
+		history.close();
+
+		history = new UsageHistory(file, WIDTH);
+		assertSameHistory(reference, history);
+
+		// The open point of the finest tier is lost, the sampler adds it again.
+		add(history, time - 1000);
+		for (; time < 3 * 3600000; time += 1000) {
+			add(reference, time);
+			add(history, time);
+		}
+		assertSameHistory(reference, history);
+		history.close();
+		reference.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		File file = folder.newFile();
+		UsageHistory history = new UsageHistory(file, WIDTH);
+		long samples = 3 * TOTAL_CAPACITY;
+		for (long time = 0; time < samples * 1000; time += 1000) {
+			add(history, time);
+			assertTrue(file.length() <= HEADER_SIZE + (2 * TOTAL_CAPACITY + 2) * RECORD_SIZE);
+		}
+		assertEquals(600, history.getSize(UsageHistory.TIER_SECONDS));
+		assertEquals(8640, history.getSize(UsageHistory.TIER_TEN_SECONDS));
+		history.close();
+
+		UsageHistory reloaded = new UsageHistory(file, WIDTH);
+		assertSameHistory(history, reloaded);
+		reloaded.close();
+	}
+
+	@Test
+	public void testPartialRecordIsDropped() throws IOException {
+		File file = folder.newFile();
+		UsageHistory history = new UsageHistory(file, WIDTH);
+		// Short enough that no tier is full, so losing a point shows.
+		for (long time = 0; time < 300000; time += 1000)
+			add(history, time);
+		history.close();
+
+		RandomAccessFile data = new RandomAccessFile(file, "rw");
+		try {
+			data.setLength(data.length() - 5);
+		} finally {
+			data.close();
+		}
+
+		UsageHistory reloaded = new UsageHistory(file, WIDTH);
+		int lost = 0;
+		for (int tier = 0; tier < history.getNumberOfTiers(); tier++)
+			lost += history.getSize(tier) - reloaded.getSize(tier);
+		assertEquals(1, lost);
+		// The file was rewritten without the partial record.
+		assertEquals(0, (file.length() - HEADER_SIZE) % RECORD_SIZE);
+		reloaded.close();
+
+		history = new UsageHistory(file, WIDTH);
+		assertSameHistory(reloaded, history);
+		history.close();
+	}
+
+	@Test
+	public void testOtherWidthIsDiscarded() throws IOException {
+		File file = folder.newFile();
+		UsageHistory history = new UsageHistory(file, WIDTH);
+		for (long time = 0; time < 60000; time += 1000)
+			add(history, time);
+		history.close();
+
+		history = new UsageHistory(file, WIDTH + 1);
+		for (int tier = 0; tier < history.getNumberOfTiers(); tier++)
+			assertEquals(0, history.getSize(tier));
+		history.close();
+	}
+
+	/**
+	 * Adds a sample. The first usage is the second of the sample and the
+	 * second usage the tenth of a second.
+	 *
+	 * @param history History to add to.
+	 * @param time Time of the sample since {@link #START}, in milliseconds.
+	 *
+	 * @throws IOException If the history cannot be written.
+	 */
+	private static void add(UsageHistory history, long time) throws IOException {
+		float[] usages = {time / 1000, (time / 100) % 10};
+		history.add(START + time, usages, 0);
+	}
+
+	/**
+	 * Checks a point of a tier. The second usage of every point is always
+	 * the same, since each point covers whole seconds.
+	 *
+	 * @param history History to check.
+	 * @param tier Index of the tier.
+	 * @param index Index of the point, from the start of the history.
+	 * @param min Expected minimum of the first usage.
+	 * @param max Expected maximum of the first usage.
+	 * @param average Expected average of the first usage.
+	 */
+	private static void checkPoint(UsageHistory history, int tier, int index, float min, float max,
+			float average) {
+		long time = START + index * history.getResolution(tier);
+		long[] times = new long[1];
+		float[] mins = new float[WIDTH];
+		float[] maxs = new float[WIDTH];
+		float[] averages = new float[WIDTH];
+		assertEquals(1, history.read(tier, time, time + 1, 1, times, mins, maxs, averages));
+		assertEquals(time, times[0]);
+		assertArrayEquals(new float[] {min, 0}, mins, 0);
+		assertArrayEquals(new float[] {max, 9}, maxs, 0);
+		assertArrayEquals(new float[] {average, 4.5f}, averages, 0);
+	}
+
+	/**
+	 * Checks that two histories have the same points in every tier.
+	 *
+	 * @param expected The expected history.
+	 * @param actual The history to check.
+	 */
+	private static void assertSameHistory(UsageHistory expected, UsageHistory actual) {
+		for (int tier = 0; tier < expected.getNumberOfTiers(); tier++) {
+			int size = expected.getSize(tier);
+			assertEquals("tier " + tier, size, actual.getSize(tier));
+			long[][] times = new long[2][size];
+			float[][] values = new float[6][size * WIDTH];
+			UsageHistory[] histories = {expected, actual};
+			for (int i = 0; i < 2; i++) {
+				assertEquals(size, histories[i].read(tier, Long.MIN_VALUE, Long.MAX_VALUE, size,
+						times[i], values[3 * i], values[3 * i + 1], values[3 * i + 2]));
+			}
+			assertArrayEquals("tier " + tier, times[0], times[1]);
+			for (int i = 0; i < 3; i++)
+				assertArrayEquals("tier " + tier, values[i], values[i + 3], 0);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2025, Digi International Inc. <support@digi.com>
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.digi.android.sample.system.cpu.usage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link UsageRingBuffer}.
+ */
+public class UsageRingBufferTest {
+
+	// Constants.
+	private static final int CAPACITY = 8;
+	private static final int WIDTH = 3;
+
+	@Test
+	public void testCapacityIsRoundedUp() {
+		assertEquals(2, new UsageRingBuffer(1, WIDTH).getCapacity());
+		assertEquals(8, new UsageRingBuffer(8, WIDTH).getCapacity());
+		assertEquals(16, new UsageRingBuffer(9, WIDTH).getCapacity());
+	}
+
+	@Test
+	public void testReadLatestWrapsAround() {
+		UsageRingBuffer buffer = new UsageRingBuffer(CAPACITY, WIDTH);
+		float[] usages = new float[CAPACITY * WIDTH];
+		long[] timestamps = new long[CAPACITY];
+
+		assertEquals(0, buffer.readLatest(CAPACITY, usages, timestamps));
+		for (int i = 0; i < 3 * CAPACITY + 5; i++) {
+			write(buffer, i);
+			// The slot of the oldest frame is the next one written.
+			int expected = Math.min(i + 1, CAPACITY - 1);
+			assertEquals(expected, buffer.readLatest(CAPACITY, usages, timestamps));
+			checkFrames(usages, timestamps, i + 1 - expected, expected);
+		}
+
+		assertEquals(2, buffer.readLatest(2, usages, timestamps));
+		checkFrames(usages, timestamps, 3 * CAPACITY + 3, 2);
+	}
+
+	@Test
+	public void testReaderReadsInOrder() {
+		UsageRingBuffer buffer = new UsageRingBuffer(CAPACITY, WIDTH);
+		write(buffer, 0);
+		UsageRingBuffer.Reader reader = buffer.newReader();
+		float[] usages = new float[CAPACITY * WIDTH];
+		long[] timestamps = new long[CAPACITY];
+
+		int next = 1;
+		for (int round = 0; round < 4 * CAPACITY; round++) {
+			for (int i = 0; i < round % 5; i++)
+				write(buffer, next + i);
+			int count = reader.read(3, usages, timestamps);
+			assertEquals(Math.min(round % 5, 3), count);
+			checkFrames(usages, timestamps, next, count);
+			next += count;
+			// Reads the rest, so the reader doesn't fall behind.
+			count = reader.read(CAPACITY, usages, timestamps);
+			checkFrames(usages, timestamps, next, count);
+			next += count;
+		}
+		assertEquals(0, reader.getSkipped());
+	}
+
+	@Test
+	public void testReaderSkipsOverwrittenFrames() {
+		UsageRingBuffer buffer = new UsageRingBuffer(CAPACITY, WIDTH);
+		UsageRingBuffer.Reader reader = buffer.newReader();
+		float[] usages = new float[CAPACITY * WIDTH];
+		long[] timestamps = new long[CAPACITY];
+
+		for (int i = 0; i < 2 * CAPACITY + 3; i++)
+			write(buffer, i);
+		assertEquals(CAPACITY - 1, reader.read(CAPACITY, usages, timestamps));
+		checkFrames(usages, timestamps, CAPACITY + 4, CAPACITY - 1);
+		assertEquals(CAPACITY + 4, reader.getSkipped());
+		assertEquals(0, reader.read(CAPACITY, usages, timestamps));
+	}
+
+	@Test
+	public void testConcurrentReadsAreConsistent() throws InterruptedException {
+		final UsageRingBuffer buffer = new UsageRingBuffer(CAPACITY, WIDTH);
+		final int frames = 200000;
+		final AtomicLong bad = new AtomicLong();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				float[] usages = new float[CAPACITY * WIDTH];
+				long[] timestamps = new long[CAPACITY];
+				UsageRingBuffer.Reader reader = buffer.newReader();
+				long last = -1;
+				while (last < frames - 1) {
+					int count = reader.read(CAPACITY, usages, timestamps);
+					for (int i = 0; i < count; i++) {
+						// Every value of a frame must come from the same write.
+						for (int j = 0; j < WIDTH; j++) {
+							if (usages[i * WIDTH + j] != timestamps[i] * WIDTH + j)
+								bad.incrementAndGet();
+						}
+						if (timestamps[i] <= last)
+							bad.incrementAndGet();
+						last = timestamps[i];
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < frames; i++)
+			write(buffer, i);
+		reader.join();
+		assertEquals(0, bad.get());
+	}
+
+	/**
+	 * Writes the frame with the given number, its timestamp is the number
+	 * and its usages are derived from it.
+	 *
+	 * @param buffer Buffer to write to.
+	 * @param number Number of the frame.
+	 */
+	private static void write(UsageRingBuffer buffer, int number) {
+		float[] usages = new float[WIDTH];
+		for (int j = 0; j < WIDTH; j++)
+			usages[j] = number * WIDTH + j;
+		buffer.write(number, usages);
+	}
+
+	/**
+	 * Checks that copied frames are the consecutive frames starting at the
+	 * given number.
+	 *
+	 * @param usages Usages of the frames copied.
+	 * @param timestamps Timestamps of the frames copied.
+	 * @param first Number of the first frame expected.
+	 * @param count Number of frames copied.
+	 */
+	private static void checkFrames(float[] usages, long[] timestamps, int first, int count) {
+		for (int i = 0; i < count; i++) {
+			assertEquals(first + i, timestamps[i]);
+			for (int j = 0; j < WIDTH; j++)
+				assertEquals((first + i) * WIDTH + j, usages[i * WIDTH + j], 0);
+		}
+	}
+}
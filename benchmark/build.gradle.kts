@@ -0,0 +1,37 @@
+// JVM-only JMH benchmarks of the Pi calculators of the application.
+//
+// Run with: ./gradlew :benchmark:jmh
+// Select benchmarks or parameters with e.g. -Pjmh.includes=Parallel
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Compile the pi package straight from the application sources, so the
+// benchmarks always measure the code that is flashed to the boards.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include("com/digi/android/sample/system/cpu/pi/**")
+        }
+    }
+}
+
+dependencies {
+    implementation(files("../app/libs/apfloat.jar"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(2)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
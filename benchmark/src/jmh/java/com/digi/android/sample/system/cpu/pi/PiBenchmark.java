@@ -0,0 +1,64 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the single threaded pi calculators.
+ * <p>
+ *
+ * Each invocation is a complete calculation, so the single shot time is
+ * measured.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PiBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public long digits;
+
+	@Setup
+	public void setup() {
+		ApfloatContext ctx = ApfloatContext.getContext();
+		ctx.setNumberOfProcessors(1);
+
+		Pi.setOut(new PrintWriter(Writer.nullWriter()));
+		Pi.setErr(new PrintWriter(Writer.nullWriter()));
+		Pi.setAlive(true);
+	}
+
+	@Benchmark
+	public Apfloat chudnovsky() {
+		return new Pi.ChudnovskyPiCalculator(this.digits, RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat ramanujan() {
+		return new Pi.RamanujanPiCalculator(this.digits, RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat gaussLegendre() {
+		return new Pi.GaussLegendrePiCalculator(this.digits, RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat borwein() {
+		return new Pi.BorweinPiCalculator(this.digits, RADIX).execute();
+	}
+
+	static final int RADIX = 10;
+}
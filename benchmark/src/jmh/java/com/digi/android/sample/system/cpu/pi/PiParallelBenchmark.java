@@ -0,0 +1,99 @@
+package com.digi.android.sample.system.cpu.pi;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apfloat.Apfloat;
+import org.apfloat.ApfloatContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the parallel pi calculators, with the work split statically
+ * between the threads and with work-stealing.
+ * <p>
+ *
+ * The static split needs an executor with at least as many threads as the
+ * context has processors, so each trial uses its own executor.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PiParallelBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public long digits;
+
+	@Param({ "1", "2", "4" })
+	public int threads;
+
+	@Setup
+	public void setup() {
+		this.executorService = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		ApfloatContext ctx = ApfloatContext.getContext();
+		ctx.setNumberOfProcessors(this.threads);
+		ctx.setExecutorService(this.executorService);
+
+		Pi.setOut(new PrintWriter(Writer.nullWriter()));
+		Pi.setErr(new PrintWriter(Writer.nullWriter()));
+		Pi.setAlive(true);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.executorService.shutdownNow();
+	}
+
+	@Benchmark
+	public Apfloat chudnovsky() {
+		return new PiParallel.ParallelChudnovskyPiCalculator(
+				new PiParallel.ParallelBinarySplittingPiCalculator(
+						new Pi.ChudnovskyBinarySplittingSeries(this.digits,
+								PiBenchmark.RADIX)), this.digits,
+				PiBenchmark.RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat ramanujan() {
+		return new PiParallel.ParallelRamanujanPiCalculator(
+				new PiParallel.ParallelBinarySplittingPiCalculator(
+						new Pi.RamanujanBinarySplittingSeries(this.digits,
+								PiBenchmark.RADIX)), this.digits,
+				PiBenchmark.RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat forkJoinChudnovsky() {
+		return new PiParallel.ParallelChudnovskyPiCalculator(
+				new PiParallel.ForkJoinBinarySplittingPiCalculator(
+						new Pi.ChudnovskyBinarySplittingSeries(this.digits,
+								PiBenchmark.RADIX)), this.digits,
+				PiBenchmark.RADIX).execute();
+	}
+
+	@Benchmark
+	public Apfloat forkJoinRamanujan() {
+		return new PiParallel.ParallelRamanujanPiCalculator(
+				new PiParallel.ForkJoinBinarySplittingPiCalculator(
+						new Pi.RamanujanBinarySplittingSeries(this.digits,
+								PiBenchmark.RADIX)), this.digits,
+				PiBenchmark.RADIX).execute();
+	}
+
+	private ExecutorService executorService;
+}
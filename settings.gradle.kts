@@ -22,4 +22,5 @@ dependencyResolutionManagement {
 rootProject.name = "SystemCPUSample"
 include(":app")
 include(":androidplot-core-1.5.7")
-include(":figlib-1.0.7")
\ No newline at end of file
+include(":figlib-1.0.7")
+include(":benchmark")
\ No newline at end of file